@@ -8,6 +8,7 @@ plugins {
     id("org.jetbrains.kotlin.jvm") version "1.7.0"
     id("org.jetbrains.intellij") version "1.6.0"
     id("org.jetbrains.changelog") version "1.3.1"
+    id("me.champeau.jmh") version "0.6.6"
 }
 
 group = properties("pluginGroup")
@@ -29,6 +30,23 @@ intellij {
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.7.2"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    // The platform's light tests are JUnit 3 tests
+    testRuntimeOnly("org.junit.vintage:junit-vintage-engine")
+}
+
+// The benchmarks need the IntelliJ Platform classes (Gson, JCEF, etc.) that the tests get
+configurations.named("jmhImplementation") {
+    extendsFrom(configurations.testImplementation.get())
+}
+
+// Run with `./gradlew jmh`. Results are written as JSON so that they can be compared between builds.
+jmh {
+    jmhVersion.set("1.35")
+    resultFormat.set("JSON")
+    resultsFile.set(project.file("build/reports/jmh/results.json"))
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
 }
 
 tasks {
@@ -47,6 +65,28 @@ tasks {
         gradleVersion = properties("gradleVersion")
     }
 
+    withType<Test> {
+        useJUnitPlatform()
+    }
+
+    test {
+        exclude("**/PreviewLatencyTest.class")
+    }
+
+    // Headless preview latency harness. Prints p50/p95/p99 per scenario.
+    register<Test>("previewLatencyTest") {
+        description = "Measures the time from a preview request to the rendered preview."
+        group = "verification"
+        testClassesDirs = sourceSets.test.get().output.classesDirs
+        classpath = sourceSets.test.get().runtimeClasspath
+        include("**/PreviewLatencyTest.class")
+        systemProperty("java.awt.headless", "true")
+        listOf("previewLatency.iterations", "previewLatency.recording").forEach { name ->
+            System.getProperty(name)?.let { systemProperty(name, it) }
+        }
+        testLogging.showStandardStreams = true
+    }
+
     patchPluginXml {
         version.set(properties("pluginVersion"))
         sinceBuild.set(properties("pluginSinceBuild"))
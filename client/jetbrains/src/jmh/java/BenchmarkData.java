@@ -0,0 +1,70 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.project.Project;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Generates payloads shaped like the ones the webview sends.
+ */
+class BenchmarkData {
+    private static final String[] WORDS = {"public", "static", "final", "String", "return", "if", "for", "new", "this", "null"};
+
+    /**
+     * A project that must not be used. Enough for code paths that only hold on to it.
+     */
+    static Project createUnusedProject() {
+        return (Project) Proxy.newProxyInstance(BenchmarkData.class.getClassLoader(), new Class[]{Project.class}, (proxy, method, args) -> {
+            throw new UnsupportedOperationException("The benchmark project can't be used: " + method.getName());
+        });
+    }
+
+    static String createFileContent(int lineCount) {
+        Random random = new Random(42);
+        StringBuilder content = new StringBuilder();
+        for (int line = 0; line < lineCount; line++) {
+            int wordCount = 2 + random.nextInt(10);
+            content.append("    ");
+            for (int word = 0; word < wordCount; word++) {
+                content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            content.append('\n');
+        }
+        return content.toString();
+    }
+
+    static JsonObject createPreviewRequestArguments(int lineCount, int rangeCount) {
+        String content = createFileContent(lineCount);
+        Random random = new Random(42);
+        JsonArray absoluteOffsetAndLengths = new JsonArray();
+        for (int i = 0; i < rangeCount; i++) {
+            JsonArray range = new JsonArray();
+            range.add(random.nextInt(Math.max(1, content.length() - 10)));
+            range.add(1 + random.nextInt(10));
+            absoluteOffsetAndLengths.add(range);
+        }
+
+        JsonObject arguments = new JsonObject();
+        arguments.addProperty("sequenceNumber", 1);
+        arguments.addProperty("resultType", "file");
+        arguments.addProperty("fileName", "SourcegraphBrowserHost.java");
+        arguments.addProperty("repoUrl", "github.com/sourcegraph/sourcegraph");
+        arguments.addProperty("commit", "1fa8d5d6286c24924b55c15ed4d1a0b85ccab4d5");
+        arguments.addProperty("path", "client/jetbrains/src/main/java/com/sourcegraph/browser/SourcegraphBrowserHost.java");
+        arguments.addProperty("content", Base64.getEncoder().encodeToString(content.getBytes(StandardCharsets.UTF_8)));
+        arguments.addProperty("lineNumber", lineCount / 2);
+        arguments.add("absoluteOffsetAndLengths", absoluteOffsetAndLengths);
+        arguments.addProperty("relativeUrl", "/github.com/sourcegraph/sourcegraph/-/blob/client/jetbrains/src/main/java/com/sourcegraph/browser/SourcegraphBrowserHost.java");
+        return arguments;
+    }
+
+    static String createPreviewRequestAsString(int lineCount, int rangeCount) {
+        JsonObject request = new JsonObject();
+        request.addProperty("action", "preview");
+        request.add("arguments", createPreviewRequestArguments(lineCount, rangeCount));
+        return request.toString();
+    }
+}
@@ -0,0 +1,40 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what {@link com.sourcegraph.browser.JSToJavaBridge} does with every request before handing it over.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BridgeRequestParsingBenchmark {
+    @Param({"200", "20000"})
+    public int lineCount;
+
+    @Param({"10", "5000"})
+    public int rangeCount;
+
+    private String requestAsString;
+
+    @Setup
+    public void setUp() {
+        requestAsString = BenchmarkData.createPreviewRequestAsString(lineCount, rangeCount);
+    }
+
+    @Benchmark
+    public JsonObject parseRequest() {
+        JsonObject request = JsonParser.parseString(requestAsString).getAsJsonObject();
+        request.get("action").getAsString();
+        return request;
+    }
+}
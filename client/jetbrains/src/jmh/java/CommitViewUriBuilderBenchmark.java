@@ -0,0 +1,24 @@
+import com.sourcegraph.git.CommitViewUriBuilder;
+import com.sourcegraph.git.RepoInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommitViewUriBuilderBenchmark {
+    private final CommitViewUriBuilder builder = new CommitViewUriBuilder();
+    private final RepoInfo repoInfo = new RepoInfo("", "https://github.com/sourcegraph/sourcegraph-jetbrains.git", "main");
+
+    @Benchmark
+    public URI build() {
+        return builder.build("https://www.sourcegraph.com", "1fa8d5d6286c24924b55c15ed4d1a0b85ccab4d5", repoInfo, "intellij", "1.1");
+    }
+}
@@ -0,0 +1,41 @@
+import com.sourcegraph.browser.HttpSchemeHandler;
+import org.cef.misc.IntRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the webview's files the way JCEF asks for them: prepare the response, then read it in chunks.
+ * The bundle only exists after the webview has been built, otherwise this measures the 404 response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HttpSchemeHandlerBenchmark {
+    // JCEF reads the response in chunks of this size
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    @Param({"http://sourcegraph/html/index.html", "http://sourcegraph/dist/search.js"})
+    public String url;
+
+    private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+    @Benchmark
+    public int serveResource() {
+        HttpSchemeHandler handler = new HttpSchemeHandler();
+        handler.processUrl(url);
+
+        IntRef bytesRead = new IntRef();
+        int totalBytesRead = 0;
+        while (handler.readResponse(buffer, buffer.length, bytesRead, null)) {
+            totalBytesRead += bytesRead.get();
+        }
+        return totalBytesRead;
+    }
+}
@@ -0,0 +1,43 @@
+import com.google.gson.JsonObject;
+import com.intellij.openapi.project.Project;
+import com.sourcegraph.find.PreviewContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreviewContentBenchmark {
+    @Param({"200", "20000"})
+    public int lineCount;
+
+    @Param({"10", "5000"})
+    public int rangeCount;
+
+    private Project project;
+    private JsonObject previewRequestArguments;
+
+    @Setup
+    public void setUp() {
+        project = BenchmarkData.createUnusedProject();
+        previewRequestArguments = BenchmarkData.createPreviewRequestArguments(lineCount, rangeCount);
+    }
+
+    @Benchmark
+    public PreviewContent fromJson() {
+        return PreviewContent.fromJson(project, previewRequestArguments);
+    }
+
+    @Benchmark
+    public String fromJsonAndDecodeContent() {
+        return PreviewContent.fromJson(project, previewRequestArguments).getContent();
+    }
+}
@@ -0,0 +1,136 @@
+package com.sourcegraph.api;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+
+public class GraphQlClient {
+    // Highlighting large files can take a while
+    private static final int SOCKET_TIMEOUT_MILLIS = 60_000;
+    private static final String BLOB_CONTENT_QUERY = "" +
+        "query BlobContent($repoName: String!, $commitID: String!, $filePath: String!) {" +
+        "    repository(name: $repoName) {" +
+        "        commit(rev: $commitID) {" +
+        "            file(path: $filePath) {" +
+        "                content" +
+        // We include the highlight part here to get a server side error when loading binary files.
+        "                highlight(disableTimeout: false) {" +
+        "                    aborted" +
+        "                }" +
+        "            }" +
+        "        }" +
+        "    }" +
+        "}";
+
+    /**
+     * Sends the query and returns the status code. Use this when the response body is not needed.
+     */
+    public static int callGraphQLService(@NotNull String instanceUrl, @Nullable String accessToken, @NotNull String query, @NotNull JsonObject variables) throws IOException {
+        HttpPost request = createRequest(instanceUrl, accessToken, query, variables);
+        try (CloseableHttpClient client = HttpClientFactory.create(instanceUrl, SOCKET_TIMEOUT_MILLIS)) {
+            CloseableHttpResponse response = client.execute(request);
+            response.close();
+            return response.getStatusLine().getStatusCode();
+        }
+    }
+
+    /**
+     * Sends the query and returns the "data" object of the response.
+     *
+     * @throws IOException If the request fails, the status code is not 200, or the response has no data.
+     */
+    @NotNull
+    public static JsonObject queryGraphQLService(@NotNull String instanceUrl, @Nullable String accessToken, @NotNull String query, @NotNull JsonObject variables) throws IOException {
+        HttpPost request = createRequest(instanceUrl, accessToken, query, variables);
+        try (CloseableHttpClient client = HttpClientFactory.create(instanceUrl, SOCKET_TIMEOUT_MILLIS);
+             CloseableHttpResponse response = client.execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8) : "";
+            if (statusCode != 200) {
+                throw new IOException("GraphQL request failed with status code " + statusCode + ".");
+            }
+
+            JsonElement bodyAsJson = JsonParser.parseString(body);
+            if (!bodyAsJson.isJsonObject() || !bodyAsJson.getAsJsonObject().has("data") || !bodyAsJson.getAsJsonObject().get("data").isJsonObject()) {
+                throw new IOException("GraphQL response has no data: " + body);
+            }
+            return bodyAsJson.getAsJsonObject().getAsJsonObject("data");
+        }
+    }
+
+    /**
+     * @return The content of the file as the server has it, or null if there is no such file or it's binary.
+     */
+    @Nullable
+    public static String fetchBlobContent(@NotNull String instanceUrl, @Nullable String accessToken,
+                                          @NotNull String repoName, @NotNull String commit, @NotNull String path) throws IOException {
+        JsonObject variables = new JsonObject();
+        variables.addProperty("repoName", repoName);
+        variables.addProperty("commitID", commit);
+        variables.addProperty("filePath", path);
+
+        JsonElement content = getPath(queryGraphQLService(instanceUrl, accessToken, BLOB_CONTENT_QUERY, variables), "repository", "commit", "file", "content");
+        return content != null && content.isJsonPrimitive() ? content.getAsString() : null;
+    }
+
+    /**
+     * @return The element at the given keys, e.g. "repository", "commit", "file", or null if one of them is missing.
+     */
+    @Nullable
+    public static JsonElement getPath(@NotNull JsonObject object, @NotNull String... keys) {
+        JsonElement current = object;
+        for (String key : keys) {
+            if (current == null || !current.isJsonObject()) {
+                return null;
+            }
+            current = current.getAsJsonObject().get(key);
+        }
+        return current;
+    }
+
+    @NotNull
+    private static HttpPost createRequest(@NotNull String instanceUrl, @Nullable String accessToken, @NotNull String query, @NotNull JsonObject variables) {
+        HttpPost request = new HttpPost(getGraphQLApiURI(instanceUrl));
+
+        request.setHeader("Content-Type", "application/json");
+        request.setHeader("X-Sourcegraph-Should-Trace", "false");
+        if (accessToken != null) {
+            request.setHeader("Authorization", "token " + accessToken);
+        }
+
+        JsonObject body = new JsonObject();
+        body.addProperty("query", query);
+        body.add("variables", variables);
+
+        ContentType contentType = ContentType.create("application/json", StandardCharsets.UTF_8);
+
+        StringEntity entity = new StringEntity(body.toString(), contentType);
+        entity.setContentEncoding(StandardCharsets.UTF_8.toString());
+
+        request.setEntity(entity);
+        return request;
+    }
+
+    @NotNull
+    private static URI getGraphQLApiURI(String instanceUrl) {
+        try {
+            return new URIBuilder(instanceUrl + ".api/graphql").build();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.sourcegraph.api;
+
+import com.intellij.util.net.IdeHttpClientHelpers;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates the HTTP clients for requests to the Sourcegraph instance, with the IDE's proxy settings and timeouts.
+ */
+class HttpClientFactory {
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * @param url                 The URL that the client will be used for, to pick the proxy.
+     * @param socketTimeoutMillis The longest wait for data, 0 for no limit.
+     */
+    @NotNull
+    static CloseableHttpClient create(@NotNull String url, int socketTimeoutMillis) {
+        RequestConfig.Builder requestConfig = RequestConfig.custom()
+            .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+            .setConnectionRequestTimeout(CONNECT_TIMEOUT_MILLIS)
+            .setSocketTimeout(socketTimeoutMillis);
+        IdeHttpClientHelpers.ApacheHttpClient4.setProxyForUrlIfEnabled(requestConfig, url);
+        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        IdeHttpClientHelpers.ApacheHttpClient4.setProxyCredentialsForUrlIfEnabled(credentialsProvider, url);
+        return HttpClientBuilder.create()
+            .setDefaultRequestConfig(requestConfig.build())
+            .setDefaultCredentialsProvider(credentialsProvider)
+            .build();
+    }
+}
@@ -0,0 +1,130 @@
+package com.sourcegraph.api;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.diagnostic.Logger;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs a search through Sourcegraph's streaming search API, which sends the results as server-sent events while they
+ * are found. Each search reads its stream on a background thread until the "done" event or until it's cancelled.
+ */
+public class StreamingSearchClient {
+    private static final Logger logger = Logger.getInstance(StreamingSearchClient.class);
+    // The server sends progress events while it searches, so a longer silence means the connection is gone
+    private static final int SOCKET_TIMEOUT_MILLIS = 60_000;
+
+    public interface Listener {
+        /**
+         * Called on the reading thread, e.g. with "matches" and a JSON array of matches.
+         */
+        void onEvent(@NotNull String event, @NotNull JsonElement data);
+
+        /**
+         * Called once on the reading thread, unless the search was cancelled.
+         *
+         * @param errorMessage Null if the search completed normally.
+         */
+        void onDone(@Nullable String errorMessage);
+    }
+
+    private final String instanceUrl;
+    private final String accessToken;
+    private final String query;
+    private final Listener listener;
+    private volatile boolean isCancelled = false;
+    private volatile HttpGet request;
+
+    public StreamingSearchClient(@NotNull String instanceUrl, @Nullable String accessToken, @NotNull String query, @NotNull Listener listener) {
+        this.instanceUrl = instanceUrl;
+        this.accessToken = accessToken;
+        this.query = query;
+        this.listener = listener;
+    }
+
+    public void start() {
+        BackgroundExecutor.getInstance().execute("streaming search", this::run);
+    }
+
+    /**
+     * Closes the stream. The listener is not called after this returns, except for an event that is being delivered.
+     */
+    public void cancel() {
+        isCancelled = true;
+        HttpGet currentRequest = request;
+        if (currentRequest != null) {
+            currentRequest.abort();
+        }
+    }
+
+    private void run() {
+        String errorMessage = null;
+        HttpGet currentRequest = new HttpGet(instanceUrl + ".api/search/stream?v=V2&display=1500&q=" + URLEncoder.encode(query, StandardCharsets.UTF_8));
+        currentRequest.setHeader("Accept", "text/event-stream");
+        currentRequest.setHeader("X-Sourcegraph-Should-Trace", "false");
+        if (accessToken != null) {
+            currentRequest.setHeader("Authorization", "token " + accessToken);
+        }
+        request = currentRequest;
+        if (isCancelled) {
+            return;
+        }
+        try (CloseableHttpClient client = HttpClientFactory.create(instanceUrl, SOCKET_TIMEOUT_MILLIS);
+             CloseableHttpResponse response = client.execute(currentRequest)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (statusCode != 200 || entity == null) {
+                throw new IOException("Search failed with status code " + statusCode + ".");
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8))) {
+                readEvents(reader);
+            }
+        } catch (Exception e) {
+            if (!isCancelled) {
+                logger.info("Streaming search failed", e);
+                errorMessage = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            }
+        }
+        if (!isCancelled) {
+            listener.onDone(errorMessage);
+        }
+    }
+
+    private void readEvents(@NotNull BufferedReader reader) throws IOException {
+        String event = "message";
+        StringBuilder data = new StringBuilder();
+        String line;
+        while (!isCancelled && (line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                // A blank line ends the event
+                if (data.length() > 0) {
+                    if (event.equals("done")) {
+                        return;
+                    }
+                    listener.onEvent(event, JsonParser.parseString(data.toString()));
+                }
+                event = "message";
+                data.setLength(0);
+            } else if (line.startsWith("event:")) {
+                event = line.substring("event:".length()).trim();
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line.substring("data:".length()).trim());
+            }
+        }
+    }
+}
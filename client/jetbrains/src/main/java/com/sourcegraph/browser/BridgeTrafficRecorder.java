@@ -0,0 +1,203 @@
+package com.sourcegraph.browser;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.sourcegraph.concurrent.SerialExecutor;
+import com.sourcegraph.config.UserLevelConfig;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes every request between the webview and the IDE to {@code sourcegraph-bridge.jsonl} in the IDE's log
+ * directory, one JSON object per line. Enabled with {@code bridgeRecordingEnabled=true} in
+ * {@code ~/.sourcegraph-jetbrains.properties}, read at startup.
+ * <p>
+ * We keep the arguments of the requests that {@link BridgeTrafficReplayer} replays, without access tokens and with file
+ * contents replaced by their lengths, and the lengths of uploaded preview contents. Of the other requests, the responses, and the IDE's calls into the webview, we
+ * only keep the sizes.
+ * When the file reaches {@link #MAX_FILE_SIZE_BYTES}, it's moved to {@code sourcegraph-bridge.1.jsonl}, replacing the
+ * previous one. Writing happens in the background, one entry at a time, so that the bridge doesn't wait for the disk.
+ */
+public class BridgeTrafficRecorder implements Disposable {
+    public static final String JS_TO_JAVA = "jsToJava";
+    public static final String JAVA_TO_JS = "javaToJs";
+    public static final String UPLOAD = "upload";
+    private static final long MAX_FILE_SIZE_BYTES = 20 * 1024 * 1024;
+    private static final Logger logger = Logger.getInstance(BridgeTrafficRecorder.class);
+
+    private final boolean isEnabled;
+    private final SerialExecutor writer;
+    private final Path logPath;
+    private final Path rotatedLogPath;
+    private BufferedWriter output;
+    private long currentFileSize;
+
+    public BridgeTrafficRecorder() {
+        isEnabled = UserLevelConfig.isBridgeRecordingEnabled();
+        logPath = Paths.get(PathManager.getLogPath(), "sourcegraph-bridge.jsonl");
+        rotatedLogPath = Paths.get(PathManager.getLogPath(), "sourcegraph-bridge.1.jsonl");
+        writer = isEnabled ? new SerialExecutor("record bridge traffic") : null;
+    }
+
+    @NotNull
+    public static BridgeTrafficRecorder getInstance() {
+        return ApplicationManager.getApplication().getService(BridgeTrafficRecorder.class);
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * @param request      Null if the request wasn't valid JSON.
+     * @param durationNanos How long the IDE took to handle the request.
+     */
+    public void recordJSToJava(@Nullable JsonObject request, int requestSize, @NotNull JBCefJSQuery.Response response, long durationNanos) {
+        if (!isEnabled) {
+            return;
+        }
+        String responseString = response.isSuccess() ? response.response() : response.errMsg();
+        String action = request != null && request.has("action") ? request.get("action").getAsString() : null;
+        JsonElement arguments = action != null && BridgeTrafficReplayer.isReplayed(action) ? request.get("arguments") : null;
+        record(JS_TO_JAVA,
+            action,
+            arguments,
+            requestSize,
+            responseString != null ? responseString.length() : 0,
+            response.isSuccess(),
+            durationNanos);
+    }
+
+    /**
+     * @param durationNanos How long it took until the webview answered.
+     */
+    public void recordJavaToJS(@NotNull String action, int requestSize, int responseSize, long durationNanos) {
+        if (!isEnabled) {
+            return;
+        }
+        record(JAVA_TO_JS, action, null, requestSize, responseSize, true, durationNanos);
+    }
+
+    /**
+     * Records the length of a preview content that the webview uploaded through {@link PreviewUploadHandler}, so that
+     * replays can put text of that length in place of the handle.
+     */
+    public void recordUpload(@NotNull String contentHandle, int byteLength) {
+        if (!isEnabled) {
+            return;
+        }
+        JsonObject arguments = new JsonObject();
+        arguments.addProperty("contentHandle", contentHandle);
+        record(UPLOAD, "previewUpload", arguments, byteLength, 0, true, 0);
+    }
+
+    private void record(@NotNull String direction,
+                        @Nullable String action,
+                        @Nullable JsonElement arguments,
+                        int requestSize,
+                        int responseSize,
+                        boolean isSuccess,
+                        long durationNanos) {
+        long timeMillis = System.currentTimeMillis();
+        writer.execute(() -> {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("time", timeMillis);
+            entry.addProperty("direction", direction);
+            entry.addProperty("action", action);
+            entry.addProperty("durationMicros", TimeUnit.NANOSECONDS.toMicros(durationNanos));
+            entry.addProperty("requestSize", requestSize);
+            entry.addProperty("responseSize", responseSize);
+            entry.addProperty("isSuccess", isSuccess);
+            if (arguments != null) {
+                entry.add("arguments", redact(arguments));
+            }
+            write(entry.toString());
+        });
+    }
+
+    /**
+     * @return A copy without "accessToken" members, and with every "content" string replaced by a "contentLength" number.
+     */
+    @NotNull
+    private static JsonElement redact(@NotNull JsonElement element) {
+        if (element.isJsonArray()) {
+            JsonArray copy = new JsonArray();
+            for (JsonElement item : element.getAsJsonArray()) {
+                copy.add(redact(item));
+            }
+            return copy;
+        }
+        if (!element.isJsonObject()) {
+            return element;
+        }
+        JsonObject copy = new JsonObject();
+        for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+            JsonElement value = member.getValue();
+            if (member.getKey().equals("accessToken")) {
+                continue;
+            }
+            if (member.getKey().equals("content") && value.isJsonPrimitive()) {
+                copy.addProperty("contentLength", value.getAsString().length());
+            } else {
+                copy.add(member.getKey(), redact(value));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Only called from the writer.
+     */
+    private void write(@NotNull String line) {
+        try {
+            if (output == null) {
+                Files.createDirectories(logPath.getParent());
+                currentFileSize = Files.exists(logPath) ? Files.size(logPath) : 0;
+                output = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            if (currentFileSize > MAX_FILE_SIZE_BYTES) {
+                output.close();
+                Files.move(logPath, rotatedLogPath, StandardCopyOption.REPLACE_EXISTING);
+                output = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                currentFileSize = 0;
+            }
+            output.write(line);
+            output.newLine();
+            output.flush();
+            currentFileSize += line.length() + 1;
+        } catch (IOException e) {
+            logger.warn("Could not write the bridge recording to " + logPath, e);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (writer == null) {
+            return;
+        }
+        writer.execute(() -> {
+            try {
+                if (output != null) {
+                    output.close();
+                }
+            } catch (IOException ignored) {
+            }
+        });
+    }
+}
@@ -0,0 +1,168 @@
+package com.sourcegraph.browser;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Feeds the webview's requests from a {@link BridgeTrafficRecorder} recording back into a request handler, so that
+ * performance problems from the field can be reproduced offline and compared between builds.
+ */
+public class BridgeTrafficReplayer {
+    // These would open editors and browsers, change the user's settings, search history or cached results, search
+    // the local files, or take state that the real webview needs
+    private static final Set<String> SKIPPED_ACTIONS = Set.of("open", "saveLastSearch", "removeSearchHistoryEntry",
+        "loadUiState", "saveSearchResults", "searchLocalIndex");
+
+    public static class RecordedRequest {
+        private final long timeMillis;
+        private final JsonObject request;
+
+        private RecordedRequest(long timeMillis, @NotNull JsonObject request) {
+            this.timeMillis = timeMillis;
+            this.request = request;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /**
+         * @return The request as the webview sent it. Don't modify it.
+         */
+        @NotNull
+        public JsonObject getRequest() {
+            return request;
+        }
+    }
+
+    /**
+     * @return Whether recordings need the arguments of this action. The recorder leaves them out for the others.
+     */
+    public static boolean isReplayed(@NotNull String action) {
+        return !SKIPPED_ACTIONS.contains(action);
+    }
+
+    /**
+     * Reads the webview's requests from a recording, skipping the ones with side effects outside the IDE's memory.
+     * File contents aren't recorded, so they are replaced with generated text of the recorded length. This includes
+     * uploaded contents, which are then sent inline instead of by handle.
+     */
+    @NotNull
+    public static List<RecordedRequest> readRequests(@NotNull Path recording) throws IOException {
+        List<RecordedRequest> requests = new ArrayList<>();
+        Map<String, Integer> uploadLengthsByHandle = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(recording, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonObject entry = JsonParser.parseString(line).getAsJsonObject();
+                JsonElement action = entry.get("action");
+                if (BridgeTrafficRecorder.UPLOAD.equals(entry.get("direction").getAsString()) && entry.has("arguments")) {
+                    uploadLengthsByHandle.put(entry.getAsJsonObject("arguments").get("contentHandle").getAsString(), entry.get("requestSize").getAsInt());
+                    continue;
+                }
+                if (!BridgeTrafficRecorder.JS_TO_JAVA.equals(entry.get("direction").getAsString())
+                    || action == null || action.isJsonNull() || !isReplayed(action.getAsString())) {
+                    continue;
+                }
+                JsonObject request = new JsonObject();
+                request.add("action", action);
+                if (entry.has("arguments")) {
+                    JsonElement arguments = entry.get("arguments");
+                    if (arguments.isJsonObject() && arguments.getAsJsonObject().has("contentLength")) {
+                        JsonObject argumentsObject = arguments.getAsJsonObject();
+                        argumentsObject.addProperty("content", createPlaceholderContent(argumentsObject.remove("contentLength").getAsInt()));
+                    }
+                    if (arguments.isJsonObject() && arguments.getAsJsonObject().has("contentHandle")) {
+                        JsonObject argumentsObject = arguments.getAsJsonObject();
+                        Integer uploadLength = uploadLengthsByHandle.remove(argumentsObject.get("contentHandle").getAsString());
+                        if (uploadLength != null) {
+                            argumentsObject.remove("contentHandle");
+                            // The upload is raw bytes, the inline content is Base64
+                            argumentsObject.addProperty("content", createPlaceholderContent((uploadLength + 2) / 3 * 4));
+                        }
+                    }
+                    request.add("arguments", arguments);
+                }
+                requests.add(new RecordedRequest(entry.get("time").getAsLong(), request));
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * Sends the requests to the handler on the current thread, like JCEF does on its own thread.
+     * The sequence numbers are moved to the present so that the popup doesn't ignore them as outdated.
+     *
+     * @param speed 1 keeps the original pauses between requests, 10 makes them ten times shorter, 0 leaves them out.
+     * @return How long the handler took for each request, in nanoseconds.
+     */
+    @NotNull
+    public static long[] replay(@NotNull List<RecordedRequest> requests,
+                                @NotNull JSToJavaBridgeRequestHandler requestHandler,
+                                double speed) throws InterruptedException {
+        long[] durations = new long[requests.size()];
+        if (requests.isEmpty()) {
+            return durations;
+        }
+
+        long firstRecordedTime = requests.get(0).getTimeMillis();
+        long replayStartTime = System.currentTimeMillis();
+        for (int i = 0; i < requests.size(); i++) {
+            RecordedRequest recordedRequest = requests.get(i);
+            if (speed > 0) {
+                long dueTime = replayStartTime + (long) ((recordedRequest.getTimeMillis() - firstRecordedTime) / speed);
+                long waitTime = dueTime - System.currentTimeMillis();
+                if (waitTime > 0) {
+                    Thread.sleep(waitTime);
+                }
+            }
+
+            JsonObject request = moveToPresent(recordedRequest.getRequest(), replayStartTime - firstRecordedTime);
+            long startTime = System.nanoTime();
+            requestHandler.handle(request);
+            durations[i] = System.nanoTime() - startTime;
+        }
+        return durations;
+    }
+
+    /**
+     * @return Base64-encoded lines of text, about as long as the recorded Base64 content.
+     */
+    @NotNull
+    private static String createPlaceholderContent(int base64Length) {
+        StringBuilder text = new StringBuilder();
+        int textLength = base64Length / 4 * 3;
+        while (text.length() < textLength) {
+            text.append(text.length() % 80 == 79 ? '\n' : 'x');
+        }
+        return Base64.getEncoder().encodeToString(text.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @NotNull
+    public static JsonObject moveToPresent(@NotNull JsonObject recordedRequest, long offsetMillis) {
+        JsonObject request = recordedRequest.deepCopy();
+        JsonObject arguments = request.has("arguments") && request.get("arguments").isJsonObject() ? request.getAsJsonObject("arguments") : null;
+        if (arguments != null && arguments.has("sequenceNumber")) {
+            // The webview starts counting at its load time in microseconds
+            arguments.addProperty("sequenceNumber", arguments.get("sequenceNumber").getAsLong() + offsetMillis * 1000);
+        }
+        return request;
+    }
+}
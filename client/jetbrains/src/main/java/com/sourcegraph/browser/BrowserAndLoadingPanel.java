@@ -27,6 +27,12 @@ public class BrowserAndLoadingPanel extends JLayeredPane {
 
     public void setBrowser(@NotNull SourcegraphJBCefBrowser browser) {
         jcefPanel.add(browser.getComponent());
+        jcefPanel.revalidate();
+    }
+
+    public void removeBrowser(@NotNull SourcegraphJBCefBrowser browser) {
+        jcefPanel.remove(browser.getComponent());
+        jcefPanel.revalidate();
     }
 
     @Override
@@ -0,0 +1,174 @@
+package com.sourcegraph.browser;
+
+import com.sourcegraph.config.UserLevelConfig;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Puts large bridge messages back together. The webview splits messages longer than {@link #MAX_FRAME_LENGTH} into
+ * frames of the form {@code sgchunk:<messageId>:<index>:<count>:<data>} and sends them in order. Message ids start with
+ * an id of the page load, so that a reloaded webview doesn't continue the messages of the previous page.
+ * <p>
+ * The frames are copied into a char buffer that is reused for later messages, and the complete message is parsed
+ * straight from that buffer, so we never hold the whole message as one String. The buffer grows as frames arrive, so
+ * a frame count in the header doesn't make us allocate memory for data that was never sent.
+ * Messages with more frames than {@link UserLevelConfig#getBridgeMaxFramesPerMessage()} are rejected.
+ */
+class ChunkedMessageAssembler {
+    static final String FRAME_PREFIX = "sgchunk:";
+    // Must match MAX_FRAME_LENGTH in js-to-java-bridge.ts
+    static final int MAX_FRAME_LENGTH = 64 * 1024;
+    // Messages that were never finished, e.g. because the webview reloaded, are dropped after this many newer ones
+    private static final int MAX_PENDING_MESSAGES = 4;
+    private static final int MAX_POOLED_BUFFERS = 2;
+    // Larger buffers are not kept for reuse, so that one huge message doesn't hold on to its memory
+    private static final int MAX_POOLED_BUFFER_LENGTH = 4 * 1024 * 1024;
+
+    private final int maxFramesPerMessage = UserLevelConfig.getBridgeMaxFramesPerMessage();
+    private final Map<String, PendingMessage> pendingMessages = new LinkedHashMap<>();
+    private final ArrayDeque<char[]> bufferPool = new ArrayDeque<>();
+
+    static boolean isFrame(@NotNull String request) {
+        return request.startsWith(FRAME_PREFIX);
+    }
+
+    /**
+     * @return The complete message once the last frame has arrived, otherwise null.
+     * @throws IllegalArgumentException If the frame is malformed, out of order, or over the limit.
+     */
+    @Nullable
+    synchronized Message accept(@NotNull String frame) {
+        int messageIdEnd = frame.indexOf(':', FRAME_PREFIX.length());
+        int indexEnd = messageIdEnd != -1 ? frame.indexOf(':', messageIdEnd + 1) : -1;
+        int countEnd = indexEnd != -1 ? frame.indexOf(':', indexEnd + 1) : -1;
+        if (countEnd == -1) {
+            throw new IllegalArgumentException("Malformed frame header.");
+        }
+        String messageId = frame.substring(FRAME_PREFIX.length(), messageIdEnd);
+        int index = Integer.parseInt(frame.substring(messageIdEnd + 1, indexEnd));
+        int count = Integer.parseInt(frame.substring(indexEnd + 1, countEnd));
+        int dataLength = frame.length() - countEnd - 1;
+
+        if (count > maxFramesPerMessage || count < 1) {
+            discard(messageId);
+            throw new IllegalArgumentException("Message has " + count + " frames, the limit is " + maxFramesPerMessage + ".");
+        }
+        if (dataLength > MAX_FRAME_LENGTH) {
+            discard(messageId);
+            throw new IllegalArgumentException("Frame is " + dataLength + " characters long, the limit is " + MAX_FRAME_LENGTH + ".");
+        }
+
+        PendingMessage message = pendingMessages.get(messageId);
+        if (message == null) {
+            if (index != 0) {
+                throw new IllegalArgumentException("Frame " + index + " of unknown message " + messageId + ".");
+            }
+            message = new PendingMessage(count, acquireBuffer(MAX_FRAME_LENGTH));
+            pendingMessages.put(messageId, message);
+            dropAbandonedMessages();
+        } else if (index != message.nextIndex || count != message.count) {
+            discard(messageId);
+            throw new IllegalArgumentException("Frame " + index + " of message " + messageId + " is out of order.");
+        }
+
+        ensureCapacity(message, message.length + dataLength);
+        frame.getChars(countEnd + 1, frame.length(), message.buffer, message.length);
+        message.length += dataLength;
+        message.nextIndex++;
+        if (message.nextIndex < message.count) {
+            return null;
+        }
+        pendingMessages.remove(messageId);
+        return new Message(message.buffer, message.length);
+    }
+
+    private void ensureCapacity(@NotNull PendingMessage message, int minLength) {
+        if (message.buffer.length >= minLength) {
+            return;
+        }
+        // Double the buffer, but never beyond what the remaining frames can fill
+        long maxLength = (long) message.count * MAX_FRAME_LENGTH;
+        char[] newBuffer = acquireBuffer((int) Math.min(maxLength, Math.max(minLength, 2L * message.buffer.length)));
+        System.arraycopy(message.buffer, 0, newBuffer, 0, message.length);
+        releaseBuffer(message.buffer);
+        message.buffer = newBuffer;
+    }
+
+    private void discard(@NotNull String messageId) {
+        PendingMessage message = pendingMessages.remove(messageId);
+        if (message != null) {
+            releaseBuffer(message.buffer);
+        }
+    }
+
+    private void dropAbandonedMessages() {
+        Iterator<PendingMessage> iterator = pendingMessages.values().iterator();
+        while (pendingMessages.size() > MAX_PENDING_MESSAGES && iterator.hasNext()) {
+            releaseBuffer(iterator.next().buffer);
+            iterator.remove();
+        }
+    }
+
+    @NotNull
+    private char[] acquireBuffer(int minLength) {
+        for (Iterator<char[]> iterator = bufferPool.iterator(); iterator.hasNext(); ) {
+            char[] buffer = iterator.next();
+            if (buffer.length >= minLength) {
+                iterator.remove();
+                return buffer;
+            }
+        }
+        return new char[minLength];
+    }
+
+    private synchronized void releaseBuffer(@NotNull char[] buffer) {
+        if (buffer.length <= MAX_POOLED_BUFFER_LENGTH && bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.push(buffer);
+        }
+    }
+
+    /**
+     * A complete message. Must be released after reading, so that its buffer can be reused.
+     */
+    class Message {
+        private final char[] buffer;
+        private final int length;
+
+        private Message(@NotNull char[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        @NotNull
+        Reader getReader() {
+            return new CharArrayReader(buffer, 0, length);
+        }
+
+        void release() {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private static class PendingMessage {
+        private final int count;
+        private char[] buffer;
+        private int nextIndex = 0;
+        private int length = 0;
+
+        private PendingMessage(int count, @NotNull char[] buffer) {
+            this.count = count;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.sourcegraph.browser;
 
 import com.google.common.collect.ImmutableMap;
+import com.sourcegraph.metrics.MetricsRegistry;
 import org.cef.callback.CefCallback;
 import org.cef.handler.CefResourceHandlerAdapter;
 import org.cef.misc.IntRef;
@@ -23,9 +24,22 @@ public class HttpSchemeHandler extends CefResourceHandlerAdapter {
     private int offset = 0;
 
     public boolean processRequest(@NotNull CefRequest request, @NotNull CefCallback callback) {
-        String extension = getExtension(request.getURL());
+        if (processUrl(request.getURL())) {
+            callback.Continue();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Prepares the response for the given URL. Separate from {@link #processRequest} so that it can run without JCEF.
+     *
+     * @return False if we don't serve this kind of file.
+     */
+    public boolean processUrl(@NotNull String url) {
+        String extension = getExtension(url);
         mimeType = getMimeType(extension);
-        String url = request.getURL();
         String path = url.replace("http://sourcegraph", "");
 
         if (mimeType != null) {
@@ -35,7 +49,7 @@ public class HttpSchemeHandler extends CefResourceHandlerAdapter {
                 String defaultContent = getDefaultContent(extension, path);
                 data = (defaultContent != null ? defaultContent : "").getBytes();
             }
-            callback.Continue();
+            MetricsRegistry.getInstance().counter("scheme.bytesServed").add(data.length);
             return true;
         } else {
             return false;
@@ -9,6 +9,9 @@ import org.cef.network.CefRequest;
 public class HttpSchemeHandlerFactory implements CefSchemeHandlerFactory {
     @Override
     public CefResourceHandler create(CefBrowser browser, CefFrame frame, String schemeName, CefRequest request) {
+        if (request.getURL().startsWith(PreviewUploadHandler.URL_PREFIX)) {
+            return new PreviewUploadHandler();
+        }
         return new HttpSchemeHandler();
     }
 }
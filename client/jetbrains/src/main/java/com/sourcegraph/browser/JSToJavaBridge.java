@@ -5,25 +5,63 @@ import com.google.gson.JsonParser;
 import com.intellij.openapi.Disposable;
 import com.intellij.ui.jcef.JBCefBrowserBase;
 import com.intellij.ui.jcef.JBCefJSQuery;
+import com.sourcegraph.metrics.MetricsRegistry;
+import com.sourcegraph.metrics.Tracer;
 import org.cef.browser.CefBrowser;
 import org.cef.browser.CefFrame;
 import org.cef.handler.CefLoadHandler;
 import org.cef.network.CefRequest;
 
+import java.util.function.Supplier;
+
 public class JSToJavaBridge implements Disposable {
     JBCefJSQuery query;
+    private final ChunkedMessageAssembler chunkedMessageAssembler = new ChunkedMessageAssembler();
 
+    /**
+     * @param requestHandlerSupplier Returns the handler of the project that currently shows the browser.
+     */
     public JSToJavaBridge(JBCefBrowserBase browser,
-                          JSToJavaBridgeRequestHandler requestHandler,
+                          Supplier<JSToJavaBridgeRequestHandler> requestHandlerSupplier,
                           String jsCodeToRunAfterBridgeInit) {
         query = JBCefJSQuery.create(browser);
         query.addHandler((String requestAsString) -> {
+            JSToJavaBridgeRequestHandler requestHandler = requestHandlerSupplier.get();
+            if (requestHandler == null) {
+                return new JBCefJSQuery.Response(null, 0, "No project is showing the Sourcegraph window.");
+            }
+            long startTime = System.nanoTime();
+            JsonObject requestAsJson = null;
+            int requestSize = requestAsString.length();
+            JBCefJSQuery.Response response;
             try {
-                JsonObject requestAsJson = JsonParser.parseString(requestAsString).getAsJsonObject();
-                return requestHandler.handle(requestAsJson);
+                if (ChunkedMessageAssembler.isFrame(requestAsString)) {
+                    ChunkedMessageAssembler.Message message = chunkedMessageAssembler.accept(requestAsString);
+                    if (message == null) {
+                        // More frames to come
+                        return new JBCefJSQuery.Response("null");
+                    }
+                    try {
+                        requestSize = message.getLength();
+                        requestAsJson = JsonParser.parseReader(message.getReader()).getAsJsonObject();
+                    } finally {
+                        message.release();
+                    }
+                } else {
+                    requestAsJson = JsonParser.parseString(requestAsString).getAsJsonObject();
+                }
+                try (Tracer.Scope ignored = Tracer.getInstance().startRequest(requestAsJson);
+                     Tracer.Span ignored2 = Tracer.getInstance().startSpan("bridge.handle." + requestAsJson.get("action").getAsString())) {
+                    response = requestHandler.handle(requestAsJson);
+                }
             } catch (Exception e) {
-                return requestHandler.handleInvalidRequest(e);
+                response = requestHandler.handleInvalidRequest(e);
             }
+            long duration = System.nanoTime() - startTime;
+            String action = requestAsJson != null && requestAsJson.has("action") ? requestAsJson.get("action").getAsString() : "invalid";
+            MetricsRegistry.getInstance().histogram("bridge.jsToJava." + action).recordNanos(duration);
+            BridgeTrafficRecorder.getInstance().recordJSToJava(requestAsJson, requestSize, response, duration);
+            return response;
         });
 
         browser.getJBCefClient().addLoadHandler(new CefLoadHandler() {
@@ -42,7 +80,7 @@ public class JSToJavaBridge implements Disposable {
                 cefBrowser.executeJavaScript(
                     "window.callJava = function(request) {" +
                         "    return new Promise((resolve, reject) => { " +
-                        "        const requestAsString = JSON.stringify(request);" +
+                        "        const requestAsString = typeof request === 'string' ? request : JSON.stringify(request);" +
                         "        const onSuccessCallback = responseAsString => {" +
                         "            resolve(JSON.parse(responseAsString));" +
                         "        };" +
@@ -1,24 +1,37 @@
 package com.sourcegraph.browser;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.ui.jcef.JBCefJSQuery;
+import com.sourcegraph.concurrent.BackgroundExecutor;
 import com.sourcegraph.config.ConfigUtil;
-import com.sourcegraph.config.ThemeUtil;
+import com.sourcegraph.config.ThemeService;
 import com.sourcegraph.find.FindPopupPanel;
+import com.sourcegraph.find.LocalPreviewSource;
+import com.sourcegraph.find.LocalTrigramIndex;
 import com.sourcegraph.find.PreviewContent;
+import com.sourcegraph.find.PreviewPrefetcher;
+import com.sourcegraph.find.RemoteContentCache;
 import com.sourcegraph.find.Search;
+import com.sourcegraph.find.SearchHistory;
+import com.sourcegraph.find.SearchHistoryIndex;
+import com.sourcegraph.find.SearchResultCache;
+import com.sourcegraph.metrics.Tracer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.time.Instant;
-import java.time.format.DateTimeFormatter;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
 
 public class JSToJavaBridgeRequestHandler {
+    // Local matches only need to fill the first screen while the remote results load
+    private static final int MAX_LOCAL_MATCH_FILES = 50;
+
     private final Project project;
     private final FindPopupPanel findPopupPanel;
 
@@ -36,21 +49,49 @@ public class JSToJavaBridgeRequestHandler {
                 case "getConfig":
                     return createSuccessResponse(ConfigUtil.getConfigAsJson(project));
                 case "getTheme":
-                    JsonObject currentThemeAsJson = ThemeUtil.getCurrentThemeAsJson();
-                    return createSuccessResponse(currentThemeAsJson);
+                    return createSuccessResponse(ThemeService.getInstance().getCurrentThemeAsJson());
                 case "saveLastSearch":
-                    arguments = request.getAsJsonObject("arguments");
-                    String query = arguments.get("query").getAsString();
-                    boolean caseSensitive = arguments.get("caseSensitive").getAsBoolean();
-                    String patternType = arguments.get("patternType").getAsString();
-                    String selectedSearchContextSpec = arguments.get("selectedSearchContextSpec").getAsString();
-                    ConfigUtil.setLastSearch(project, new Search(
-                        query,
-                        caseSensitive,
-                        patternType,
-                        selectedSearchContextSpec
-                    ));
+                    Search search = Search.fromJson(request.getAsJsonObject("arguments"));
+                    Search previousSearch = ConfigUtil.getLastSearch(project);
+                    ConfigUtil.setLastSearch(project, search);
+                    // Toggling case sensitivity or the pattern type submits the same query again, which isn't another use
+                    if (search.getQuery() != null && (previousSearch == null || !search.getQuery().equals(previousSearch.getQuery()))) {
+                        SearchHistory.getInstance(project).record(search.getQuery());
+                    }
                     return createSuccessResponse(new JsonObject());
+                case "searchLocalIndex":
+                    Search localSearch = Search.fromJson(request.getAsJsonObject("arguments").getAsJsonObject("search"));
+                    JsonArray localMatches = LocalTrigramIndex.getInstance(project).search(localSearch, MAX_LOCAL_MATCH_FILES);
+                    if (localMatches == null) {
+                        return createSuccessResponse(null);
+                    }
+                    JsonObject localMatchesResponse = new JsonObject();
+                    localMatchesResponse.add("matches", localMatches);
+                    return createSuccessResponse(localMatchesResponse);
+                case "getSearchHistoryCompletions":
+                    arguments = request.getAsJsonObject("arguments");
+                    JsonArray completions = new JsonArray();
+                    for (SearchHistoryIndex.Entry entry : SearchHistory.getInstance(project).complete(arguments.get("prefix").getAsString(), arguments.get("limit").getAsInt())) {
+                        JsonObject completion = new JsonObject();
+                        completion.addProperty("query", entry.getQuery());
+                        completion.addProperty("useCount", entry.getUseCount());
+                        completion.addProperty("lastUsedMillis", entry.getLastUsedMillis());
+                        completions.add(completion);
+                    }
+                    JsonObject completionsResponse = new JsonObject();
+                    completionsResponse.add("completions", completions);
+                    return createSuccessResponse(completionsResponse);
+                case "removeSearchHistoryEntry":
+                    SearchHistory.getInstance(project).remove(request.getAsJsonObject("arguments").get("query").getAsString());
+                    return createSuccessResponse(null);
+                case "saveSearchResults":
+                    arguments = request.getAsJsonObject("arguments");
+                    SearchResultCache.getInstance(project).put(Search.fromJson(arguments.getAsJsonObject("search")), arguments.get("results").toString());
+                    return createSuccessResponse(null);
+                case "loadSearchResults":
+                    String cachedResults = SearchResultCache.getInstance(project).get(Search.fromJson(request.getAsJsonObject("arguments").getAsJsonObject("search")));
+                    // Already JSON, so there's no need to parse it just to serialize it again
+                    return new JBCefJSQuery.Response(cachedResults != null ? cachedResults : "null");
                 case "loadLastSearch":
                     Search lastSearch = ConfigUtil.getLastSearch(this.project);
 
@@ -58,33 +99,45 @@ public class JSToJavaBridgeRequestHandler {
                         return createSuccessResponse(null);
                     }
 
-                    JsonObject lastSearchAsJson = new JsonObject();
-                    lastSearchAsJson.addProperty("query", lastSearch.getQuery());
-                    lastSearchAsJson.addProperty("caseSensitive", lastSearch.isCaseSensitive());
-                    lastSearchAsJson.addProperty("patternType", lastSearch.getPatternType());
-                    lastSearchAsJson.addProperty("selectedSearchContextSpec", lastSearch.getSelectedSearchContextSpec());
-                    return createSuccessResponse(lastSearchAsJson);
+                    return createSuccessResponse(lastSearch.toJson());
+                case "prefetchPreviews":
+                    arguments = request.getAsJsonObject("arguments");
+                    List<PreviewPrefetcher.FileKey> files = new ArrayList<>();
+                    for (JsonElement file : arguments.getAsJsonArray("files")) {
+                        files.add(PreviewPrefetcher.FileKey.fromJson(file.getAsJsonObject()));
+                    }
+                    PreviewPrefetcher.getInstance(project).prefetch(files);
+                    return createSuccessResponse(null);
+                case "loadUiState":
+                    return createSuccessResponse(SourcegraphBrowserHost.getInstance().takeSuspendedUiState(project));
                 case "previewLoading":
                     arguments = request.getAsJsonObject("arguments");
+                    long loadingSequenceNumber = arguments.get("sequenceNumber").getAsLong();
                     // Wait a bit to avoid flickering in case of a fast network
-                    new Thread(() -> {
-                        try {
-                            Thread.sleep(300);
-                        } catch (InterruptedException ignored) {
-                        }
-                        ApplicationManager.getApplication().invokeLater(() -> findPopupPanel.indicateLoadingIfInTime(Date.from(
-                            Instant.from(DateTimeFormatter.ISO_INSTANT.parse(arguments.get("timeAsISOString").getAsString())))));
-                    }).start();
-                    return createSuccessResponse(null);
+                    BackgroundExecutor.getInstance().schedule("previewLoading", findPopupPanel, 300,
+                        () -> ApplicationManager.getApplication().invokeLater(() -> findPopupPanel.indicateLoadingIfInTime(loadingSequenceNumber)));
+                    JsonObject previewLoadingResponse = new JsonObject();
+                    previewLoadingResponse.addProperty("isContentPrefetched", arguments.has("path") && hasContent(PreviewPrefetcher.FileKey.fromJson(arguments)));
+                    return createSuccessResponse(previewLoadingResponse);
                 case "preview":
                     arguments = request.getAsJsonObject("arguments");
-                    previewContent = PreviewContent.fromJson(project, arguments);
-                    ApplicationManager.getApplication().invokeLater(() -> findPopupPanel.setPreviewContentIfInTime(previewContent));
+                    try (Tracer.Span ignored = Tracer.getInstance().startSpan("preview.fromJson")) {
+                        previewContent = PreviewContent.fromJson(project, arguments);
+                    }
+                    if (RemoteContentCache.isCommitPinned(previewContent.getCommit()) && previewContent.getPath() != null && previewContent.opensInEditor()) {
+                        // Decodes the content here rather than on the writer thread, so that it's done only once
+                        String decodedContent = previewContent.getContent();
+                        if (decodedContent != null) {
+                            RemoteContentCache.getInstance().putContentAsync(ConfigUtil.getSourcegraphUrl(project), previewContent.getRepoUrl(),
+                                previewContent.getCommit(), previewContent.getPath(), decodedContent);
+                        }
+                    }
+                    ApplicationManager.getApplication().invokeLater(Tracer.getInstance().wrap("edt.queue.preview",
+                        () -> findPopupPanel.setPreviewContentIfInTime(previewContent)));
                     return createSuccessResponse(null);
                 case "clearPreview":
-                    arguments = request.getAsJsonObject("arguments");
-                    ApplicationManager.getApplication().invokeLater(() -> findPopupPanel.clearPreviewContentIfInTime(Date.from(
-                        Instant.from(DateTimeFormatter.ISO_INSTANT.parse(arguments.get("timeAsISOString").getAsString())))));
+                    long clearSequenceNumber = request.getAsJsonObject("arguments").get("sequenceNumber").getAsLong();
+                    ApplicationManager.getApplication().invokeLater(() -> findPopupPanel.clearPreviewContentIfInTime(clearSequenceNumber));
                     return createSuccessResponse(null);
                 case "open":
                     arguments = request.getAsJsonObject("arguments");
@@ -96,6 +149,7 @@ public class JSToJavaBridgeRequestHandler {
                     }
                     return createSuccessResponse(null);
                 case "indicateFinishedLoading":
+                    SourcegraphBrowserHost.getInstance().indicateWebviewLoaded();
                     findPopupPanel.setBrowserVisible(true);
                     return createSuccessResponse(null);
                 default:
@@ -106,6 +160,15 @@ public class JSToJavaBridgeRequestHandler {
         }
     }
 
+    /**
+     * Lets the webview skip loading the content when it's checked out locally or prefetched.
+     */
+    private boolean hasContent(@NotNull PreviewPrefetcher.FileKey file) {
+        return PreviewPrefetcher.getInstance(project).hasContent(file)
+            || RemoteContentCache.getInstance().hasContent(ConfigUtil.getSourcegraphUrl(project), file.getRepoUrl(), file.getCommit(), file.getPath())
+            || LocalPreviewSource.getInstance(project).hasContent(file);
+    }
+
     @NotNull
     public Project getProject() {
         return project;
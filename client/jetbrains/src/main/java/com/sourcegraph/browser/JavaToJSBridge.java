@@ -1,5 +1,6 @@
 package com.sourcegraph.browser;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -7,25 +8,32 @@ import com.google.gson.JsonSyntaxException;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.ui.jcef.JBCefBrowserBase;
 import com.intellij.ui.jcef.JBCefJSQuery;
+import com.sourcegraph.concurrent.SerialExecutor;
+import com.sourcegraph.metrics.MetricsRegistry;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 public class JavaToJSBridge {
+    // If the webview doesn't answer by then, e.g. because the script failed, we stop waiting so that later calls can run
+    private static final long RESPONSE_TIMEOUT_MS = 10_000;
+    private static final Gson gson = new Gson();
+
     private final JBCefBrowserBase browser;
     private final JBCefJSQuery query;
-    private final Lock lock;
+    private final SerialExecutor calls = new SerialExecutor("callJS");
+    private final AtomicLong nextCallId = new AtomicLong();
     private Function<String, JBCefJSQuery.Response> handler = null;
 
     public JavaToJSBridge(JBCefBrowserBase browser) {
         this.browser = browser;
         this.query = JBCefJSQuery.create(browser);
-        this.lock = new ReentrantLock();
     }
 
     public void callJS(@NotNull String action, @Nullable JsonObject arguments) {
@@ -39,25 +47,44 @@ public class JavaToJSBridge {
         // A separate thread is needed because the response handling uses the main thread,
         // so if we did the JS call in the main thread and then waited, the response handler
         // would never be called.
-        new Thread(() -> {
+        // Reason for running the calls one at a time:
+        // JBCefJSQuery objects MUST be created before the browser is loaded, otherwise an error is thrown.
+        // As there is only one JBCefJSQuery object, and we need to wait for the result of the last execution,
+        // we can only run one query at a time. Queueing them, rather than waiting for a lock, keeps the other calls
+        // from taking up background threads while they wait.
+        // If this ever becomes a bottleneck, we can create a pool of JBCefJSQuery objects and a counting semaphore.
+        calls.execute(() -> {
             Logger logger = Logger.getInstance(this.getClass());
-            // Reason for the locking:
-            // JBCefJSQuery objects MUST be created before the browser is loaded, otherwise an error is thrown.
-            // As there is only one JBCefJSQuery object, and we need to wait for the result of the last execution,
-            // we can only run one query at a time.
-            // If this ever becomes a bottleneck, we can create a pool of JBCefJSQuery objects and a counting semaphore.
-            lock.lock();
+            if (browser.isDisposed()) {
+                if (result != null) {
+                    result.complete(null);
+                }
+                return;
+            }
 
             // This future is needed to communicate between this thread and the response handler thread.
             CompletableFuture<Void> handlerCompletedFuture = new CompletableFuture<>();
 
-            String js = "window.callJS('" + action + "', '" + (arguments != null ? arguments.toString() : "null") + "', (result) => {" +
-                "    " + query.inject("result") +
+            String argumentsAsString = arguments != null ? arguments.toString() : "null";
+            // JSON-encoded, so that quotes, backslashes and line breaks in the arguments (e.g. a search query) are escaped
+            // The answer is prefixed with the call's id, so that a late answer to a call we gave up on is ignored
+            String callIdPrefix = nextCallId.incrementAndGet() + ":";
+            String js = "window.callJS(" + gson.toJson(action) + ", " + gson.toJson(argumentsAsString) + ", (result) => {" +
+                "    " + query.inject(gson.toJson(callIdPrefix) + " + result") +
                 "});";
 
-            handler = responseAsString -> {
+            long startTime = System.nanoTime();
+            handler = answer -> {
+                if (!answer.startsWith(callIdPrefix)) {
+                    return null;
+                }
+                String responseAsString = answer.substring(callIdPrefix.length());
                 query.removeHandler(handler);
                 handler = null;
+                long duration = System.nanoTime() - startTime;
+                MetricsRegistry.getInstance().histogram("bridge.javaToJs." + action).recordNanos(duration);
+                BridgeTrafficRecorder.getInstance().recordJavaToJS(action, argumentsAsString.length(),
+                    responseAsString != null ? responseAsString.length() : 0, duration);
                 try {
                     JsonElement jsonElement = JsonParser.parseString(responseAsString);
                     if (result != null) {
@@ -78,16 +105,18 @@ public class JavaToJSBridge {
             browser.getCefBrowser().executeJavaScript(js, browser.getCefBrowser().getURL(), 0);
 
             try {
-                handlerCompletedFuture.get();
+                handlerCompletedFuture.get(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                logger.warn("The webview didn't answer \"" + action + "\" in time.");
+                query.removeHandler(handler);
+                handler = null;
+                if (result != null) {
+                    result.complete(null);
+                }
             } catch (InterruptedException | ExecutionException e) {
                 logger.warn("Some problem occurred with the JS response thread.");
                 logger.warn(e);
-            } finally {
-                // It's only allowed to unlock the lock in the thread where it was locked.
-                // This is why `handlerCompletedFuture` is needed in the first place.
-                // Otherwise, the handler could simply unlock the lock, but that's not allowed in Java.
-                lock.unlock();
             }
-        }).start();
+        });
     }
 }
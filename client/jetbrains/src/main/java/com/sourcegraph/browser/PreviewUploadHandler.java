@@ -0,0 +1,92 @@
+package com.sourcegraph.browser;
+
+import com.sourcegraph.find.UploadedPreviewContentStore;
+import com.sourcegraph.metrics.MetricsRegistry;
+import org.cef.callback.CefCallback;
+import org.cef.handler.CefResourceHandlerAdapter;
+import org.cef.misc.IntRef;
+import org.cef.misc.StringRef;
+import org.cef.network.CefPostData;
+import org.cef.network.CefPostDataElement;
+import org.cef.network.CefRequest;
+import org.cef.network.CefResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Vector;
+
+/**
+ * Receives preview file contents that the webview POSTs as raw bytes to {@code http://sourcegraph/bridge/preview/<handle>}.
+ * This way, large files don't have to go through the JSON bridge as base64, which is a third larger and gets copied
+ * and escaped several times. The "preview" request that follows only carries the handle.
+ */
+public class PreviewUploadHandler extends CefResourceHandlerAdapter {
+    public static final String URL_PREFIX = "http://sourcegraph/bridge/preview/";
+
+    private int status = 400;
+
+    @Override
+    public boolean processRequest(@NotNull CefRequest request, @NotNull CefCallback callback) {
+        String handle = request.getURL().substring(URL_PREFIX.length());
+        byte[] content = "POST".equals(request.getMethod()) ? readPostData(request.getPostData()) : null;
+        if (handle.isEmpty() || content == null) {
+            status = 400;
+        } else {
+            UploadedPreviewContentStore.getInstance().put(handle, content);
+            MetricsRegistry.getInstance().counter("preview.bytesUploaded").add(content.length);
+            BridgeTrafficRecorder.getInstance().recordUpload(handle, content.length);
+            status = 204;
+        }
+        callback.Continue();
+        return true;
+    }
+
+    @Override
+    public void getResponseHeaders(CefResponse response, IntRef responseLength, StringRef redirectUrl) {
+        response.setMimeType("text/plain");
+        response.setStatus(status);
+        responseLength.set(0);
+    }
+
+    @Override
+    public boolean readResponse(byte[] dataOut, int bytesToRead, IntRef bytesRead, CefCallback callback) {
+        bytesRead.set(0);
+        return false;
+    }
+
+    /**
+     * Copies the bytes straight out of the post data elements. Usually there is only one, which we return as is.
+     */
+    @Nullable
+    private static byte[] readPostData(@Nullable CefPostData postData) {
+        if (postData == null) {
+            return null;
+        }
+        Vector<CefPostDataElement> elements = new Vector<>();
+        postData.getElements(elements);
+
+        byte[][] parts = new byte[elements.size()][];
+        int totalSize = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            CefPostDataElement element = elements.get(i);
+            if (element.getType() != CefPostDataElement.Type.PDE_TYPE_BYTES) {
+                return null;
+            }
+            int size = element.getBytesCount();
+            parts[i] = new byte[size];
+            element.getBytes(size, parts[i]);
+            totalSize += size;
+        }
+        if (parts.length == 1) {
+            return parts[0];
+        }
+
+        byte[] content = new byte[totalSize];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, content, offset, part.length);
+            offset += part.length;
+        }
+        return content;
+    }
+}
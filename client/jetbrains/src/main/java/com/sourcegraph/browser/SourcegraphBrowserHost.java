@@ -0,0 +1,281 @@
+package com.sourcegraph.browser;
+
+import com.google.gson.JsonObject;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.LowMemoryWatcher;
+import com.intellij.ui.jcef.JBCefApp;
+import com.intellij.util.Alarm;
+import com.sourcegraph.config.ConfigUtil;
+import com.sourcegraph.config.UserLevelConfig;
+import com.sourcegraph.find.FindService;
+import com.sourcegraph.find.Search;
+import org.cef.browser.CefBrowser;
+import org.cef.handler.CefKeyboardHandler;
+import org.cef.misc.BoolRef;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the single JCEF browser that the Sourcegraph popups of all open projects share.
+ * Every browser comes with its own renderer process and JS heap, so instead of creating one per project, we move the
+ * browser into the popup of whichever project shows it, and send that project's state to the webview.
+ * <p>
+ * The browser is disposed when the popup has been hidden for a while or when the IDE runs low on memory.
+ * Before that, we save the UI state (selected result and scroll position) so that the next webview can restore it.
+ * The search itself is restored through the last search that the webview already saves.
+ */
+public class SourcegraphBrowserHost implements Disposable {
+    private static final Logger logger = Logger.getInstance(SourcegraphBrowserHost.class);
+    private static final long UI_STATE_TIMEOUT_MS = 1000;
+
+    private final Alarm idleAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+    private SourcegraphJBCefBrowser browser;
+    private volatile JSToJavaBridgeRequestHandler activeRequestHandler;
+    private BrowserAndLoadingPanel activePanel;
+    private boolean isWebviewLoaded = false;
+    // The project whose config and last search the webview has, or null if we don't know, e.g. after it closed
+    private volatile Project webviewProject;
+    // Both guarded by this, as they are set on the EDT and taken on the thread of the webview's requests
+    private Project suspendedProject;
+    private JsonObject suspendedUiState;
+
+    public SourcegraphBrowserHost() {
+        LowMemoryWatcher.register(() -> ApplicationManager.getApplication().invokeLater(this::suspendIfHidden), this);
+    }
+
+    @NotNull
+    public static SourcegraphBrowserHost getInstance() {
+        return ApplicationManager.getApplication().getService(SourcegraphBrowserHost.class);
+    }
+
+    /**
+     * @return The shared browser, or null if JCEF is not supported on this system.
+     */
+    @Nullable
+    public SourcegraphJBCefBrowser getBrowser() {
+        if (browser == null && JBCefApp.isSupported()) {
+            browser = new SourcegraphJBCefBrowser(this::getActiveRequestHandler);
+            Disposer.register(this, browser);
+            registerKeyboardHandler(browser);
+        }
+        return browser;
+    }
+
+    public boolean isBrowserCreated() {
+        return browser != null;
+    }
+
+    /**
+     * @return The request handler of the project that currently shows the browser, or null if there is none.
+     */
+    @Nullable
+    public JSToJavaBridgeRequestHandler getActiveRequestHandler() {
+        return activeRequestHandler;
+    }
+
+    public boolean isActive(@NotNull Project project) {
+        JSToJavaBridgeRequestHandler requestHandler = activeRequestHandler;
+        return requestHandler != null && requestHandler.getProject() == project;
+    }
+
+    /**
+     * Moves the browser into the given panel and routes the webview's requests to the given handler.
+     * If another project used the browser before, its popup is hidden and the webview gets the new project's state.
+     */
+    public void attach(@NotNull JSToJavaBridgeRequestHandler requestHandler, @NotNull BrowserAndLoadingPanel panel) {
+        SourcegraphJBCefBrowser browser = getBrowser();
+        if (browser == null || requestHandler == activeRequestHandler) {
+            return;
+        }
+
+        JSToJavaBridgeRequestHandler previousRequestHandler = activeRequestHandler;
+        Project project = requestHandler.getProject();
+        activeRequestHandler = requestHandler;
+        activePanel = panel;
+        panel.setBrowser(browser);
+        panel.setBrowserVisible(isWebviewLoaded);
+
+        if (previousRequestHandler != null) {
+            Project previousProject = previousRequestHandler.getProject();
+            if (!previousProject.isDisposed()) {
+                previousProject.getService(FindService.class).hidePopupIfVisible();
+            }
+        }
+
+        // Until the webview has loaded, it will fetch the state from the new handler anyway.
+        // Compared with the project the webview has rather than the previous handler, because that may be gone already.
+        if (isWebviewLoaded && webviewProject != project) {
+            webviewProject = project;
+            browser.getJavaToJSBridge().callJS("projectChanged", createProjectStateAsJson(project));
+        }
+    }
+
+    /**
+     * Stops routing requests to the given handler if it's the active one, e.g. because its project is closing.
+     */
+    public void detach(@NotNull JSToJavaBridgeRequestHandler requestHandler) {
+        if (requestHandler != activeRequestHandler) {
+            return;
+        }
+        activeRequestHandler = null;
+        if (browser != null && activePanel != null) {
+            activePanel.removeBrowser(browser);
+        }
+        activePanel = null;
+        if (webviewProject == requestHandler.getProject()) {
+            // Makes the next attach send its project's state, so that this project's token and search don't stay
+            webviewProject = null;
+        }
+        synchronized (this) {
+            if (suspendedProject == requestHandler.getProject()) {
+                suspendedProject = null;
+                suspendedUiState = null;
+            }
+        }
+    }
+
+    public void indicateWebviewLoaded() {
+        isWebviewLoaded = true;
+        // The webview fetched its state from the active handler while loading
+        JSToJavaBridgeRequestHandler requestHandler = activeRequestHandler;
+        webviewProject = requestHandler != null ? requestHandler.getProject() : null;
+    }
+
+    /**
+     * Sends the colors that changed with the look and feel. Webviews that load later get the full theme anyway.
+     */
+    public void sendThemeChange(@NotNull JsonObject themeChange) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (browser != null && isWebviewLoaded) {
+                browser.getJavaToJSBridge().callJS("themeChanged", themeChange);
+            }
+        });
+    }
+
+    public void indicatePopupShown() {
+        idleAlarm.cancelAllRequests();
+    }
+
+    public void indicatePopupHidden() {
+        idleAlarm.cancelAllRequests();
+        int idleTimeoutMinutes = UserLevelConfig.getBrowserIdleTimeoutMinutes();
+        if (idleTimeoutMinutes > 0) {
+            idleAlarm.addRequest(this::suspendIfHidden, TimeUnit.MINUTES.toMillis(idleTimeoutMinutes));
+        }
+    }
+
+    /**
+     * Returns the UI state saved when the browser was disposed, once, if it belongs to the given project.
+     */
+    @Nullable
+    public synchronized JsonObject takeSuspendedUiState(@NotNull Project project) {
+        if (suspendedProject != project) {
+            return null;
+        }
+        JsonObject uiState = suspendedUiState;
+        suspendedProject = null;
+        suspendedUiState = null;
+        return uiState;
+    }
+
+    /**
+     * Disposes the browser to free its memory, unless it's currently shown. The next popup open creates a new one.
+     */
+    private void suspendIfHidden() {
+        SourcegraphJBCefBrowser browserToDispose = browser;
+        JSToJavaBridgeRequestHandler requestHandler = activeRequestHandler;
+        if (browserToDispose == null || isPopupVisible()) {
+            return;
+        }
+
+        CompletableFuture<JsonObject> uiState = new CompletableFuture<>();
+        if (isWebviewLoaded && requestHandler != null) {
+            browserToDispose.getJavaToJSBridge().callJS("getUiState", null, uiState);
+        } else {
+            uiState.complete(null);
+        }
+
+        uiState.completeOnTimeout(null, UI_STATE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .thenAccept(state -> ApplicationManager.getApplication().invokeLater(() -> {
+                // The popup may have been opened again while we were waiting for the webview
+                if (browser != browserToDispose || isPopupVisible()) {
+                    return;
+                }
+                if (requestHandler != null && state != null) {
+                    setSuspendedUiState(requestHandler.getProject(), state);
+                }
+                logger.info("Disposing the Sourcegraph browser to free memory.");
+                disposeBrowser();
+            }));
+    }
+
+    private synchronized void setSuspendedUiState(@NotNull Project project, @NotNull JsonObject uiState) {
+        suspendedProject = project;
+        suspendedUiState = uiState;
+    }
+
+    private boolean isPopupVisible() {
+        JSToJavaBridgeRequestHandler requestHandler = activeRequestHandler;
+        return requestHandler != null && !requestHandler.getProject().isDisposed()
+            && requestHandler.getProject().getService(FindService.class).isPopupVisible();
+    }
+
+    private void disposeBrowser() {
+        idleAlarm.cancelAllRequests();
+        if (browser == null) {
+            return;
+        }
+        if (activePanel != null) {
+            activePanel.removeBrowser(browser);
+            activePanel.setBrowserVisible(false);
+        }
+        Disposer.dispose(browser);
+        browser = null;
+        isWebviewLoaded = false;
+        webviewProject = null;
+        activeRequestHandler = null;
+        activePanel = null;
+    }
+
+    private void registerKeyboardHandler(@NotNull SourcegraphJBCefBrowser browser) {
+        browser.getJBCefClient().addKeyboardHandler(new CefKeyboardHandler() {
+            @Override
+            public boolean onPreKeyEvent(CefBrowser cefBrowser, CefKeyEvent event, BoolRef is_keyboard_shortcut) {
+                return false;
+            }
+
+            @Override
+            public boolean onKeyEvent(CefBrowser cefBrowser, CefKeyEvent event) {
+                JSToJavaBridgeRequestHandler requestHandler = activeRequestHandler;
+                if (requestHandler == null || requestHandler.getProject().isDisposed()) {
+                    return false;
+                }
+                return requestHandler.getProject().getService(FindService.class).handleBrowserKeyPress(event.windows_key_code, event.modifiers);
+            }
+        }, browser.getCefBrowser());
+    }
+
+    @NotNull
+    private static JsonObject createProjectStateAsJson(@NotNull Project project) {
+        Search lastSearch = ConfigUtil.getLastSearch(project);
+        JsonObject projectState = new JsonObject();
+        projectState.add("config", ConfigUtil.getConfigAsJson(project));
+        projectState.add("lastSearch", lastSearch != null ? lastSearch.toJson() : null);
+        return projectState;
+    }
+
+    @Override
+    public void dispose() {
+        activeRequestHandler = null;
+        webviewProject = null;
+        activePanel = null;
+        browser = null;
+    }
+}
@@ -2,15 +2,16 @@ package com.sourcegraph.browser;
 
 import com.intellij.openapi.util.Disposer;
 import com.intellij.ui.jcef.JBCefBrowser;
-import com.sourcegraph.config.SettingsChangeListener;
 import com.sourcegraph.config.ThemeUtil;
 import org.cef.CefApp;
 import org.jetbrains.annotations.NotNull;
 
-import javax.swing.*;
+import java.util.function.Supplier;
 
 public class SourcegraphJBCefBrowser extends JBCefBrowser {
-    public SourcegraphJBCefBrowser(@NotNull JSToJavaBridgeRequestHandler requestHandler) {
+    private final JavaToJSBridge javaToJSBridge;
+
+    public SourcegraphJBCefBrowser(@NotNull Supplier<JSToJavaBridgeRequestHandler> requestHandlerSupplier) {
         super("http://sourcegraph/html/index.html");
         // Create and set up JCEF browser
         CefApp.getInstance().registerSchemeHandlerFactory("http", "sourcegraph", new HttpSchemeHandlerFactory());
@@ -18,17 +19,22 @@ public class SourcegraphJBCefBrowser extends JBCefBrowser {
 
         // Create bridges, set up handlers, then run init function
         String initJSCode = "window.initializeSourcegraph();";
-        JSToJavaBridge jsToJavaBridge = new JSToJavaBridge(this, requestHandler, initJSCode);
+        JSToJavaBridge jsToJavaBridge = new JSToJavaBridge(this, requestHandlerSupplier, initJSCode);
         Disposer.register(this, jsToJavaBridge);
-        JavaToJSBridge javaToJSBridge = new JavaToJSBridge(this);
+        javaToJSBridge = new JavaToJSBridge(this);
+    }
 
-        requestHandler.getProject().getService(SettingsChangeListener.class).setJavaToJSBridge(javaToJSBridge);
+    /**
+     * Creates the native browser right away instead of when the component is first shown.
+     * This loads the page and runs `initializeSourcegraph()` off-screen.
+     */
+    public void prewarm() {
+        this.getCefBrowser().createImmediately();
+    }
 
-        UIManager.addPropertyChangeListener(propertyChangeEvent -> {
-            if (propertyChangeEvent.getPropertyName().equals("lookAndFeel")) {
-                javaToJSBridge.callJS("themeChanged", ThemeUtil.getCurrentThemeAsJson());
-            }
-        });
+    @NotNull
+    public JavaToJSBridge getJavaToJSBridge() {
+        return javaToJSBridge;
     }
 
     public void focus() {
@@ -0,0 +1,154 @@
+package com.sourcegraph.browser;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The inverse of {@link URLBuilder#buildSourcegraphBlobUrl}.
+ */
+public class SourcegraphUrlParser {
+    private static final String BLOB_SEPARATOR = "/-/blob/";
+    // E.g. "L12", "L12:3", "L12-14", "L12:3-14:5". At most 9 digits, so that the numbers fit in an int.
+    private static final Pattern POSITION_PATTERN = Pattern.compile("^L(\\d{1,9})(?::(\\d{1,9}))?(?:-(\\d{1,9})(?::(\\d{1,9}))?)?$");
+
+    public static class BlobLocation {
+        public final String repoName;
+        @Nullable
+        public final String revision;
+        public final String path;
+        // 0-based, -1 if the URL has no position
+        public final int line;
+        public final int column;
+        public final int endLine;
+        public final int endColumn;
+
+        public BlobLocation(@NotNull String repoName, @Nullable String revision, @NotNull String path,
+                            int line, int column, int endLine, int endColumn) {
+            this.repoName = repoName;
+            this.revision = revision;
+            this.path = path;
+            this.line = line;
+            this.column = column;
+            this.endLine = endLine;
+            this.endColumn = endColumn;
+        }
+    }
+
+    /**
+     * Like {@link #parseBlobUrl(String, String)} for instances that are served at the root of their host.
+     */
+    @Nullable
+    public static BlobLocation parseBlobUrl(@NotNull String url) {
+        return parseBlobUrl(url, null);
+    }
+
+    /**
+     * Accepts links with or without a revision, and with the position in the query (as we build them) or in the
+     * fragment (as older Sourcegraph versions did).
+     *
+     * @param instanceUrl The configured Sourcegraph URL. If it has a path, e.g. "https://example.com/sourcegraph/",
+     *                    that path is removed from links to the same host before the repo name is read.
+     * @return null if the URL is not a Sourcegraph blob URL, or if its path has ".." segments, which could point
+     * outside the checkout.
+     */
+    @Nullable
+    public static BlobLocation parseBlobUrl(@NotNull String url, @Nullable String instanceUrl) {
+        URI uri;
+        try {
+            uri = new URI(url.trim());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String uriPath = uri.getPath();
+        if (uriPath == null) {
+            return null;
+        }
+        String pathPrefix = getPathPrefix(uri, instanceUrl);
+        if (!pathPrefix.isEmpty() && uriPath.startsWith(pathPrefix + "/")) {
+            uriPath = uriPath.substring(pathPrefix.length());
+        }
+        int blobSeparatorIndex = uriPath.indexOf(BLOB_SEPARATOR);
+        if (blobSeparatorIndex <= 0) {
+            return null;
+        }
+
+        String repoAndRevision = uriPath.substring(uriPath.startsWith("/") ? 1 : 0, blobSeparatorIndex);
+        String path = uriPath.substring(blobSeparatorIndex + BLOB_SEPARATOR.length());
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        int revisionSeparatorIndex = repoAndRevision.indexOf('@');
+        String repoName = revisionSeparatorIndex != -1 ? repoAndRevision.substring(0, revisionSeparatorIndex) : repoAndRevision;
+        String revision = revisionSeparatorIndex != -1 ? repoAndRevision.substring(revisionSeparatorIndex + 1) : null;
+        if (repoName.isEmpty() || path.isEmpty() || hasParentSegment(path)) {
+            return null;
+        }
+
+        Matcher position = findPosition(uri.getRawQuery());
+        if (position == null) {
+            position = findPosition(uri.getRawFragment());
+        }
+        if (position == null) {
+            return new BlobLocation(repoName, revision != null && !revision.isEmpty() ? revision : null, path, -1, -1, -1, -1);
+        }
+        int line = Integer.parseInt(position.group(1)) - 1;
+        int column = position.group(2) != null ? Integer.parseInt(position.group(2)) - 1 : 0;
+        int endLine = position.group(3) != null ? Integer.parseInt(position.group(3)) - 1 : line;
+        int endColumn = position.group(4) != null ? Integer.parseInt(position.group(4)) - 1 : -1;
+        return new BlobLocation(repoName, revision != null && !revision.isEmpty() ? revision : null, path,
+            line, column, endLine, endColumn);
+    }
+
+    /**
+     * @return The path of the instance URL without a trailing slash, or an empty string if it has none or the URL is
+     * on another host.
+     */
+    @NotNull
+    private static String getPathPrefix(@NotNull URI uri, @Nullable String instanceUrl) {
+        if (instanceUrl == null) {
+            return "";
+        }
+        URI instanceUri;
+        try {
+            instanceUri = new URI(instanceUrl.trim());
+        } catch (URISyntaxException e) {
+            return "";
+        }
+        if (instanceUri.getPath() == null || uri.getHost() != null && !uri.getHost().equalsIgnoreCase(instanceUri.getHost())) {
+            return "";
+        }
+        String pathPrefix = instanceUri.getPath();
+        while (pathPrefix.endsWith("/")) {
+            pathPrefix = pathPrefix.substring(0, pathPrefix.length() - 1);
+        }
+        return pathPrefix;
+    }
+
+    private static boolean hasParentSegment(@NotNull String path) {
+        for (String segment : path.split("[/\\\\]")) {
+            if (segment.equals("..")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static Matcher findPosition(@Nullable String queryOrFragment) {
+        if (queryOrFragment == null) {
+            return null;
+        }
+        for (String parameter : queryOrFragment.split("&")) {
+            Matcher matcher = POSITION_PATTERN.matcher(parameter);
+            if (matcher.matches()) {
+                return matcher;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,215 @@
+package com.sourcegraph.concurrent;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Disposer;
+import com.sourcegraph.config.UserLevelConfig;
+import com.sourcegraph.metrics.MetricsRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the plugin's blocking background work: network calls, waiting for the webview, and so on.
+ * Uses a virtual thread per task when the runtime supports them, and a bounded pool of platform threads otherwise.
+ * <p>
+ * Tasks submitted with a parent {@link Disposable} are cancelled (and interrupted if running) when the parent is
+ * disposed. The number of queued tasks is the "executor.queued" counter, the time they wait is "executor.queueWait".
+ */
+public class BackgroundExecutor implements Disposable {
+    private static final Logger logger = Logger.getInstance(BackgroundExecutor.class);
+    private static final int MAX_PLATFORM_THREADS = 8;
+    private static final String THREAD_NAME_PREFIX = "Sourcegraph worker ";
+
+    private final ExecutorService executor;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    public BackgroundExecutor() {
+        ExecutorService virtualThreadExecutor = UserLevelConfig.isVirtualThreadsEnabled() ? createVirtualThreadExecutor() : null;
+        if (virtualThreadExecutor != null) {
+            executor = virtualThreadExecutor;
+            logger.info("Running background work on virtual threads");
+        } else {
+            ThreadPoolExecutor platformThreadExecutor = new ThreadPoolExecutor(MAX_PLATFORM_THREADS, MAX_PLATFORM_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), createThreadFactory(THREAD_NAME_PREFIX));
+            platformThreadExecutor.allowCoreThreadTimeOut(true);
+            executor = platformThreadExecutor;
+        }
+        // Only waits for delays, then hands the task to the executor
+        scheduler = new ScheduledThreadPoolExecutor(1, createThreadFactory("Sourcegraph scheduler "));
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @NotNull
+    public static BackgroundExecutor getInstance() {
+        return ApplicationManager.getApplication().getService(BackgroundExecutor.class);
+    }
+
+    /**
+     * Runs a task that should finish even if the project that started it closes, e.g. sending telemetry.
+     *
+     * @param taskName Shown in the name of the thread while the task runs.
+     */
+    public void execute(@NotNull String taskName, @NotNull Runnable task) {
+        enqueue(new TrackedTask(taskName, task));
+    }
+
+    /**
+     * Runs a task that is cancelled when the given parent is disposed.
+     *
+     * @param taskName Shown in the name of the thread while the task runs.
+     */
+    @NotNull
+    public Future<?> submit(@NotNull String taskName, @NotNull Disposable parent, @NotNull Runnable task) {
+        TrackedTask trackedTask = new TrackedTask(taskName, task);
+        if (trackedTask.cancelWhenDisposed(parent)) {
+            enqueue(trackedTask);
+        }
+        return trackedTask;
+    }
+
+    /**
+     * Like {@link #submit}, but runs the task after the given delay.
+     */
+    @NotNull
+    public Future<?> schedule(@NotNull String taskName, @NotNull Disposable parent, long delayMillis, @NotNull Runnable task) {
+        TrackedTask trackedTask = new TrackedTask(taskName, task);
+        if (trackedTask.cancelWhenDisposed(parent)) {
+            try {
+                scheduler.schedule(() -> enqueue(trackedTask), delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                trackedTask.cancel(false);
+            }
+        }
+        return trackedTask;
+    }
+
+    private void enqueue(@NotNull TrackedTask task) {
+        if (task.isDone()) {
+            return;
+        }
+        task.enqueuedAt = System.nanoTime();
+        MetricsRegistry.getInstance().counter("executor.queued").increment();
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Only happens after dispose(), when the IDE is shutting down
+            task.cancel(false);
+        }
+    }
+
+    @Nullable
+    private static ExecutorService createVirtualThreadExecutor() {
+        // Thread.ofVirtual() is only available since Java 21 (and as a preview in 19 and 20), so we can't link to it
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX, 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @NotNull
+    private static ThreadFactory createThreadFactory(@NotNull String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void dispose() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static class TrackedTask extends FutureTask<Void> {
+        private final String taskName;
+        // Set once the task has left the queue, either by starting or by being cancelled
+        private final AtomicBoolean isDequeued = new AtomicBoolean();
+        private volatile long enqueuedAt = 0;
+        @Nullable
+        private volatile Disposable cancellation;
+        private volatile boolean isParentDisposed = false;
+
+        private TrackedTask(@NotNull String taskName, @NotNull Runnable task) {
+            super(task, null);
+            this.taskName = taskName;
+        }
+
+        /**
+         * @return False if the parent is already disposed, in which case the task is cancelled right away.
+         */
+        private boolean cancelWhenDisposed(@NotNull Disposable parent) {
+            Disposable cancellation = () -> {
+                isParentDisposed = true;
+                cancel(true);
+            };
+            this.cancellation = cancellation;
+            if (!Disposer.tryRegister(parent, cancellation)) {
+                this.cancellation = null;
+                cancel(false);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (leaveQueue()) {
+                MetricsRegistry.getInstance().histogram("executor.queueWait").recordSince(enqueuedAt);
+            }
+            Thread thread = Thread.currentThread();
+            String originalName = thread.getName();
+            thread.setName(originalName + ": " + taskName);
+            try {
+                super.run();
+            } finally {
+                thread.setName(originalName);
+            }
+        }
+
+        @Override
+        protected void done() {
+            leaveQueue();
+            Disposable cancellation = this.cancellation;
+            // Unregister from the parent, unless the parent is disposing it anyway
+            if (cancellation != null && !isParentDisposed) {
+                Disposer.dispose(cancellation);
+            }
+            if (!isCancelled()) {
+                try {
+                    get();
+                } catch (Exception e) {
+                    logger.warn("Background task \"" + taskName + "\" failed", e.getCause() != null ? e.getCause() : e);
+                }
+            }
+        }
+
+        private boolean leaveQueue() {
+            if (enqueuedAt == 0 || !isDequeued.compareAndSet(false, true)) {
+                return false;
+            }
+            MetricsRegistry.getInstance().counter("executor.queued").decrement();
+            return true;
+        }
+    }
+}
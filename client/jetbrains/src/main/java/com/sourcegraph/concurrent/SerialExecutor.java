@@ -0,0 +1,77 @@
+package com.sourcegraph.concurrent;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time, in the order they were added, on the {@link BackgroundExecutor}. For work that must not
+ * overlap, like appending to a file, without a thread of its own: while there are tasks, a single background task
+ * drains them.
+ */
+public class SerialExecutor implements Executor {
+    private static final Logger logger = Logger.getInstance(SerialExecutor.class);
+
+    private final String taskName;
+    // Guarded by this
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private boolean isDraining = false;
+
+    /**
+     * @param taskName Shown in the name of the thread while the tasks run.
+     */
+    public SerialExecutor(@NotNull String taskName) {
+        this.taskName = taskName;
+    }
+
+    @Override
+    public void execute(@NotNull Runnable task) {
+        synchronized (this) {
+            tasks.add(task);
+            if (isDraining) {
+                return;
+            }
+            isDraining = true;
+        }
+        BackgroundExecutor.getInstance().execute(taskName, this::drain);
+    }
+
+    /**
+     * Waits until the tasks added so far have run.
+     *
+     * @return False if they didn't finish within the timeout.
+     */
+    public synchronized boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (isDraining) {
+            long remainingMillis = deadline - System.currentTimeMillis();
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            wait(remainingMillis);
+        }
+        return true;
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    isDraining = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.warn("Background task \"" + taskName + "\" failed", e);
+            }
+        }
+    }
+}
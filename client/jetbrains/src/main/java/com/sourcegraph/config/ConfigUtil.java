@@ -85,6 +85,10 @@ public class ConfigUtil {
         return getProjectLevelConfig(project).isGlobbingEnabled();
     }
 
+    public static boolean isPrewarmingEnabled(@NotNull Project project) {
+        return getProjectLevelConfig(project).isPrewarmingEnabled();
+    }
+
     @Nullable
     public static String getAccessToken(Project project) {
         return getProjectLevelConfig(project).getAccessToken();
@@ -4,7 +4,7 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.project.Project;
 import com.intellij.util.messages.MessageBus;
 import com.intellij.util.messages.MessageBusConnection;
-import com.sourcegraph.browser.JavaToJSBridge;
+import com.sourcegraph.browser.SourcegraphBrowserHost;
 import com.sourcegraph.telemetry.GraphQlLogger;
 import org.jetbrains.annotations.NotNull;
 
@@ -12,7 +12,6 @@ import java.util.Objects;
 
 public class SettingsChangeListener implements Disposable {
     private final MessageBusConnection connection;
-    private JavaToJSBridge javaToJSBridge;
 
     public SettingsChangeListener(@NotNull Project project) {
         MessageBus bus = project.getMessageBus();
@@ -29,8 +28,10 @@ public class SettingsChangeListener implements Disposable {
 
             @Override
             public void afterAction(@NotNull PluginSettingChangeContext context) {
-                if (javaToJSBridge != null) {
-                    javaToJSBridge.callJS("pluginSettingsChanged", ConfigUtil.getConfigAsJson(project));
+                // Other projects' settings reach the shared browser when it's moved to them
+                SourcegraphBrowserHost browserHost = SourcegraphBrowserHost.getInstance();
+                if (browserHost.isActive(project) && browserHost.isBrowserCreated()) {
+                    browserHost.getBrowser().getJavaToJSBridge().callJS("pluginSettingsChanged", ConfigUtil.getConfigAsJson(project));
                 }
 
                 if (!Objects.equals(context.oldUrl, context.newUrl)) {
@@ -42,10 +43,6 @@ public class SettingsChangeListener implements Disposable {
         });
     }
 
-    public void setJavaToJSBridge(JavaToJSBridge javaToJSBridge) {
-        this.javaToJSBridge = javaToJSBridge;
-    }
-
     @Override
     public void dispose() {
         connection.disconnect();
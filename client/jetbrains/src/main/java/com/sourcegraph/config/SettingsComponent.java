@@ -19,6 +19,7 @@ public class SettingsComponent {
     private final JBTextField defaultBranchNameTextField;
     private final JBTextField remoteUrlReplacementsTextField;
     private final JBCheckBox globbingCheckBox;
+    private final JBCheckBox prewarmingCheckBox;
 
     public SettingsComponent() {
         JBLabel sourcegraphUrlLabel = new JBLabel("Sourcegraph URL:");
@@ -50,12 +51,16 @@ public class SettingsComponent {
 
         globbingCheckBox = new JBCheckBox("Enable globbing");
 
+        prewarmingCheckBox = new JBCheckBox("Load the search view in the background after startup");
+        prewarmingCheckBox.setToolTipText("Makes the first Alt+A instant at the cost of the browser's memory usage from the start.");
+
         panel = FormBuilder.createFormBuilder()
             .addLabeledComponent(sourcegraphUrlLabel, sourcegraphUrlTextField, 1, false)
             .addLabeledComponent(accessTokenLabel, accessTokenTextField, 1, false)
             .addLabeledComponent(defaultBranchNameLabel, defaultBranchNameTextField, 1, false)
             .addLabeledComponent(remoteUrlReplacementsLabel, remoteUrlReplacementsTextField, 1, false)
             .addComponent(globbingCheckBox, 1)
+            .addComponent(prewarmingCheckBox, 1)
             .addComponentFillVertically(new JPanel(), 0)
             .getPanel();
     }
@@ -112,4 +117,12 @@ public class SettingsComponent {
         globbingCheckBox.setSelected(value);
     }
 
+    public boolean isPrewarmingEnabled() {
+        return prewarmingCheckBox.isSelected();
+    }
+
+    public void setPrewarmingEnabled(boolean value) {
+        prewarmingCheckBox.setSelected(value);
+    }
+
 }
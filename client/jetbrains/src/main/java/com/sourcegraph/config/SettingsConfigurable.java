@@ -44,7 +44,8 @@ public class SettingsConfigurable implements Configurable {
             || !mySettingsComponent.getAccessToken().equals(settings.getAccessToken())
             || !mySettingsComponent.getDefaultBranchName().equals(settings.getDefaultBranchName())
             || !mySettingsComponent.getRemoteUrlReplacements().equals(settings.getRemoteUrlReplacements())
-            || mySettingsComponent.isGlobbingEnabled() != settings.isGlobbingEnabled();
+            || mySettingsComponent.isGlobbingEnabled() != settings.isGlobbingEnabled()
+            || mySettingsComponent.isPrewarmingEnabled() != settings.isPrewarmingEnabled();
     }
 
     @Override
@@ -67,6 +68,7 @@ public class SettingsConfigurable implements Configurable {
         settings.defaultBranch = mySettingsComponent.getDefaultBranchName();
         settings.remoteUrlReplacements = mySettingsComponent.getRemoteUrlReplacements();
         settings.isGlobbingEnabled = mySettingsComponent.isGlobbingEnabled();
+        settings.isPrewarmingEnabled = mySettingsComponent.isPrewarmingEnabled();
 
         publisher.afterAction(context);
     }
@@ -79,6 +81,7 @@ public class SettingsConfigurable implements Configurable {
         mySettingsComponent.setDefaultBranchName(settings.getDefaultBranchName() != null ? settings.getDefaultBranchName() : "main");
         mySettingsComponent.setRemoteUrlReplacements(settings.getRemoteUrlReplacements() != null ? settings.getRemoteUrlReplacements() : "");
         mySettingsComponent.setGlobbingEnabled(settings.isGlobbingEnabled());
+        mySettingsComponent.setPrewarmingEnabled(settings.isPrewarmingEnabled());
     }
 
     @Override
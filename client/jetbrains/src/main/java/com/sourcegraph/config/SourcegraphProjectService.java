@@ -20,6 +20,7 @@ public class SourcegraphProjectService implements PersistentStateComponent<Sourc
     public String lastSearchPatternType;
     public String lastSearchContextSpec;
     public boolean isGlobbingEnabled;
+    public boolean isPrewarmingEnabled;
     public String accessToken;
 
     @NotNull
@@ -55,6 +56,10 @@ public class SourcegraphProjectService implements PersistentStateComponent<Sourc
         return this.isGlobbingEnabled;
     }
 
+    public boolean isPrewarmingEnabled() {
+        return this.isPrewarmingEnabled;
+    }
+
     @Nullable
     public String getAccessToken() {
         return accessToken;
@@ -76,6 +81,7 @@ public class SourcegraphProjectService implements PersistentStateComponent<Sourc
         this.lastSearchPatternType = settings.lastSearchPatternType != null ? settings.lastSearchPatternType : "literal";
         this.lastSearchContextSpec = settings.lastSearchContextSpec != null ? settings.lastSearchContextSpec : "global";
         this.isGlobbingEnabled = settings.isGlobbingEnabled;
+        this.isPrewarmingEnabled = settings.isPrewarmingEnabled;
         this.accessToken = settings.accessToken;
     }
 }
@@ -0,0 +1,128 @@
+package com.sourcegraph.config;
+
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.intellij.ide.ui.LafManager;
+import com.intellij.ide.ui.LafManagerListener;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.sourcegraph.browser.SourcegraphBrowserHost;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the theme that we send to the webview.
+ * Reading the colors means going through thousands of UI defaults, so we do it once per look and feel and keep the
+ * result. When the look and feel changes, the webview only gets the colors that differ from the previous theme.
+ */
+public class ThemeService implements Disposable {
+    private static final int MAX_CACHED_LOOK_AND_FEELS = 4;
+
+    private final Map<String, CachedTheme> themesByLookAndFeel = new LinkedHashMap<>(MAX_CACHED_LOOK_AND_FEELS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedTheme> eldest) {
+            return size() > MAX_CACHED_LOOK_AND_FEELS;
+        }
+    };
+    private CachedTheme currentTheme;
+
+    public ThemeService() {
+        ApplicationManager.getApplication().getMessageBus().connect(this)
+            .subscribe(LafManagerListener.TOPIC, (LafManagerListener) source -> onLookAndFeelChanged());
+    }
+
+    @NotNull
+    public static ThemeService getInstance() {
+        return ApplicationManager.getApplication().getService(ThemeService.class);
+    }
+
+    /**
+     * @return The full theme. Shared between callers, so it must not be modified.
+     */
+    @NotNull
+    public synchronized JsonObject getCurrentThemeAsJson() {
+        return getCurrentTheme().json;
+    }
+
+    @NotNull
+    private synchronized CachedTheme getCurrentTheme() {
+        if (currentTheme == null) {
+            currentTheme = themesByLookAndFeel.computeIfAbsent(getLookAndFeelKey(), key -> new CachedTheme(ThemeUtil.getCurrentColorsAsHexStrings(), ThemeUtil.isDarkTheme()));
+        }
+        return currentTheme;
+    }
+
+    private void onLookAndFeelChanged() {
+        JsonObject themeChange;
+        synchronized (this) {
+            CachedTheme previousTheme = currentTheme;
+            // Compute a fresh theme for the new look and feel, but reuse the one from last time if we've seen it before
+            currentTheme = null;
+            CachedTheme newTheme = getCurrentTheme();
+            if (previousTheme == newTheme) {
+                return;
+            }
+            themeChange = previousTheme != null ? newTheme.getChangesSince(previousTheme) : newTheme.json;
+        }
+        SourcegraphBrowserHost.getInstance().sendThemeChange(themeChange);
+    }
+
+    @NotNull
+    private static String getLookAndFeelKey() {
+        UIManager.LookAndFeelInfo lookAndFeel = LafManager.getInstance().getCurrentLookAndFeel();
+        return lookAndFeel != null ? lookAndFeel.getClassName() + ":" + lookAndFeel.getName() : String.valueOf(UIManager.getLookAndFeel());
+    }
+
+    @Override
+    public void dispose() {
+        // The message bus connection is disposed with this service
+    }
+
+    private static class CachedTheme {
+        private final Map<String, String> colors;
+        private final boolean isDarkTheme;
+        private final JsonObject json;
+
+        private CachedTheme(@NotNull Map<String, String> colors, boolean isDarkTheme) {
+            this.colors = colors;
+            this.isDarkTheme = isDarkTheme;
+            this.json = createThemeJson(colors, isDarkTheme);
+        }
+
+        /**
+         * @return A theme that only has the colors that were added or changed, and nulls for the removed ones.
+         */
+        @NotNull
+        private JsonObject getChangesSince(@NotNull CachedTheme previousTheme) {
+            JsonObject changedColors = new JsonObject();
+            colors.forEach((key, value) -> {
+                if (!Objects.equals(value, previousTheme.colors.get(key))) {
+                    changedColors.addProperty(key, value);
+                }
+            });
+            previousTheme.colors.keySet().stream()
+                .filter(key -> !colors.containsKey(key))
+                .forEach(key -> changedColors.add(key, JsonNull.INSTANCE));
+
+            JsonObject theme = new JsonObject();
+            theme.addProperty("isDarkTheme", isDarkTheme);
+            theme.add("intelliJTheme", changedColors);
+            return theme;
+        }
+
+        @NotNull
+        private static JsonObject createThemeJson(@NotNull Map<String, String> colors, boolean isDarkTheme) {
+            JsonObject intelliJTheme = new JsonObject();
+            colors.forEach(intelliJTheme::addProperty);
+
+            JsonObject theme = new JsonObject();
+            theme.addProperty("isDarkTheme", isDarkTheme);
+            theme.add("intelliJTheme", intelliJTheme);
+            return theme;
+        }
+    }
+}
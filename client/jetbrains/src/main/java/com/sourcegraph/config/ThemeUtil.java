@@ -1,6 +1,5 @@
 package com.sourcegraph.config;
 
-import com.google.gson.JsonObject;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -12,32 +11,31 @@ import javax.swing.plaf.ColorUIResource;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 
 public class ThemeUtil {
     private static final Logger logger = LoggerFactory.getLogger(ThemeUtil.class);
 
+    /**
+     * Goes through all UI defaults, so it's slow. Use {@link ThemeService} to get the cached theme.
+     */
     @NotNull
-    public static JsonObject getCurrentThemeAsJson() {
-        JsonObject intelliJTheme = new JsonObject();
+    static Map<String, String> getCurrentColorsAsHexStrings() {
+        Map<String, String> colors = new HashMap<>();
         UIDefaults defaults = UIManager.getDefaults();
-        Enumeration<Object> keysEnumeration = defaults.keys();
-        ArrayList<Object> keysList = Collections.list(keysEnumeration);
+        ArrayList<Object> keysList = Collections.list(defaults.keys());
         for (Object key : keysList) {
             try {
-                Object value = UIManager.get(key);
+                Object value = defaults.get(key);
                 if (value instanceof ColorUIResource) {
-                    intelliJTheme.addProperty(key.toString(), getHexString(UIManager.getColor(key)));
+                    colors.put(key.toString(), getHexString((ColorUIResource) value));
                 }
             } catch (Exception e) {
                 logger.error(e.getMessage());
             }
         }
-
-        JsonObject theme = new JsonObject();
-        theme.addProperty("isDarkTheme", isDarkTheme());
-        theme.add("intelliJTheme", intelliJTheme);
-        return theme;
+        return colors;
     }
 
     @NotNull
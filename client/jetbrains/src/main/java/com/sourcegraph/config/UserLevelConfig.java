@@ -31,6 +31,70 @@ public class UserLevelConfig {
         return url.endsWith("/") ? url : url + "/";
     }
 
+    /**
+     * The browser of the search view is disposed after it has been hidden for this long. 0 means never.
+     */
+    public static int getBrowserIdleTimeoutMinutes() {
+        Properties properties = readProperties();
+        try {
+            return Math.max(0, Integer.parseInt(properties.getProperty("browserIdleTimeoutMinutes", "60").trim()));
+        } catch (NumberFormatException e) {
+            return 60;
+        }
+    }
+
+    /**
+     * Whether to write all bridge traffic between the webview and the IDE to a log file, for performance analysis.
+     */
+    public static boolean isBridgeRecordingEnabled() {
+        Properties properties = readProperties();
+        return Boolean.parseBoolean(properties.getProperty("bridgeRecordingEnabled", "false").trim());
+    }
+
+    /**
+     * Whether to record trace spans for the webview's requests, see {@link com.sourcegraph.metrics.Tracer}.
+     */
+    public static boolean isTracingEnabled() {
+        Properties properties = readProperties();
+        return Boolean.parseBoolean(properties.getProperty("tracingEnabled", "false").trim());
+    }
+
+    /**
+     * Whether to use the native Swing search UI instead of the webview. It's always used when JCEF is not available.
+     */
+    public static boolean isNativeSearchUiEnabled() {
+        Properties properties = readProperties();
+        return Boolean.parseBoolean(properties.getProperty("nativeSearchUi", "false").trim());
+    }
+
+    /**
+     * Whether to keep a trigram index of the project's files, to show local matches before the remote results arrive.
+     */
+    public static boolean isLocalIndexEnabled() {
+        Properties properties = readProperties();
+        return Boolean.parseBoolean(properties.getProperty("localIndex", "false").trim());
+    }
+
+    /**
+     * Whether to run background work on virtual threads when the IDE's runtime supports them.
+     */
+    public static boolean isVirtualThreadsEnabled() {
+        Properties properties = readProperties();
+        return Boolean.parseBoolean(properties.getProperty("virtualThreads", "true").trim());
+    }
+
+    /**
+     * Bridge messages are sent in frames of up to 64k characters. Messages with more frames than this are rejected.
+     */
+    public static int getBridgeMaxFramesPerMessage() {
+        Properties properties = readProperties();
+        try {
+            return Math.max(1, Integer.parseInt(properties.getProperty("bridgeMaxFramesPerMessage", "256").trim()));
+        } catch (NumberFormatException e) {
+            return 256;
+        }
+    }
+
     // readProps returns the first properties file it's able to parse from the following paths:
     //   $HOME/.sourcegraph-jetbrains.properties
     //   $HOME/sourcegraph-jetbrains.properties
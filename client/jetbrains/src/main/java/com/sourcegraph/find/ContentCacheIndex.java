@@ -0,0 +1,162 @@
+package com.sourcegraph.find;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The index of {@link RemoteContentCache}: the content hash and length of each key, in least recently used order, and
+ * how many keys share each hash. Evicts the least recently used keys when the total length exceeds the limit.
+ * Not thread-safe.
+ * <p>
+ * Free of platform dependencies so that it can be unit tested.
+ */
+public class ContentCacheIndex {
+    private final long maxTotalBytes;
+    // Key -> entry, in access order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Hash -> number of entries with that content
+    private final Map<String, Integer> hashReferenceCounts = new HashMap<>();
+    private long totalBytes = 0;
+
+    public static class Entry {
+        private final String hash;
+        private final long length;
+
+        private Entry(@NotNull String hash, long length) {
+            this.hash = hash;
+            this.length = length;
+        }
+
+        @NotNull
+        public String getHash() {
+            return hash;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+
+    public ContentCacheIndex(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /**
+     * Doesn't count as a use of the key.
+     */
+    public boolean contains(@NotNull String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Marks the key as the most recently used one.
+     */
+    @Nullable
+    public Entry get(@NotNull String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Adds the key as the most recently used one, then evicts other keys until the total length fits.
+     * Does nothing if the key is already there.
+     *
+     * @return The hashes that no key refers to anymore, whose contents can be deleted.
+     */
+    @NotNull
+    public List<String> put(@NotNull String key, @NotNull String hash, long length) {
+        List<String> releasedHashes = new ArrayList<>();
+        if (entries.containsKey(key)) {
+            return releasedHashes;
+        }
+        entries.put(key, new Entry(hash, length));
+        hashReferenceCounts.merge(hash, 1, Integer::sum);
+        totalBytes += length;
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && totalBytes > maxTotalBytes) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            iterator.remove();
+            if (release(eldest.getValue())) {
+                releasedHashes.add(eldest.getValue().hash);
+            }
+        }
+        return releasedHashes;
+    }
+
+    /**
+     * @return The hash of the key if no other key refers to it, so that its content can be deleted, otherwise null.
+     */
+    @Nullable
+    public String remove(@NotNull String key) {
+        Entry entry = entries.remove(key);
+        return entry != null && release(entry) ? entry.hash : null;
+    }
+
+    public boolean isReferenced(@NotNull String hash) {
+        return hashReferenceCounts.containsKey(hash);
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        hashReferenceCounts.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * @return "hash\tlength\tkey" lines, least recently used first, so that {@link #load} restores the order.
+     */
+    @NotNull
+    public String toTsv() {
+        StringBuilder tsv = new StringBuilder();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            tsv.append(entry.getValue().hash).append('\t').append(entry.getValue().length).append('\t')
+                .append(entry.getKey()).append('\n');
+        }
+        return tsv.toString();
+    }
+
+    /**
+     * Adds the entries of {@link #toTsv} lines.
+     *
+     * @return The hashes that were evicted because the limit is lower now, see {@link #put}.
+     * @throws NumberFormatException If a line is malformed.
+     */
+    @NotNull
+    public List<String> load(@NotNull List<String> lines) {
+        List<String> releasedHashes = new ArrayList<>();
+        for (String line : lines) {
+            String[] parts = line.split("\t", 3);
+            if (parts.length == 3) {
+                releasedHashes.addAll(put(parts[2], parts[0], Long.parseLong(parts[1])));
+            }
+        }
+        return releasedHashes;
+    }
+
+    private boolean release(@NotNull Entry entry) {
+        totalBytes -= entry.length;
+        if (hashReferenceCounts.merge(entry.hash, -1, Integer::sum) <= 0) {
+            hashReferenceCounts.remove(entry.hash);
+            return true;
+        }
+        return false;
+    }
+}
@@ -11,22 +11,28 @@ import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.components.BorderLayoutPanel;
 import com.sourcegraph.browser.BrowserAndLoadingPanel;
 import com.sourcegraph.browser.JSToJavaBridgeRequestHandler;
+import com.sourcegraph.browser.SourcegraphBrowserHost;
 import com.sourcegraph.browser.SourcegraphJBCefBrowser;
+import com.sourcegraph.config.UserLevelConfig;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
-import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Inspired by <a href="https://sourcegraph.com/github.com/JetBrains/intellij-community/-/blob/platform/lang-impl/src/com/intellij/find/impl/FindPopupPanel.java">FindPopupPanel.java</a>
  */
 public class FindPopupPanel extends JBPanel<FindPopupPanel> implements Disposable {
-    private final SourcegraphJBCefBrowser browser;
+    private final JSToJavaBridgeRequestHandler requestHandler;
     private final PreviewPanel previewPanel;
     private final BrowserAndLoadingPanel browserAndLoadingPanel;
     private final SelectionMetadataPanel selectionMetadataPanel;
-    private Date lastPreviewUpdate;
+    // Null when the webview is used
+    private final NativeSearchPanel nativeSearchPanel;
+    // The sequence number of the last preview update we applied. The webview numbers its updates in the order it sends
+    // them, so anything with a lower number is outdated.
+    private final AtomicLong lastPreviewUpdateSequenceNumber = new AtomicLong();
 
     public FindPopupPanel(@NotNull Project project) {
         super(new BorderLayout());
@@ -46,29 +52,49 @@ public class FindPopupPanel extends JBPanel<FindPopupPanel> implements Disposabl
         bottomPanel.add(previewPanel, BorderLayout.CENTER);
 
         browserAndLoadingPanel = new BrowserAndLoadingPanel();
-        JSToJavaBridgeRequestHandler requestHandler = new JSToJavaBridgeRequestHandler(project, this);
-        browser = JBCefApp.isSupported() ? new SourcegraphJBCefBrowser(requestHandler) : null;
-        if (browser != null) {
-            browserAndLoadingPanel.setBrowser(browser);
-        }
+        requestHandler = new JSToJavaBridgeRequestHandler(project, this);
 
         // The border is needed because without it, window and splitter resize don't work because the JCEF
         // doesn't properly pass the mouse events to Swing.
         // 4px is the minimum amount to make it work for the window resize, and 5px for the splitter.
         BorderLayoutPanel topPanel = new BorderLayoutPanel();
         topPanel.setBorder(JBUI.Borders.empty(0, 4, 5, 4));
-        topPanel.add(browserAndLoadingPanel, BorderLayout.CENTER);
+        if (!JBCefApp.isSupported() || UserLevelConfig.isNativeSearchUiEnabled()) {
+            nativeSearchPanel = new NativeSearchPanel(project, this);
+            topPanel.add(nativeSearchPanel, BorderLayout.CENTER);
+        } else {
+            nativeSearchPanel = null;
+            topPanel.add(browserAndLoadingPanel, BorderLayout.CENTER);
+        }
         topPanel.setMinimumSize(JBUI.size(750, 200));
 
         splitter.setFirstComponent(topPanel);
         splitter.setSecondComponent(bottomPanel);
+    }
 
-        lastPreviewUpdate = new Date();
+    /**
+     * The browser is shared between projects, so this moves it into this panel.
+     */
+    public void attachBrowser() {
+        if (nativeSearchPanel == null) {
+            SourcegraphBrowserHost.getInstance().attach(requestHandler, browserAndLoadingPanel);
+        }
     }
 
+    /**
+     * @return Null if the browser is not available or the native search UI is used.
+     */
     @Nullable
     public SourcegraphJBCefBrowser getBrowser() {
-        return browser;
+        return nativeSearchPanel == null ? SourcegraphBrowserHost.getInstance().getBrowser() : null;
+    }
+
+    public void focusSearchInput() {
+        if (nativeSearchPanel != null) {
+            nativeSearchPanel.focusQueryField();
+        } else if (getBrowser() != null) {
+            getBrowser().focus();
+        }
     }
 
     @Nullable
@@ -80,8 +106,8 @@ public class FindPopupPanel extends JBPanel<FindPopupPanel> implements Disposabl
         browserAndLoadingPanel.setBrowserVisible(visible);
     }
 
-    public void indicateLoadingIfInTime(@NotNull Date date) {
-        if (lastPreviewUpdate.before(date)) {
+    public void indicateLoadingIfInTime(long sequenceNumber) {
+        if (lastPreviewUpdateSequenceNumber.get() < sequenceNumber) {
             selectionMetadataPanel.clearSelectionMetadataLabel();
             previewPanel.setLoading(true);
             previewPanel.clearContent();
@@ -89,27 +115,33 @@ public class FindPopupPanel extends JBPanel<FindPopupPanel> implements Disposabl
     }
 
     public void setPreviewContentIfInTime(@NotNull PreviewContent previewContent) {
-        if (lastPreviewUpdate.before(previewContent.getReceivedDateTime())) {
-            this.lastPreviewUpdate = previewContent.getReceivedDateTime();
+        if (advanceLastPreviewUpdate(previewContent.getSequenceNumber())) {
             selectionMetadataPanel.setSelectionMetadataLabel(previewContent);
             previewPanel.setContent(previewContent);
         }
     }
 
-    public void clearPreviewContentIfInTime(@NotNull Date date) {
-        if (lastPreviewUpdate.before(date)) {
-            this.lastPreviewUpdate = date;
+    public void clearPreviewContentIfInTime(long sequenceNumber) {
+        if (advanceLastPreviewUpdate(sequenceNumber)) {
             selectionMetadataPanel.clearSelectionMetadataLabel();
             previewPanel.setContent(null);
         }
     }
 
+    /**
+     * @return False if we already applied this or a newer update.
+     */
+    private boolean advanceLastPreviewUpdate(long sequenceNumber) {
+        return lastPreviewUpdateSequenceNumber.getAndAccumulate(sequenceNumber, Math::max) < sequenceNumber;
+    }
+
     @Override
     public void dispose() {
-        if (browser != null) {
-            browser.dispose();
-        }
+        SourcegraphBrowserHost.getInstance().detach(requestHandler);
 
+        if (nativeSearchPanel != null) {
+            nativeSearchPanel.dispose();
+        }
         previewPanel.dispose();
     }
 }
@@ -6,14 +6,14 @@ import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.wm.ex.WindowManagerEx;
 import com.intellij.util.ui.UIUtil;
-import org.cef.browser.CefBrowser;
-import org.cef.handler.CefKeyboardHandler;
-import org.cef.misc.BoolRef;
+import com.sourcegraph.browser.SourcegraphBrowserHost;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
+import java.awt.event.AWTEventListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowEvent;
 
@@ -24,6 +24,8 @@ public class FindService implements Disposable {
     private final Project project;
     private final FindPopupPanel mainPanel;
     private FindPopupDialog popup;
+    // Parent of the global listeners, which only exist while the popup is visible
+    private Disposable popupListenersDisposable;
     private static final Logger logger = Logger.getInstance(FindService.class);
 
     public FindService(@NotNull Project project) {
@@ -38,64 +40,101 @@ public class FindService implements Disposable {
 
         // If the popup is already shown, hitting alt + a gain should behave the same as the native find in files
         // feature and focus the search field.
+        mainPanel.focusSearchInput();
+    }
+
+    /**
+     * Initializes the browser and the web app in the background so that the first popup open is instant.
+     */
+    public void prewarm() {
+        // The browser is shared, so if another project has already created it, there is nothing to do.
+        if (SourcegraphBrowserHost.getInstance().isBrowserCreated()) {
+            return;
+        }
+        mainPanel.attachBrowser();
         if (mainPanel.getBrowser() != null) {
-            mainPanel.getBrowser().focus();
+            mainPanel.getBrowser().prewarm();
         }
     }
 
     public void hidePopup() {
         popup.hide();
+        detachPopupListeners();
         hideMaterialUiOverlay();
+        SourcegraphBrowserHost.getInstance().indicatePopupHidden();
+    }
+
+    public void hidePopupIfVisible() {
+        if (isPopupVisible()) {
+            hidePopup();
+        }
+    }
+
+    public boolean isPopupVisible() {
+        return popup != null && !popup.isDisposed() && popup.isVisible();
     }
 
     @NotNull
     private void createOrShowPopup() {
+        mainPanel.attachBrowser();
+        SourcegraphBrowserHost.getInstance().indicatePopupShown();
+
         if (popup != null) {
             if (!popup.isVisible()) {
                 popup.show();
             }
         } else {
             popup = new FindPopupDialog(project, mainPanel);
-
-            // We add a manual listener to both the global key handler (since the editor component seems to work around
-            // the default swing event handler) and the browser panel which seems to handle events in a separate queue.
-            registerGlobalKeyListeners();
-            registerJBCefClientKeyListeners();
-
-            // We also need to detect when the main IDE frame or another popup inside the project gets focus and close
-            // the Sourcegraph window accordingly.
-            registerOutsideClickListener();
+            // The dialog is disposed without being hidden when the project closes
+            Disposer.register(popup.getDisposable(), this::detachPopupListeners);
         }
-    }
-
-    private void registerGlobalKeyListeners() {
-        KeyboardFocusManager.getCurrentKeyboardFocusManager()
-            .addKeyEventDispatcher(e -> {
-                if (e.getID() != KeyEvent.KEY_PRESSED || popup != null && (popup.isDisposed() || !popup.isVisible())) {
-                    return false;
-                }
 
-                return handleKeyPress(false, e.getKeyCode(), e.getModifiersEx());
-            });
+        attachPopupListeners();
     }
 
-    private void registerJBCefClientKeyListeners() {
-        if (mainPanel.getBrowser() == null) {
-            logger.error("Browser panel is null");
+    /**
+     * The listeners below see every key press and window event of the IDE, so they are only attached while the popup
+     * is visible. Calling this again while they're attached does nothing.
+     */
+    private void attachPopupListeners() {
+        if (popupListenersDisposable != null) {
             return;
         }
+        popupListenersDisposable = Disposer.newDisposable("Sourcegraph popup listeners");
+        Disposer.register(this, popupListenersDisposable);
+
+        // We add a manual listener to both the global key handler (since the editor component seems to work around
+        // the default swing event handler) and the browser panel which seems to handle events in a separate queue.
+        // The browser is shared and may be recreated, so SourcegraphBrowserHost registers the browser's listener
+        // and forwards the events to handleBrowserKeyPress.
+        registerGlobalKeyListeners(popupListenersDisposable);
+
+        // We also need to detect when the main IDE frame or another popup inside the project gets focus and close
+        // the Sourcegraph window accordingly.
+        registerOutsideClickListener(popupListenersDisposable);
+    }
 
-        mainPanel.getBrowser().getJBCefClient().addKeyboardHandler(new CefKeyboardHandler() {
-            @Override
-            public boolean onPreKeyEvent(CefBrowser browser, CefKeyEvent event, BoolRef is_keyboard_shortcut) {
+    private void detachPopupListeners() {
+        if (popupListenersDisposable != null) {
+            Disposer.dispose(popupListenersDisposable);
+            popupListenersDisposable = null;
+        }
+    }
+
+    private void registerGlobalKeyListeners(@NotNull Disposable parentDisposable) {
+        KeyEventDispatcher keyEventDispatcher = e -> {
+            if (e.getID() != KeyEvent.KEY_PRESSED || popup != null && (popup.isDisposed() || !popup.isVisible())) {
                 return false;
             }
 
-            @Override
-            public boolean onKeyEvent(CefBrowser browser, CefKeyEvent event) {
-                return handleKeyPress(true, event.windows_key_code, event.modifiers);
-            }
-        }, mainPanel.getBrowser().getCefBrowser());
+            return handleKeyPress(false, e.getKeyCode(), e.getModifiersEx());
+        };
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(keyEventDispatcher);
+        Disposer.register(parentDisposable, () -> KeyboardFocusManager.getCurrentKeyboardFocusManager().removeKeyEventDispatcher(keyEventDispatcher));
+    }
+
+    public boolean handleBrowserKeyPress(int keyCode, int modifiers) {
+        return handleKeyPress(true, keyCode, modifiers);
     }
 
     private boolean handleKeyPress(boolean isWebView, int keyCode, int modifiers) {
@@ -120,10 +159,10 @@ public class FindService implements Disposable {
         return false;
     }
 
-    private void registerOutsideClickListener() {
+    private void registerOutsideClickListener(@NotNull Disposable parentDisposable) {
         Window projectParentWindow = getParentWindow(null);
 
-        Toolkit.getDefaultToolkit().addAWTEventListener(event -> {
+        AWTEventListener windowFocusListener = event -> {
             if (event instanceof WindowEvent) {
                 WindowEvent windowEvent = (WindowEvent) event;
 
@@ -132,7 +171,7 @@ public class FindService implements Disposable {
                     return;
                 }
 
-                if (!this.popup.isVisible()) {
+                if (this.popup == null || !this.popup.isVisible()) {
                     return;
                 }
 
@@ -147,7 +186,9 @@ public class FindService implements Disposable {
                     hidePopup();
                 }
             }
-        }, AWTEvent.WINDOW_EVENT_MASK);
+        };
+        Toolkit.getDefaultToolkit().addAWTEventListener(windowFocusListener, AWTEvent.WINDOW_EVENT_MASK);
+        Disposer.register(parentDisposable, () -> Toolkit.getDefaultToolkit().removeAWTEventListener(windowFocusListener));
     }
 
     // https://sourcegraph.com/github.com/JetBrains/intellij-community@27fee7320a01c58309a742341dd61deae57c9005/-/blob/platform/platform-impl/src/com/intellij/ui/popup/AbstractPopup.java?L475-493
@@ -165,6 +206,7 @@ public class FindService implements Disposable {
 
     @Override
     public void dispose() {
+        detachPopupListeners();
         if (popup != null) {
             popup.getWindow().dispose();
         }
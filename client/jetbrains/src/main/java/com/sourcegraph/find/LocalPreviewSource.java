@@ -0,0 +1,180 @@
+package com.sourcegraph.find;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import com.sourcegraph.git.LocalCheckoutResolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides preview content for results from repos that are checked out in the project, straight from the working tree.
+ * The webview then doesn't need to load the content from the server.
+ * <p>
+ * Finding out whether a result is checked out runs git, so it happens in the background and the outcome is kept in
+ * memory. {@link #hasContent} and {@link #getContent} only look at what's known already. A lookup is forgotten when
+ * its file changes, and the lookups of a git root are forgotten when something in its ".git" directory changes, e.g.
+ * HEAD after a checkout.
+ */
+public class LocalPreviewSource implements Disposable {
+    private static final int MAX_CACHED_LOOKUPS = 256;
+
+    private final Project project;
+    // File key -> lookup, in access order
+    private final LinkedHashMap<String, Lookup> lookups = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Lookup> eldest) {
+            return size() > MAX_CACHED_LOOKUPS;
+        }
+    };
+    private final Set<String> inFlightKeys = ConcurrentHashMap.newKeySet();
+
+    public LocalPreviewSource(@NotNull Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                for (VFileEvent event : events) {
+                    invalidate(event.getPath());
+                }
+            }
+        });
+        project.getMessageBus().connect(this).subscribe(ProjectLevelVcsManager.VCS_CONFIGURATION_CHANGED, () -> {
+            synchronized (lookups) {
+                lookups.clear();
+            }
+        });
+    }
+
+    @NotNull
+    public static LocalPreviewSource getInstance(@NotNull Project project) {
+        return project.getService(LocalPreviewSource.class);
+    }
+
+    /**
+     * Doesn't block. If the file wasn't looked up yet, this starts the lookup in the background and returns false.
+     */
+    public boolean hasContent(@NotNull PreviewPrefetcher.FileKey file) {
+        Lookup lookup = getLookup(file);
+        if (lookup == null) {
+            resolveInBackground(file);
+            return false;
+        }
+        return lookup.file != null && isUsable(lookup.file);
+    }
+
+    /**
+     * Doesn't run git, only uses files that were already looked up.
+     * Prefers the loaded document over the file on disk. Documents with unsaved changes are not used because the
+     * offsets of the match might not fit them.
+     *
+     * @return The file content with "\n" line endings, or null if the file is not known to be available locally.
+     */
+    @Nullable
+    public String getContent(@NotNull PreviewPrefetcher.FileKey file) {
+        Lookup lookup = getLookup(file);
+        if (lookup == null || lookup.file == null) {
+            return null;
+        }
+        VirtualFile localFile = lookup.file;
+        return ReadAction.compute(() -> {
+            if (!isUsable(localFile)) {
+                return null;
+            }
+            Document document = FileDocumentManager.getInstance().getCachedDocument(localFile);
+            return document != null ? document.getText() : LoadTextUtil.loadText(localFile).toString();
+        });
+    }
+
+    /**
+     * Like {@link #getContent}, but looks the file up first if needed. Runs git, so don't call it on the EDT or on
+     * the bridge's thread.
+     */
+    @Nullable
+    public String loadContent(@NotNull PreviewPrefetcher.FileKey file) {
+        if (getLookup(file) == null) {
+            resolve(file);
+        }
+        return getContent(file);
+    }
+
+    private static boolean isUsable(@NotNull VirtualFile localFile) {
+        return localFile.isValid() && !FileDocumentManager.getInstance().isFileModified(localFile);
+    }
+
+    @Nullable
+    private Lookup getLookup(@NotNull PreviewPrefetcher.FileKey file) {
+        if (!RemoteContentCache.isCommitPinned(file.getCommit()) && !file.getCommit().equals(LocalCheckoutResolver.WORKING_TREE_REVISION)) {
+            // Without a full commit hash, we can't tell whether the local file is the same, and we don't pass it to git
+            return Lookup.NOT_LOCAL;
+        }
+        synchronized (lookups) {
+            return lookups.get(file.toString());
+        }
+    }
+
+    private void resolveInBackground(@NotNull PreviewPrefetcher.FileKey file) {
+        if (inFlightKeys.add(file.toString())) {
+            BackgroundExecutor.getInstance().submit("find local preview", this, () -> {
+                try {
+                    resolve(file);
+                } finally {
+                    inFlightKeys.remove(file.toString());
+                }
+            });
+        }
+    }
+
+    private void resolve(@NotNull PreviewPrefetcher.FileKey file) {
+        VirtualFile localFile = LocalCheckoutResolver.getInstance(project).findLocalFile(file.getRepoUrl(), file.getCommit(), file.getPath());
+        synchronized (lookups) {
+            lookups.put(file.toString(), localFile != null ? new Lookup(localFile) : Lookup.NOT_LOCAL);
+        }
+    }
+
+    private void invalidate(@NotNull String changedPath) {
+        int gitDirectoryIndex = changedPath.indexOf("/.git/");
+        String changedRootPath = gitDirectoryIndex != -1 ? changedPath.substring(0, gitDirectoryIndex + 1) : null;
+        synchronized (lookups) {
+            for (Iterator<Lookup> iterator = lookups.values().iterator(); iterator.hasNext(); ) {
+                Lookup lookup = iterator.next();
+                if (changedRootPath != null
+                    ? lookup.file == null || lookup.file.getPath().startsWith(changedRootPath)
+                    : lookup.file != null && lookup.file.getPath().equals(changedPath)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    private static class Lookup {
+        private static final Lookup NOT_LOCAL = new Lookup(null);
+
+        // Null if the file is not checked out in this project, or has changed since the commit
+        private final VirtualFile file;
+
+        private Lookup(@Nullable VirtualFile file) {
+            this.file = file;
+        }
+    }
+}
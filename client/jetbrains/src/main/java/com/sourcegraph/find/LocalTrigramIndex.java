@@ -0,0 +1,460 @@
+package com.sourcegraph.find;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.VirtualFileVisitor;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import com.sourcegraph.concurrent.SerialExecutor;
+import com.sourcegraph.config.UserLevelConfig;
+import com.sourcegraph.git.LocalCheckoutResolver;
+import com.sourcegraph.metrics.MetricsRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * A trigram index of the project's files that are in a git checkout with a Sourcegraph remote, so that the popup can
+ * show matches from the disk right away while the remote search starts.
+ * Opt-in with `localIndex = true` in ~/.sourcegraph-jetbrains.properties.
+ * <p>
+ * The index is built in the background after startup. Files that change later are dropped from the built
+ * {@link TrigramPostings} and kept in a small on-heap map instead, reusing the ids of removed files. Once there are too
+ * many changed or removed files, the postings are rebuilt.
+ * Searches check at most {@link #MAX_CANDIDATES} files and stop after {@link #MAX_SEARCH_MILLIS}, because the webview
+ * waits for them.
+ * Results use {@link LocalCheckoutResolver#WORKING_TREE_REVISION}, so previews and opening come from the disk, too.
+ */
+public class LocalTrigramIndex implements Disposable {
+    private static final Logger logger = Logger.getInstance(LocalTrigramIndex.class);
+    private static final int MAX_FILES = 100_000;
+    private static final long MAX_FILE_LENGTH = 1024 * 1024;
+    private static final long MAX_INDEXED_CHARACTERS = 256L * 1024 * 1024;
+    private static final int MAX_UPDATED_FILES = 1000;
+    private static final int MAX_LINE_MATCHES_PER_FILE = 20;
+    private static final int MAX_CANDIDATES = 2000;
+    private static final long MAX_SEARCH_MILLIS = 200;
+    // Filters like "repo:" or "-file:" need the server
+    private static final Pattern FILTER_PATTERN = Pattern.compile("(^|\\s)-?[a-zA-Z]+:");
+
+    private final Project project;
+    private final AtomicBoolean isRebuildScheduled = new AtomicBoolean();
+    // Applies the file changes in the order they happened
+    private final SerialExecutor updates = new SerialExecutor("local index update");
+    private volatile boolean isDisposed = false;
+
+    // All guarded by "this"
+    private final List<IndexedFile> files = new ArrayList<>(); // By id, null for removed files
+    private final TreeMap<String, Integer> idsByPath = new TreeMap<>(); // Sorted to find the files in a directory
+    private TrigramPostings postings = null; // Has the ids below postingsFileCount
+    private int postingsFileCount = 0;
+    private final BitSet removedIds = new BitSet();
+    private final BitSet freeIds = new BitSet(); // Ids without a file, to be reused
+    private final Map<Integer, int[]> bucketsByUpdatedId = new HashMap<>();
+    private boolean isRebuilding = false;
+    private final Set<String> pathsChangedWhileRebuilding = new LinkedHashSet<>();
+
+    public LocalTrigramIndex(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    public static LocalTrigramIndex getInstance(@NotNull Project project) {
+        return project.getService(LocalTrigramIndex.class);
+    }
+
+    /**
+     * Builds the index in the background and keeps it up to date, if it's enabled.
+     */
+    public void startIndexing() {
+        if (!UserLevelConfig.isLocalIndexEnabled()) {
+            return;
+        }
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                Set<String> paths = new LinkedHashSet<>();
+                for (VFileEvent event : events) {
+                    paths.add(event.getPath());
+                    if (event instanceof VFileMoveEvent) {
+                        paths.add(((VFileMoveEvent) event).getOldPath());
+                    } else if (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+                        paths.add(((VFilePropertyChangeEvent) event).getOldPath());
+                    } else if (event instanceof VFileCopyEvent) {
+                        VFileCopyEvent copyEvent = (VFileCopyEvent) event;
+                        paths.add(copyEvent.getNewParent().getPath() + "/" + copyEvent.getNewChildName());
+                    }
+                }
+                updates.execute(() -> update(paths));
+            }
+        });
+        scheduleRebuild();
+    }
+
+    /**
+     * @return The matches as content matches of the streaming search API, or null if the index can't answer the
+     * search: it's disabled or still building, or the query needs the server.
+     * Might miss matches if the text is very common, see {@link #MAX_CANDIDATES}.
+     */
+    @Nullable
+    public JsonArray search(@NotNull Search search, int maxFiles) {
+        String literal = getLiteral(search);
+        if (literal == null) {
+            return null;
+        }
+        long startTime = System.nanoTime();
+        int[] queryBuckets = TrigramPostings.getBuckets(literal);
+        List<IndexedFile> candidates = new ArrayList<>();
+        synchronized (this) {
+            if (postings == null) {
+                return null;
+            }
+            // Changed files first, as they are likely the ones the user is working on
+            for (Map.Entry<Integer, int[]> entry : bucketsByUpdatedId.entrySet()) {
+                if (candidates.size() >= MAX_CANDIDATES) {
+                    break;
+                }
+                if (TrigramPostings.containsAll(entry.getValue(), queryBuckets)) {
+                    candidates.add(files.get(entry.getKey()));
+                }
+            }
+            for (int id : postings.findCandidates(queryBuckets)) {
+                if (candidates.size() >= MAX_CANDIDATES) {
+                    break;
+                }
+                if (!removedIds.get(id)) {
+                    candidates.add(files.get(id));
+                }
+            }
+        }
+
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(MAX_SEARCH_MILLIS);
+        JsonArray matches = new JsonArray();
+        for (IndexedFile candidate : candidates) {
+            if (matches.size() >= maxFiles || System.nanoTime() > deadline) {
+                break;
+            }
+            VirtualFile file = LocalFileSystem.getInstance().findFileByPath(candidate.path);
+            String content = file != null ? loadText(file) : null;
+            JsonArray lineMatches = content != null ? findLineMatches(content, literal, search.isCaseSensitive()) : null;
+            if (lineMatches != null && lineMatches.size() > 0) {
+                JsonObject match = new JsonObject();
+                match.addProperty("type", "content");
+                match.addProperty("repository", candidate.repoName);
+                match.addProperty("commit", LocalCheckoutResolver.WORKING_TREE_REVISION);
+                match.addProperty("path", candidate.relativePath);
+                match.add("lineMatches", lineMatches);
+                matches.add(match);
+            }
+        }
+        MetricsRegistry.getInstance().histogram("localIndex.search").recordSince(startTime);
+        return matches;
+    }
+
+    /**
+     * @return The text to look for, or null if the search needs features of the server, like filters, regexps, or a
+     * search context other than the global one.
+     */
+    @Nullable
+    static String getLiteral(@NotNull Search search) {
+        String query = search.getQuery() != null ? search.getQuery().trim() : "";
+        if (query.length() < 3 || FILTER_PATTERN.matcher(query).find()) {
+            return null;
+        }
+        String searchContext = search.getSelectedSearchContextSpec();
+        if (searchContext != null && !searchContext.isEmpty() && !searchContext.equals("global")) {
+            return null;
+        }
+        if ("literal".equals(search.getPatternType())) {
+            return query;
+        }
+        // In the standard syntax, words are separate terms, so we only handle a single word
+        if ("standard".equals(search.getPatternType()) && !query.contains(" ") && !query.contains("\"")) {
+            return query;
+        }
+        return null;
+    }
+
+    @NotNull
+    private static JsonArray findLineMatches(@NotNull String content, @NotNull String literal, boolean caseSensitive) {
+        JsonArray lineMatches = new JsonArray();
+        int lineNumber = 0;
+        int lineStart = 0;
+        while (lineStart <= content.length() && lineMatches.size() < MAX_LINE_MATCHES_PER_FILE) {
+            int lineEnd = content.indexOf('\n', lineStart);
+            if (lineEnd == -1) {
+                lineEnd = content.length();
+            }
+            JsonArray offsetAndLengths = new JsonArray();
+            for (int offset = lineStart; offset + literal.length() <= lineEnd; offset++) {
+                if (content.regionMatches(!caseSensitive, offset, literal, 0, literal.length())) {
+                    JsonArray offsetAndLength = new JsonArray();
+                    offsetAndLength.add(offset - lineStart);
+                    offsetAndLength.add(literal.length());
+                    offsetAndLengths.add(offsetAndLength);
+                    offset += literal.length() - 1;
+                }
+            }
+            if (offsetAndLengths.size() > 0) {
+                JsonObject lineMatch = new JsonObject();
+                lineMatch.addProperty("line", content.substring(lineStart, lineEnd));
+                lineMatch.addProperty("lineNumber", lineNumber);
+                lineMatch.add("offsetAndLengths", offsetAndLengths);
+                lineMatches.add(lineMatch);
+            }
+            lineStart = lineEnd + 1;
+            lineNumber++;
+        }
+        return lineMatches;
+    }
+
+    private void scheduleRebuild() {
+        if (isRebuildScheduled.compareAndSet(false, true)) {
+            BackgroundExecutor.getInstance().submit("local index build", this, this::rebuild);
+        }
+    }
+
+    private void rebuild() {
+        synchronized (this) {
+            isRebuilding = true;
+        }
+        try {
+            long startTime = System.nanoTime();
+            // Non-blocking, so that the IDE's write actions don't wait for us. They restart the collection instead.
+            List<VirtualFile> projectFiles = ReadAction.nonBlocking(this::collectProjectFiles).expireWith(this).executeSynchronously();
+            List<IndexedFile> newFiles = new ArrayList<>();
+            List<int[]> bucketsByFile = new ArrayList<>();
+            long indexedCharacters = 0;
+            for (VirtualFile file : projectFiles) {
+                if (Thread.currentThread().isInterrupted() || indexedCharacters > MAX_INDEXED_CHARACTERS) {
+                    break;
+                }
+                IndexedFile indexedFile = toIndexedFile(file);
+                String content = indexedFile != null ? loadText(file) : null;
+                if (content != null) {
+                    newFiles.add(indexedFile);
+                    bucketsByFile.add(TrigramPostings.getBuckets(content));
+                    indexedCharacters += content.length();
+                }
+            }
+            TrigramPostings newPostings = TrigramPostings.build(bucketsByFile);
+
+            List<String> changedPaths;
+            synchronized (this) {
+                files.clear();
+                files.addAll(newFiles);
+                idsByPath.clear();
+                for (int id = 0; id < newFiles.size(); id++) {
+                    idsByPath.put(newFiles.get(id).path, id);
+                }
+                postings = newPostings;
+                postingsFileCount = newFiles.size();
+                removedIds.clear();
+                freeIds.clear();
+                bucketsByUpdatedId.clear();
+                changedPaths = new ArrayList<>(pathsChangedWhileRebuilding);
+                pathsChangedWhileRebuilding.clear();
+                isRebuilding = false;
+            }
+            // Only now, so that updates during the rebuild don't schedule another one because of the old state
+            isRebuildScheduled.set(false);
+            MetricsRegistry.getInstance().histogram("localIndex.build").recordSince(startTime);
+            logger.info("Indexed " + newFiles.size() + " files for local search, postings take " + newPostings.getSizeInBytes() / 1024 + " KB");
+            updates.execute(() -> update(changedPaths));
+        } catch (ProcessCanceledException e) {
+            // The project is closing
+        } finally {
+            synchronized (this) {
+                isRebuilding = false;
+            }
+            isRebuildScheduled.set(false);
+        }
+    }
+
+    /**
+     * Only runs on {@link #updates}.
+     */
+    private void update(@NotNull Collection<String> paths) {
+        for (String path : paths) {
+            if (isDisposed) {
+                return;
+            }
+            synchronized (this) {
+                if (isRebuilding) {
+                    pathsChangedWhileRebuilding.add(path);
+                    continue;
+                }
+                if (idsByPath.containsKey(path)) {
+                    removeFile(path);
+                } else {
+                    // Moved or deleted directories take their files with them. '/' + 1 is '0', so this covers
+                    // exactly the paths that start with the directory and a slash.
+                    List<String> removedPaths = new ArrayList<>(idsByPath.subMap(path + "/", path + "0").keySet());
+                    for (String removedPath : removedPaths) {
+                        removeFile(removedPath);
+                    }
+                }
+            }
+
+            VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+            if (file == null) {
+                continue;
+            }
+            List<VirtualFile> addedFiles = ReadAction.compute(() -> {
+                List<VirtualFile> result = new ArrayList<>();
+                VfsUtilCore.visitChildrenRecursively(file, new VirtualFileVisitor<Void>() {
+                    @Override
+                    public boolean visitFile(@NotNull VirtualFile child) {
+                        if (isIndexable(child)) {
+                            result.add(child);
+                        }
+                        return ProjectFileIndex.getInstance(project).isInContent(child);
+                    }
+                });
+                return result;
+            });
+            for (VirtualFile addedFile : addedFiles) {
+                IndexedFile indexedFile = toIndexedFile(addedFile);
+                String content = indexedFile != null ? loadText(addedFile) : null;
+                if (content != null) {
+                    int[] buckets = TrigramPostings.getBuckets(content);
+                    synchronized (this) {
+                        removeFile(indexedFile.path);
+                        int id = freeIds.nextSetBit(0);
+                        if (id != -1) {
+                            freeIds.clear(id);
+                            files.set(id, indexedFile);
+                        } else {
+                            id = files.size();
+                            files.add(indexedFile);
+                        }
+                        idsByPath.put(indexedFile.path, id);
+                        bucketsByUpdatedId.put(id, buckets);
+                    }
+                }
+            }
+        }
+
+        synchronized (this) {
+            // Removed files still take up room in the postings until they are reused
+            if (bucketsByUpdatedId.size() + freeIds.cardinality() > MAX_UPDATED_FILES) {
+                scheduleRebuild();
+            }
+        }
+    }
+
+    private void removeFile(@NotNull String path) {
+        Integer id = idsByPath.remove(path);
+        if (id != null) {
+            files.set(id, null);
+            freeIds.set(id);
+            bucketsByUpdatedId.remove(id);
+            // A reused id stays removed from the postings, its new file is found through bucketsByUpdatedId
+            if (id < postingsFileCount) {
+                removedIds.set(id);
+            }
+        }
+    }
+
+    @NotNull
+    private List<VirtualFile> collectProjectFiles() {
+        List<VirtualFile> projectFiles = new ArrayList<>();
+        ProjectFileIndex.getInstance(project).iterateContent(file -> {
+            ProgressManager.checkCanceled();
+            if (isIndexable(file)) {
+                projectFiles.add(file);
+            }
+            return projectFiles.size() < MAX_FILES;
+        });
+        return projectFiles;
+    }
+
+    /**
+     * Only cheap checks, as it runs for every file of the project in one read action. {@link #loadText} skips binary
+     * files, because the file type may be detected from the content.
+     */
+    private boolean isIndexable(@NotNull VirtualFile file) {
+        return !file.isDirectory() && file.isInLocalFileSystem() && file.getLength() <= MAX_FILE_LENGTH
+            && ProjectFileIndex.getInstance(project).isInContent(file);
+    }
+
+    @Nullable
+    private IndexedFile toIndexedFile(@NotNull VirtualFile file) {
+        VirtualFile root = ProjectLevelVcsManager.getInstance(project).getVcsRootFor(file);
+        if (root == null) {
+            return null;
+        }
+        String repoName = LocalCheckoutResolver.getInstance(project).getRepoName(root.getPath());
+        String relativePath = VfsUtilCore.getRelativePath(file, root);
+        if (repoName.isEmpty() || relativePath == null) {
+            return null;
+        }
+        return new IndexedFile(file.getPath(), repoName, relativePath);
+    }
+
+    /**
+     * @return Null for binary files.
+     */
+    @Nullable
+    private static String loadText(@NotNull VirtualFile file) {
+        try {
+            return ReadAction.compute(() -> file.isValid() && !file.getFileType().isBinary() ? LoadTextUtil.loadText(file).toString() : null);
+        } catch (Exception e) {
+            logger.debug("Could not index " + file.getPath(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        isDisposed = true;
+        synchronized (this) {
+            postings = null;
+            files.clear();
+            idsByPath.clear();
+            freeIds.clear();
+            bucketsByUpdatedId.clear();
+        }
+    }
+
+    private static class IndexedFile {
+        private final String path;
+        private final String repoName;
+        private final String relativePath;
+
+        private IndexedFile(@NotNull String path, @NotNull String repoName, @NotNull String relativePath) {
+            this.path = path;
+            this.repoName = repoName;
+            this.relativePath = relativePath;
+        }
+    }
+}
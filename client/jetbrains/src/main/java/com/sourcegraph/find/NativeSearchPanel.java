@@ -0,0 +1,349 @@
+package com.sourcegraph.find;
+
+import com.google.gson.JsonElement;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.ui.ColoredListCellRenderer;
+import com.intellij.ui.ScrollingUtil;
+import com.intellij.ui.SearchTextField;
+import com.intellij.ui.SimpleTextAttributes;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.ui.JBUI;
+import com.intellij.util.ui.UIUtil;
+import com.sourcegraph.api.StreamingSearchClient;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import com.sourcegraph.config.ConfigUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Swing search UI for when JCEF is not available or too heavy, enabled with {@code nativeSearchUi=true} in
+ * {@code ~/.sourcegraph-jetbrains.properties}.
+ * <p>
+ * Results are streamed from the server into a list with fixed-height rows and a single reused renderer, so that
+ * painting and layout only depend on the visible rows, even with many thousands of results.
+ * The selected result is shown in the {@link PreviewPanel} directly, without the bridge.
+ */
+public class NativeSearchPanel extends JPanel implements Disposable {
+    private static final Logger logger = Logger.getInstance(NativeSearchPanel.class);
+    private static final int MAX_HISTORY_ITEMS = 20;
+
+    private final Project project;
+    private final FindPopupPanel findPopupPanel;
+    private final SearchTextField queryField;
+    private final JBLabel statusLabel;
+    private final ResultListModel resultListModel = new ResultListModel();
+    private final JBList<SearchResultRow> resultList;
+    // Same numbering scheme as the webview, see FindPopupPanel
+    private final AtomicLong nextPreviewSequenceNumber = new AtomicLong(System.currentTimeMillis() * 1000);
+    private StreamingSearchClient currentSearch;
+
+    public NativeSearchPanel(@NotNull Project project, @NotNull FindPopupPanel findPopupPanel) {
+        super(new BorderLayout());
+        this.project = project;
+        this.findPopupPanel = findPopupPanel;
+
+        queryField = new SearchTextField(true);
+        updateQueryHistory();
+        Search lastSearch = ConfigUtil.getLastSearch(project);
+        if (lastSearch != null && lastSearch.getQuery() != null) {
+            queryField.setText(lastSearch.getQuery());
+        }
+        queryField.getTextEditor().addActionListener(e -> search());
+        queryField.getTextEditor().addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                // Like in Find in Files, the arrow keys move through the results while the query field has focus
+                if (e.getKeyCode() == KeyEvent.VK_DOWN || e.getKeyCode() == KeyEvent.VK_UP) {
+                    if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+                        ScrollingUtil.moveDown(resultList, 0);
+                    } else {
+                        ScrollingUtil.moveUp(resultList, 0);
+                    }
+                    e.consume();
+                }
+            }
+        });
+
+        resultList = new JBList<>(resultListModel);
+        resultList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // The prototype gives every row the same size, so the list never measures all rows. The list is still as wide
+        // as the scroll pane.
+        resultList.setPrototypeCellValue(SearchResultRow.createPrototype());
+        resultList.setCellRenderer(new ResultRenderer());
+        resultList.getEmptyText().setText("Type a query and press Enter");
+        resultList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                showPreview(resultList.getSelectedValue());
+            }
+        });
+        resultList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    openSelectedResult();
+                }
+            }
+        });
+        resultList.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ENTER && e.getModifiersEx() == 0) {
+                    openSelectedResult();
+                    e.consume();
+                }
+            }
+        });
+
+        statusLabel = new JBLabel();
+        statusLabel.setForeground(UIUtil.getContextHelpForeground());
+        statusLabel.setBorder(JBUI.Borders.empty(2, 4));
+
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.add(queryField, BorderLayout.CENTER);
+        topPanel.add(statusLabel, BorderLayout.SOUTH);
+        add(topPanel, BorderLayout.NORTH);
+        add(new JBScrollPane(resultList, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED, ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER),
+            BorderLayout.CENTER);
+    }
+
+    public void focusQueryField() {
+        queryField.requestFocusInWindow();
+        queryField.selectText();
+    }
+
+    private void updateQueryHistory() {
+        List<String> queries = new ArrayList<>();
+        for (SearchHistoryIndex.Entry entry : SearchHistory.getInstance(project).complete("", MAX_HISTORY_ITEMS)) {
+            queries.add(entry.getQuery());
+        }
+        queryField.setHistory(queries);
+    }
+
+    private void search() {
+        String query = queryField.getText().trim();
+        cancelSearch();
+        resultListModel.clear();
+        findPopupPanel.clearPreviewContentIfInTime(nextPreviewSequenceNumber.getAndIncrement());
+        if (query.isEmpty()) {
+            statusLabel.setText("");
+            return;
+        }
+
+        // The native UI has no toggles, so we keep the ones from the last search
+        Search lastSearch = ConfigUtil.getLastSearch(project);
+        Search search = new Search(query,
+            lastSearch != null && lastSearch.isCaseSensitive(),
+            lastSearch != null && lastSearch.getPatternType() != null ? lastSearch.getPatternType() : "literal",
+            lastSearch != null && lastSearch.getSelectedSearchContextSpec() != null ? lastSearch.getSelectedSearchContextSpec() : "global");
+        ConfigUtil.setLastSearch(project, search);
+        SearchHistory.getInstance(project).record(query);
+        updateQueryHistory();
+
+        statusLabel.setText("Searching...");
+        StreamingSearchClient[] searchHolder = new StreamingSearchClient[1];
+        searchHolder[0] = new StreamingSearchClient(ConfigUtil.getSourcegraphUrl(project), ConfigUtil.getAccessToken(project),
+            buildQuery(search), new StreamingSearchClient.Listener() {
+            @Override
+            public void onEvent(@NotNull String event, @NotNull JsonElement data) {
+                if (!event.equals("matches") || !data.isJsonArray()) {
+                    return;
+                }
+                // Converting happens on the reading thread, the EDT only appends
+                List<SearchResultRow> rows = new ArrayList<>();
+                for (JsonElement match : data.getAsJsonArray()) {
+                    rows.addAll(SearchResultRow.fromMatch(match.getAsJsonObject()));
+                }
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    if (currentSearch == searchHolder[0]) {
+                        appendResults(rows);
+                    }
+                });
+            }
+
+            @Override
+            public void onDone(@Nullable String errorMessage) {
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    if (currentSearch == searchHolder[0]) {
+                        statusLabel.setText(errorMessage != null ? "Search failed: " + errorMessage : getResultCountText());
+                    }
+                });
+            }
+        });
+        currentSearch = searchHolder[0];
+        currentSearch.start();
+    }
+
+    @NotNull
+    private static String buildQuery(@NotNull Search search) {
+        return "context:" + search.getSelectedSearchContextSpec() + " " + search.getQuery()
+            + " patternType:" + search.getPatternType() + (search.isCaseSensitive() ? " case:yes" : "");
+    }
+
+    private void appendResults(@NotNull List<SearchResultRow> rows) {
+        boolean wasEmpty = resultListModel.getSize() == 0;
+        resultListModel.addAll(rows);
+        statusLabel.setText(getResultCountText() + ", searching...");
+        if (wasEmpty && resultListModel.getSize() > 0) {
+            resultList.setSelectedIndex(0);
+        }
+    }
+
+    @NotNull
+    private String getResultCountText() {
+        int count = resultListModel.getSize();
+        return count == 1 ? "1 result" : count + " results";
+    }
+
+    private void showPreview(@Nullable SearchResultRow row) {
+        long sequenceNumber = nextPreviewSequenceNumber.getAndIncrement();
+        if (row == null) {
+            findPopupPanel.clearPreviewContentIfInTime(sequenceNumber);
+            return;
+        }
+        findPopupPanel.indicateLoadingIfInTime(sequenceNumber);
+        BackgroundExecutor.getInstance().submit("native search preview", this, () -> {
+            String content = null;
+            if (row.path != null && (row.resultType.equals("file") || row.resultType.equals("path") || row.resultType.equals("symbol"))) {
+                try {
+                    content = PreviewPrefetcher.getInstance(project).loadContent(new PreviewPrefetcher.FileKey(row.repoName, row.commit, row.path));
+                } catch (Exception e) {
+                    logger.info("Could not load the preview of " + row.path, e);
+                }
+            }
+            PreviewContent previewContent = PreviewContent.fromSearchResult(project, sequenceNumber,
+                row.resultType, row.getFileName(), row.repoName, row.commit, row.path, content,
+                row.symbolName, row.symbolContainerName, row.resultType.equals("commit") ? row.text : null,
+                row.lineNumber, row.lineRelativeOffsetAndLengths, row.relativeUrl);
+            ApplicationManager.getApplication().invokeLater(() -> findPopupPanel.setPreviewContentIfInTime(previewContent));
+        });
+    }
+
+    private void openSelectedResult() {
+        PreviewPanel previewPanel = findPopupPanel.getPreviewPanel();
+        PreviewContent previewContent = previewPanel != null ? previewPanel.getPreviewContent() : null;
+        if (previewContent == null) {
+            return;
+        }
+        try {
+            previewContent.openInEditorOrBrowser();
+        } catch (Exception e) {
+            logger.error("Error opening file in editor", e);
+        }
+    }
+
+    private void cancelSearch() {
+        if (currentSearch != null) {
+            currentSearch.cancel();
+            currentSearch = null;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        cancelSearch();
+    }
+
+    /**
+     * Appends in batches with a single event, so that a streamed batch doesn't cause one update per row.
+     */
+    private static class ResultListModel extends AbstractListModel<SearchResultRow> {
+        private final ArrayList<SearchResultRow> rows = new ArrayList<>();
+
+        @Override
+        public int getSize() {
+            return rows.size();
+        }
+
+        @Override
+        public SearchResultRow getElementAt(int index) {
+            return rows.get(index);
+        }
+
+        void addAll(@NotNull List<SearchResultRow> newRows) {
+            if (newRows.isEmpty()) {
+                return;
+            }
+            int firstIndex = rows.size();
+            rows.addAll(newRows);
+            fireIntervalAdded(this, firstIndex, rows.size() - 1);
+        }
+
+        void clear() {
+            int size = rows.size();
+            if (size == 0) {
+                return;
+            }
+            rows.clear();
+            rows.trimToSize();
+            fireIntervalRemoved(this, 0, size - 1);
+        }
+    }
+
+    /**
+     * A single component that is reconfigured for every painted row.
+     */
+    private static class ResultRenderer extends ColoredListCellRenderer<SearchResultRow> {
+        @Override
+        protected void customizeCellRenderer(@NotNull JList<? extends SearchResultRow> list, SearchResultRow row, int index,
+                                             boolean selected, boolean hasFocus) {
+            switch (row.resultType) {
+                case "file":
+                    appendHighlightedLine(row);
+                    append("  " + row.getFileName() + ":" + (row.lineNumber + 1), SimpleTextAttributes.GRAYED_ATTRIBUTES);
+                    break;
+                case "symbol":
+                    append(row.text, SimpleTextAttributes.REGULAR_BOLD_ATTRIBUTES);
+                    if (row.symbolContainerName != null) {
+                        append(" " + row.symbolContainerName, SimpleTextAttributes.REGULAR_ATTRIBUTES);
+                    }
+                    append("  " + row.getFileName(), SimpleTextAttributes.GRAYED_ATTRIBUTES);
+                    break;
+                case "path":
+                    append(String.valueOf(row.path), SimpleTextAttributes.REGULAR_ATTRIBUTES);
+                    break;
+                case "commit":
+                    append(row.text, SimpleTextAttributes.REGULAR_ATTRIBUTES);
+                    break;
+                default:
+                    break;
+            }
+            append("  " + row.repoName, SimpleTextAttributes.GRAYED_SMALL_ATTRIBUTES);
+        }
+
+        private void appendHighlightedLine(@NotNull SearchResultRow row) {
+            String line = row.text;
+            int position = 0;
+            for (int[] range : row.lineRelativeOffsetAndLengths) {
+                int start = Math.min(Math.max(range[1], position), line.length());
+                int end = Math.min(start + range[2], line.length());
+                if (start > position) {
+                    String text = line.substring(position, start);
+                    append(position == 0 ? text.stripLeading() : text, SimpleTextAttributes.REGULAR_ATTRIBUTES);
+                }
+                if (end > start) {
+                    append(line.substring(start, end), SimpleTextAttributes.REGULAR_BOLD_ATTRIBUTES);
+                }
+                position = end;
+            }
+            if (position < line.length()) {
+                String text = line.substring(position);
+                append(position == 0 ? text.stripLeading() : text, SimpleTextAttributes.REGULAR_ATTRIBUTES);
+            }
+        }
+    }
+}
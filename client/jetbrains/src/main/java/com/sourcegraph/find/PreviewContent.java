@@ -1,8 +1,10 @@
 package com.sourcegraph.find;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.externalSystem.service.execution.NotSupportedException;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
@@ -11,7 +13,12 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.testFramework.LightVirtualFile;
+import com.sourcegraph.concurrent.BackgroundExecutor;
 import com.sourcegraph.config.ConfigUtil;
+import com.sourcegraph.git.LocalCheckoutResolver;
+import com.sourcegraph.metrics.MetricsRegistry;
+import com.sourcegraph.vfs.SourcegraphFileSystem;
+import com.sourcegraph.vfs.SourcegraphVirtualFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -19,15 +26,13 @@ import java.awt.*;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.time.Instant;
-import java.time.format.DateTimeFormatter;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
-import java.util.Date;
 import java.util.Objects;
 
 public class PreviewContent {
     private final Project project;
-    private final Date receivedDateTime;
+    private final long sequenceNumber;
     private final String resultType;
     private final String fileName;
     private final String repoUrl;
@@ -42,9 +47,10 @@ public class PreviewContent {
     private final String relativeUrl;
 
     private VirtualFile virtualFile;
+    private String decodedContent;
 
     public PreviewContent(@NotNull Project project,
-                          @NotNull Date receivedDateTime,
+                          long sequenceNumber,
                           @Nullable String resultType,
                           @Nullable String fileName,
                           @NotNull String repoUrl,
@@ -60,7 +66,7 @@ public class PreviewContent {
         this.project = project;
         // It seems like the constructor is not called when we use the JSON parser to create instances of this class, so
         // avoid adding any computation here.
-        this.receivedDateTime = receivedDateTime;
+        this.sequenceNumber = sequenceNumber;
         this.resultType = resultType;
         this.fileName = fileName;
         this.repoUrl = repoUrl;
@@ -77,16 +83,50 @@ public class PreviewContent {
 
     @NotNull
     public static PreviewContent fromJson(Project project, @NotNull JsonObject json) {
-        int absoluteOffsetAndLengthsSize = isNotNull(json, "absoluteOffsetAndLengths") ? json.getAsJsonArray("absoluteOffsetAndLengths").size() : 0;
-        int[][] absoluteOffsetAndLengths = new int[absoluteOffsetAndLengthsSize][2];
-        for (int i = 0; i < absoluteOffsetAndLengths.length; i++) {
-            JsonElement element = json.getAsJsonArray("absoluteOffsetAndLengths").get(i);
-            absoluteOffsetAndLengths[i][0] = element.getAsJsonArray().get(0).getAsInt();
-            absoluteOffsetAndLengths[i][1] = element.getAsJsonArray().get(1).getAsInt();
+        // Large contents come as raw bytes through PreviewUploadHandler, and the request only has their handle.
+        String uploadedContent = null;
+        if (isNotNull(json, "contentHandle")) {
+            byte[] uploadedBytes = UploadedPreviewContentStore.getInstance().take(json.get("contentHandle").getAsString());
+            if (uploadedBytes == null) {
+                throw new IllegalStateException("The uploaded content is no longer available.");
+            }
+            uploadedContent = new String(uploadedBytes, StandardCharsets.UTF_8);
+        }
+
+        // When the webview knows that we already prefetched the content or have it locally, it doesn't send it and gives
+        // us the highlights as line-relative ranges because it can't compute the absolute offsets without the content.
+        String prefetchedContent = null;
+        if (isNotNull(json, "isContentPrefetched") && json.get("isContentPrefetched").getAsBoolean()) {
+            PreviewPrefetcher.FileKey fileKey = PreviewPrefetcher.FileKey.fromJson(json);
+            prefetchedContent = PreviewPrefetcher.getInstance(project).getContent(fileKey);
+            if (prefetchedContent == null) {
+                prefetchedContent = RemoteContentCache.getInstance().getContent(ConfigUtil.getSourcegraphUrl(project), fileKey.getRepoUrl(), fileKey.getCommit(), fileKey.getPath());
+            }
+            if (prefetchedContent == null) {
+                prefetchedContent = LocalPreviewSource.getInstance(project).getContent(fileKey);
+            }
+            if (prefetchedContent == null) {
+                throw new IllegalStateException("The prefetched content is no longer available.");
+            }
         }
 
-        return new PreviewContent(project,
-            Date.from(Instant.from(DateTimeFormatter.ISO_INSTANT.parse(json.get("timeAsISOString").getAsString()))),
+        int[][] absoluteOffsetAndLengths;
+        if (prefetchedContent != null) {
+            absoluteOffsetAndLengths = isNotNull(json, "lineRelativeOffsetAndLengths")
+                ? convertLineRelativeOffsetAndLengths(prefetchedContent, toIntArrays(json.getAsJsonArray("lineRelativeOffsetAndLengths"), 3))
+                : new int[0][2];
+        } else {
+            int absoluteOffsetAndLengthsSize = isNotNull(json, "absoluteOffsetAndLengths") ? json.getAsJsonArray("absoluteOffsetAndLengths").size() : 0;
+            absoluteOffsetAndLengths = new int[absoluteOffsetAndLengthsSize][2];
+            for (int i = 0; i < absoluteOffsetAndLengths.length; i++) {
+                JsonElement element = json.getAsJsonArray("absoluteOffsetAndLengths").get(i);
+                absoluteOffsetAndLengths[i][0] = element.getAsJsonArray().get(0).getAsInt();
+                absoluteOffsetAndLengths[i][1] = element.getAsJsonArray().get(1).getAsInt();
+            }
+        }
+
+        PreviewContent previewContent = new PreviewContent(project,
+            json.get("sequenceNumber").getAsLong(),
             isNotNull(json, "resultType") ? json.get("resultType").getAsString() : null,
             isNotNull(json, "fileName") ? json.get("fileName").getAsString() : null,
             json.get("repoUrl").getAsString(),
@@ -99,15 +139,82 @@ public class PreviewContent {
             isNotNull(json, "lineNumber") ? json.get("lineNumber").getAsInt() : -1,
             absoluteOffsetAndLengths,
             isNotNull(json, "relativeUrl") ? json.get("relativeUrl").getAsString() : null);
+        previewContent.decodedContent = prefetchedContent != null ? prefetchedContent : uploadedContent;
+        return previewContent;
+    }
+
+    /**
+     * Creates the preview for a result of the native search UI, which has the decoded content and doesn't go through
+     * the bridge.
+     *
+     * @param lineRelativeOffsetAndLengths [line, column, length] triples
+     */
+    @NotNull
+    public static PreviewContent fromSearchResult(@NotNull Project project,
+                                                  long sequenceNumber,
+                                                  @NotNull String resultType,
+                                                  @Nullable String fileName,
+                                                  @NotNull String repoUrl,
+                                                  @Nullable String commit,
+                                                  @Nullable String path,
+                                                  @Nullable String decodedContent,
+                                                  @Nullable String symbolName,
+                                                  @Nullable String symbolContainerName,
+                                                  @Nullable String commitMessagePreview,
+                                                  int lineNumber,
+                                                  @NotNull int[][] lineRelativeOffsetAndLengths,
+                                                  @Nullable String relativeUrl) {
+        PreviewContent previewContent = new PreviewContent(project, sequenceNumber, resultType, fileName, repoUrl, commit, path,
+            null, symbolName, symbolContainerName, commitMessagePreview, lineNumber,
+            decodedContent != null ? convertLineRelativeOffsetAndLengths(decodedContent, lineRelativeOffsetAndLengths) : new int[0][2],
+            relativeUrl);
+        previewContent.decodedContent = decodedContent;
+        return previewContent;
+    }
+
+    @NotNull
+    private static int[][] toIntArrays(@NotNull JsonArray array, int innerLength) {
+        int[][] result = new int[array.size()][innerLength];
+        for (int i = 0; i < result.length; i++) {
+            JsonArray element = array.get(i).getAsJsonArray();
+            for (int j = 0; j < innerLength; j++) {
+                result[i][j] = element.get(j).getAsInt();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts [line, column, length] triples to [absoluteOffset, length] pairs.
+     */
+    private static int[][] convertLineRelativeOffsetAndLengths(@NotNull String content, @NotNull int[][] lineRelativeOffsetAndLengths) {
+        int[][] absoluteOffsetAndLengths = new int[lineRelativeOffsetAndLengths.length][2];
+        int currentLine = 0;
+        int currentLineStart = 0;
+        for (int i = 0; i < absoluteOffsetAndLengths.length; i++) {
+            int[] element = lineRelativeOffsetAndLengths[i];
+            int line = element[0];
+            if (line < currentLine) {
+                currentLine = 0;
+                currentLineStart = 0;
+            }
+            while (currentLine < line && currentLineStart < content.length()) {
+                int nextLineBreak = content.indexOf('\n', currentLineStart);
+                currentLineStart = nextLineBreak != -1 ? nextLineBreak + 1 : content.length();
+                currentLine++;
+            }
+            absoluteOffsetAndLengths[i][0] = currentLineStart + element[1];
+            absoluteOffsetAndLengths[i][1] = element[2];
+        }
+        return absoluteOffsetAndLengths;
     }
 
     private static boolean isNotNull(@NotNull JsonObject json, String key) {
         return json.get(key) != null && !json.get(key).isJsonNull();
     }
 
-    @NotNull
-    public Date getReceivedDateTime() {
-        return receivedDateTime;
+    public long getSequenceNumber() {
+        return sequenceNumber;
     }
 
     @Nullable
@@ -137,7 +244,12 @@ public class PreviewContent {
 
     @Nullable
     public String getContent() {
-        return convertBase64ToString(content);
+        if (decodedContent == null) {
+            long startTime = System.nanoTime();
+            decodedContent = convertBase64ToString(content);
+            MetricsRegistry.getInstance().histogram("preview.decode").recordSince(startTime);
+        }
+        return decodedContent;
     }
 
     @Nullable
@@ -171,7 +283,7 @@ public class PreviewContent {
     @NotNull
     public VirtualFile getVirtualFile() {
         if (virtualFile == null) {
-            virtualFile = new LightVirtualFile(fileName != null ? fileName : "", content != null ? Objects.requireNonNull(getContent()) : "");
+            virtualFile = new LightVirtualFile(fileName != null ? fileName : "", Objects.requireNonNullElse(getContent(), ""));
         }
         return virtualFile;
     }
@@ -193,6 +305,7 @@ public class PreviewContent {
     private boolean equals(@Nullable PreviewContent other) {
         return other != null && Objects.equals(fileName, other.fileName)
             && repoUrl.equals(other.repoUrl)
+            && Objects.equals(commit, other.commit)
             && Objects.equals(path, other.path)
             && Objects.equals(content, other.content)
             && Objects.equals(symbolName, other.symbolName)
@@ -203,6 +316,10 @@ public class PreviewContent {
             && Objects.equals(relativeUrl, other.relativeUrl);
     }
 
+    /**
+     * Files are opened asynchronously: finding the local checkout runs git, so it happens in the background, and the
+     * editor is opened on the EDT afterwards.
+     */
     public void openInEditorOrBrowser() throws URISyntaxException, IOException, NotSupportedException {
         if (opensInEditor()) {
             openInEditor();
@@ -217,13 +334,44 @@ public class PreviewContent {
 
     private void openInEditor() {
         assert fileName != null;
-        // Open file in editor
-        virtualFile = getVirtualFile();
-        OpenFileDescriptor openFileDescriptor = new OpenFileDescriptor(project, virtualFile, 0);
+        if (commit == null || path == null) {
+            ApplicationManager.getApplication().invokeLater(() -> openRemoteFile(getVirtualFile()), project.getDisposed());
+            return;
+        }
+        // Prefer the real file if the repo is checked out, so that navigation and inspections work
+        BackgroundExecutor.getInstance().execute("find local file", () -> {
+            VirtualFile localFile = LocalCheckoutResolver.getInstance(project).findLocalFile(repoUrl, commit, path);
+            if (localFile != null) {
+                ApplicationManager.getApplication().invokeLater(() -> openLocalFile(localFile), project.getDisposed());
+                return;
+            }
+            // Open the file from Sourcegraph. Opening the same file again reuses its editor.
+            SourcegraphVirtualFile remoteFile = SourcegraphFileSystem.getInstance().findOrCreateFile(project, repoUrl, commit, path, false);
+            String fileContent = getContent();
+            if (fileContent != null) {
+                remoteFile.setContentIfNotLoaded(fileContent);
+            } else {
+                remoteFile.preloadContent();
+            }
+            ApplicationManager.getApplication().invokeLater(() -> openRemoteFile(remoteFile), project.getDisposed());
+        });
+    }
+
+    private void openLocalFile(@NotNull VirtualFile localFile) {
+        OpenFileDescriptor openFileDescriptor = absoluteOffsetAndLengths.length > 0
+            ? new OpenFileDescriptor(project, localFile, absoluteOffsetAndLengths[0][0])
+            : new OpenFileDescriptor(project, localFile, Math.max(lineNumber, 0), 0);
+        FileEditorManager.getInstance(project).openTextEditor(openFileDescriptor, true);
+    }
+
+    private void openRemoteFile(@NotNull VirtualFile fileToOpen) {
+        OpenFileDescriptor openFileDescriptor = absoluteOffsetAndLengths.length > 0
+            ? new OpenFileDescriptor(project, fileToOpen, absoluteOffsetAndLengths[0][0])
+            : new OpenFileDescriptor(project, fileToOpen, 0);
         FileEditorManager.getInstance(project).openTextEditor(openFileDescriptor, true);
 
         // Suppress code issues
-        PsiFile file = PsiManager.getInstance(project).findFile(virtualFile);
+        PsiFile file = PsiManager.getInstance(project).findFile(fileToOpen);
         if (file != null) {
             DaemonCodeAnalyzer.getInstance(project).setHighlightingEnabled(file, false);
         }
@@ -5,6 +5,7 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.ActionGroup;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.*;
 import com.intellij.openapi.editor.colors.EditorColors;
@@ -14,6 +15,9 @@ import com.intellij.openapi.project.DumbAwareAction;
 import com.intellij.openapi.project.Project;
 import com.intellij.ui.components.JBPanelWithEmptyText;
 import com.sourcegraph.Icons;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import com.sourcegraph.metrics.MetricsRegistry;
+import com.sourcegraph.metrics.Tracer;
 import com.sourcegraph.website.Copy;
 import com.sourcegraph.website.FileAction;
 import com.sourcegraph.website.OpenFile;
@@ -46,6 +50,14 @@ public class PreviewPanel extends JBPanelWithEmptyText implements Disposable {
     }
 
     public void setContent(@Nullable PreviewContent previewContent) {
+        long startTime = System.nanoTime();
+        try (Tracer.Span ignored = Tracer.getInstance().startSpan("preview.render")) {
+            setContentWithoutMetrics(previewContent);
+        }
+        MetricsRegistry.getInstance().histogram("preview.render").recordSince(startTime);
+    }
+
+    private void setContentWithoutMetrics(@Nullable PreviewContent previewContent) {
         if (previewContent == null) {
             setLoading(false);
             clearContent();
@@ -77,7 +89,11 @@ public class PreviewPanel extends JBPanelWithEmptyText implements Disposable {
         Document document = editorFactory.createDocument(fileContent);
         document.setReadOnly(true);
 
-        editor = editorFactory.createEditor(document, project, previewContent.getVirtualFile(), true, EditorKind.MAIN_EDITOR);
+        // Lexing huge files is slow, and unknown file types wouldn't get colors anyway, so these get the server's highlighting
+        boolean useServerSideHighlighting = ServerSideHighlighter.shouldUse(previewContent.getFileName(), fileContent);
+        editor = useServerSideHighlighting
+            ? editorFactory.createViewer(document, project, EditorKind.MAIN_EDITOR)
+            : editorFactory.createEditor(document, project, previewContent.getVirtualFile(), true, EditorKind.MAIN_EDITOR);
 
         EditorSettings settings = editor.getSettings();
         settings.setLineMarkerAreaShown(true);
@@ -94,6 +110,37 @@ public class PreviewPanel extends JBPanelWithEmptyText implements Disposable {
         validate();
 
         addAndScrollToHighlights(editor, previewContent.getAbsoluteOffsetAndLengths());
+
+        if (useServerSideHighlighting) {
+            loadServerSideHighlighting(editor, previewContent, fileContent);
+        }
+    }
+
+    private void loadServerSideHighlighting(@NotNull Editor editor, @NotNull PreviewContent previewContent, @NotNull String fileContent) {
+        String repoUrl = previewContent.getRepoUrl();
+        String commit = previewContent.getCommit();
+        String path = previewContent.getPath();
+        if (commit == null || path == null) {
+            return;
+        }
+        BackgroundExecutor.getInstance().submit("preview highlighting", this, () -> {
+            int[][] ranges;
+            try {
+                ranges = ServerSideHighlighter.fetchHighlights(project, repoUrl, commit, path, fileContent);
+            } catch (Exception e) {
+                Logger.getInstance(PreviewPanel.class).debug("Failed to load highlighting for " + path, e);
+                return;
+            }
+            if (ranges == null || ranges.length == 0) {
+                return;
+            }
+            ApplicationManager.getApplication().invokeLater(() -> {
+                // The user may have moved on to another result in the meantime
+                if (this.editor == editor && !editor.isDisposed()) {
+                    ServerSideHighlighter.apply(editor, ranges);
+                }
+            });
+        });
     }
 
     public void setLoading(boolean isLoading) {
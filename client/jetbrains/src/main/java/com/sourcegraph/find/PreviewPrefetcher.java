@@ -0,0 +1,241 @@
+package com.sourcegraph.find;
+
+import com.google.gson.JsonObject;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.sourcegraph.api.GraphQlClient;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import com.sourcegraph.config.ConfigUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Loads the content of the results next to the selected one in the background, so that arrowing through the result
+ * list can show the preview without waiting for the network.
+ * The webview tells us about the neighbouring results; the decoded contents are kept in a small LRU cache. At most
+ * {@link #MAX_CONCURRENT_LOADS} files are loaded at a time, so that prefetching doesn't crowd out other background work.
+ */
+public class PreviewPrefetcher implements Disposable {
+    private static final Logger logger = Logger.getInstance(PreviewPrefetcher.class);
+    private static final int MAX_CACHED_FILES = 50;
+    private static final int MAX_CONCURRENT_LOADS = 2;
+    private static final long MAX_CACHED_CHARACTERS = 8 * 1024 * 1024;
+
+    private final Project project;
+    private final Semaphore loadPermits = new Semaphore(MAX_CONCURRENT_LOADS);
+    private final Queue<FileKey> pendingFiles = new ConcurrentLinkedQueue<>();
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedCharacters = 0;
+    private final Set<String> inFlightKeys = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> wantedKeys = Collections.emptySet();
+
+    public PreviewPrefetcher(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    public static PreviewPrefetcher getInstance(@NotNull Project project) {
+        return project.getService(PreviewPrefetcher.class);
+    }
+
+    /**
+     * Replaces the set of wanted files. Files that are not cached yet are loaded in the order given.
+     * Queued loads for files that are no longer wanted are skipped.
+     */
+    public void prefetch(@NotNull List<FileKey> files) {
+        Set<String> keys = new HashSet<>();
+        for (FileKey file : files) {
+            keys.add(file.toString());
+        }
+        wantedKeys = keys;
+
+        for (FileKey file : files) {
+            String key = file.toString();
+            // Without a commit, we can't tell which version of the file the result is from
+            if (file.commit.isEmpty() || hasContent(file) || !inFlightKeys.add(key)) {
+                continue;
+            }
+            pendingFiles.add(file);
+        }
+        startPendingLoads();
+    }
+
+    private void startPendingLoads() {
+        while (!pendingFiles.isEmpty() && loadPermits.tryAcquire()) {
+            FileKey file = pendingFiles.poll();
+            if (file == null) {
+                loadPermits.release();
+                return;
+            }
+            BackgroundExecutor.getInstance().submit("prefetch preview", this, () -> {
+                try {
+                    prefetchContent(file);
+                } finally {
+                    loadPermits.release();
+                    startPendingLoads();
+                }
+            });
+        }
+    }
+
+    private void prefetchContent(@NotNull FileKey file) {
+        String key = file.toString();
+        try {
+            // Files from a local checkout don't need to be loaded from the server
+            if (wantedKeys.contains(key) && LocalPreviewSource.getInstance(project).loadContent(file) == null) {
+                RemoteContentCache contentCache = RemoteContentCache.getInstance();
+                String instanceUrl = ConfigUtil.getSourcegraphUrl(project);
+                String content = contentCache.getContent(instanceUrl, file.repoUrl, file.commit, file.path);
+                if (content == null) {
+                    content = fetchContent(file);
+                    if (content != null) {
+                        contentCache.putContentAsync(instanceUrl, file.repoUrl, file.commit, file.path, content);
+                    }
+                }
+                if (content != null) {
+                    putContent(key, content);
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("Failed to prefetch " + key, e);
+        } finally {
+            inFlightKeys.remove(key);
+        }
+    }
+
+    public boolean hasContent(@NotNull FileKey file) {
+        synchronized (cache) {
+            return cache.containsKey(file.toString());
+        }
+    }
+
+    /**
+     * @return The decoded file content with "\n" line endings, or null if it's not cached.
+     */
+    @Nullable
+    public String getContent(@NotNull FileKey file) {
+        synchronized (cache) {
+            return cache.get(file.toString());
+        }
+    }
+
+    /**
+     * Returns the content from the first source that has it: this cache, the disk cache, a local checkout, or the
+     * server. Blocks while loading, so don't call it on the EDT.
+     *
+     * @return The decoded file content with "\n" line endings, or null if the server doesn't have the file.
+     */
+    @Nullable
+    public String loadContent(@NotNull FileKey file) throws IOException {
+        String content = getContent(file);
+        if (content == null) {
+            content = RemoteContentCache.getInstance().getContent(ConfigUtil.getSourcegraphUrl(project), file.repoUrl, file.commit, file.path);
+        }
+        if (content == null) {
+            content = LocalPreviewSource.getInstance(project).loadContent(file);
+        }
+        if (content == null) {
+            content = fetchContent(file);
+            if (content != null) {
+                RemoteContentCache.getInstance().putContentAsync(ConfigUtil.getSourcegraphUrl(project), file.repoUrl, file.commit, file.path, content);
+            }
+        }
+        if (content != null) {
+            putContent(file.toString(), content);
+        }
+        return content;
+    }
+
+    private void putContent(@NotNull String key, @NotNull String content) {
+        synchronized (cache) {
+            String previousContent = cache.put(key, content);
+            if (previousContent != null) {
+                cachedCharacters -= previousContent.length();
+            }
+            cachedCharacters += content.length();
+
+            Iterator<Map.Entry<String, String>> iterator = cache.entrySet().iterator();
+            while (iterator.hasNext() && (cache.size() > MAX_CACHED_FILES || cachedCharacters > MAX_CACHED_CHARACTERS)) {
+                Map.Entry<String, String> eldest = iterator.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                cachedCharacters -= eldest.getValue().length();
+                iterator.remove();
+            }
+        }
+    }
+
+    @Nullable
+    private String fetchContent(@NotNull FileKey file) throws IOException {
+        String content = GraphQlClient.fetchBlobContent(ConfigUtil.getSourcegraphUrl(project), ConfigUtil.getAccessToken(project), file.repoUrl, file.commit, file.path);
+        // Same normalization as the webview does before sending content to the IDE
+        return content != null ? content.replace("\r\n", "\n") : null;
+    }
+
+    @Override
+    public void dispose() {
+        // Running loads are cancelled with this as their parent
+        pendingFiles.clear();
+        synchronized (cache) {
+            cache.clear();
+            cachedCharacters = 0;
+        }
+    }
+
+    public static class FileKey {
+        private final String repoUrl;
+        private final String commit;
+        private final String path;
+
+        public FileKey(@NotNull String repoUrl, @Nullable String commit, @NotNull String path) {
+            this.repoUrl = repoUrl;
+            this.commit = commit != null ? commit : "";
+            this.path = path;
+        }
+
+        @NotNull
+        public static FileKey fromJson(@NotNull JsonObject json) {
+            return new FileKey(json.get("repoUrl").getAsString(),
+                json.get("commit") != null && !json.get("commit").isJsonNull() ? json.get("commit").getAsString() : null,
+                json.get("path").getAsString());
+        }
+
+        @NotNull
+        public String getRepoUrl() {
+            return repoUrl;
+        }
+
+        /**
+         * @return The commit, or an empty string if the webview didn't know it.
+         */
+        @NotNull
+        public String getCommit() {
+            return commit;
+        }
+
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public String toString() {
+            return repoUrl + "@" + commit + ":" + path;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.sourcegraph.find;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.sourcegraph.concurrent.SerialExecutor;
+import com.sourcegraph.metrics.MetricsRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the contents of remote files at full commit hashes on disk, in the IDE's system directory, so that previews and
+ * opened files don't load them from the server again, even after a restart. Contents at a commit never change.
+ * <p>
+ * Contents are stored once per SHA-256 hash under {@code blobs/}, and {@code index.tsv} maps instance, repo, commit and
+ * path to a hash, see {@link ContentCacheIndex}. The least recently used entries are evicted when the total size
+ * exceeds {@link #MAX_TOTAL_BYTES}. Writing happens in the background, one change at a time.
+ */
+public class RemoteContentCache implements Disposable {
+    private static final Logger logger = Logger.getInstance(RemoteContentCache.class);
+    private static final long MAX_TOTAL_BYTES = 256 * 1024 * 1024;
+    private static final Pattern COMMIT_HASH_PATTERN = Pattern.compile("^[0-9a-f]{40}$");
+
+    private final Path directory;
+    private final Path indexPath;
+    private final SerialExecutor writer;
+    // Guarded by this
+    private final ContentCacheIndex index = new ContentCacheIndex(MAX_TOTAL_BYTES);
+    private boolean isIndexSaveScheduled = false;
+
+    public RemoteContentCache() {
+        this.directory = Paths.get(PathManager.getSystemPath(), "sourcegraph", "content-cache");
+        this.indexPath = directory.resolve("index.tsv");
+        this.writer = new SerialExecutor("write content cache");
+        loadIndex();
+    }
+
+    @NotNull
+    public static RemoteContentCache getInstance() {
+        return ApplicationManager.getApplication().getService(RemoteContentCache.class);
+    }
+
+    public static boolean isCommitPinned(@Nullable String commit) {
+        return commit != null && COMMIT_HASH_PATTERN.matcher(commit).matches();
+    }
+
+    /**
+     * @param instanceUrl The Sourcegraph URL that the file is from, see {@link com.sourcegraph.config.ConfigUtil#getSourcegraphUrl}.
+     */
+    public synchronized boolean hasContent(@NotNull String instanceUrl, @NotNull String repoName, @Nullable String commit, @NotNull String path) {
+        return isCommitPinned(commit) && index.contains(buildKey(instanceUrl, repoName, commit, path));
+    }
+
+    /**
+     * @return The content with "\n" line endings, or null if it's not cached.
+     */
+    @Nullable
+    public String getContent(@NotNull String instanceUrl, @NotNull String repoName, @Nullable String commit, @NotNull String path) {
+        if (!isCommitPinned(commit)) {
+            return null;
+        }
+        String key = buildKey(instanceUrl, repoName, commit, path);
+        ContentCacheIndex.Entry entry;
+        synchronized (this) {
+            entry = index.get(key);
+        }
+        if (entry == null) {
+            MetricsRegistry.getInstance().counter("contentCache.misses").increment();
+            return null;
+        }
+        try {
+            String content = Files.readString(getBlobPath(entry.getHash()), StandardCharsets.UTF_8);
+            MetricsRegistry.getInstance().counter("contentCache.hits").increment();
+            return content;
+        } catch (NoSuchFileException e) {
+            // Someone cleaned up the system directory
+            remove(key);
+            return null;
+        } catch (IOException e) {
+            logger.warn("Could not read cached content of " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the content in the background. Does nothing if the commit is not a full hash or the content is already
+     * cached.
+     */
+    public void putContentAsync(@NotNull String instanceUrl, @NotNull String repoName, @Nullable String commit, @NotNull String path, @NotNull String content) {
+        if (!isCommitPinned(commit) || hasContent(instanceUrl, repoName, commit, path)) {
+            return;
+        }
+        String key = buildKey(instanceUrl, repoName, commit, path);
+        writer.execute(() -> {
+            try {
+                putContent(key, content.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                logger.warn("Could not cache content of " + path, e);
+            }
+        });
+    }
+
+    private void putContent(@NotNull String key, @NotNull byte[] bytes) throws IOException {
+        if (bytes.length > MAX_TOTAL_BYTES / 4) {
+            return;
+        }
+        String hash = sha256(bytes);
+        Path blobPath = getBlobPath(hash);
+        if (!Files.exists(blobPath)) {
+            Files.createDirectories(blobPath.getParent());
+            Path temporaryPath = blobPath.resolveSibling(hash + ".tmp");
+            Files.write(temporaryPath, bytes);
+            Files.move(temporaryPath, blobPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        synchronized (this) {
+            if (index.contains(key)) {
+                return;
+            }
+            deleteBlobsAsync(index.put(key, hash, bytes.length));
+            scheduleIndexSave();
+        }
+    }
+
+    private synchronized void remove(@NotNull String key) {
+        String releasedHash = index.remove(key);
+        if (releasedHash != null) {
+            deleteBlobsAsync(List.of(releasedHash));
+        }
+        scheduleIndexSave();
+    }
+
+    private void deleteBlobsAsync(@NotNull List<String> hashes) {
+        for (String hash : hashes) {
+            writer.execute(() -> {
+                try {
+                    synchronized (this) {
+                        // Another entry with the same content may have been added in the meantime
+                        if (index.isReferenced(hash)) {
+                            return;
+                        }
+                    }
+                    Files.deleteIfExists(getBlobPath(hash));
+                } catch (IOException e) {
+                    logger.debug("Could not delete cached content " + hash, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Saves the index once the writer is done with its current work, so that a burst of puts writes it only once.
+     */
+    private void scheduleIndexSave() {
+        if (isIndexSaveScheduled) {
+            return;
+        }
+        isIndexSaveScheduled = true;
+        writer.execute(this::saveIndex);
+    }
+
+    private void saveIndex() {
+        String indexTsv;
+        synchronized (this) {
+            isIndexSaveScheduled = false;
+            indexTsv = index.toTsv();
+        }
+        try {
+            Files.createDirectories(directory);
+            Path temporaryPath = indexPath.resolveSibling("index.tsv.tmp");
+            try (BufferedWriter output = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                output.write(indexTsv);
+            }
+            Files.move(temporaryPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the content cache index", e);
+        }
+    }
+
+    private synchronized void loadIndex() {
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        try {
+            deleteBlobsAsync(index.load(Files.readAllLines(indexPath, StandardCharsets.UTF_8)));
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Could not load the content cache index, starting with an empty cache", e);
+            index.clear();
+        }
+    }
+
+    @NotNull
+    private Path getBlobPath(@NotNull String hash) {
+        return directory.resolve("blobs").resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    @NotNull
+    private static String buildKey(@NotNull String instanceUrl, @NotNull String repoName, @NotNull String commit, @NotNull String path) {
+        // Tabs and line breaks would break the index, and are very unlikely in paths
+        String instancePrefix = instanceUrl.endsWith("/") ? instanceUrl : instanceUrl + "/";
+        return (instancePrefix + repoName + "@" + commit + ":" + path).replace('\t', ' ').replace('\n', ' ');
+    }
+
+    @NotNull
+    private static String sha256(@NotNull byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        try {
+            writer.awaitIdle(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package com.sourcegraph.find;
 
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
 public class Search {
     String query;
     boolean caseSensitive;
@@ -13,6 +19,15 @@ public class Search {
         this.selectedSearchContextSpec = selectedSearchContextSpec;
     }
 
+    @NotNull
+    public static Search fromJson(@NotNull JsonObject json) {
+        return new Search(
+            json.get("query").getAsString(),
+            json.get("caseSensitive").getAsBoolean(),
+            json.get("patternType").getAsString(),
+            json.get("selectedSearchContextSpec").getAsString());
+    }
+
     public String getQuery() {
         return query;
     }
@@ -28,4 +43,31 @@ public class Search {
     public String getSelectedSearchContextSpec() {
         return selectedSearchContextSpec;
     }
+
+    @NotNull
+    public JsonObject toJson() {
+        JsonObject searchAsJson = new JsonObject();
+        searchAsJson.addProperty("query", query);
+        searchAsJson.addProperty("caseSensitive", caseSensitive);
+        searchAsJson.addProperty("patternType", patternType);
+        searchAsJson.addProperty("selectedSearchContextSpec", selectedSearchContextSpec);
+        return searchAsJson;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (!(obj instanceof Search)) {
+            return false;
+        }
+        Search other = (Search) obj;
+        return Objects.equals(query, other.query)
+            && caseSensitive == other.caseSensitive
+            && Objects.equals(patternType, other.patternType)
+            && Objects.equals(selectedSearchContextSpec, other.selectedSearchContextSpec);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(query, caseSensitive, patternType, selectedSearchContextSpec);
+    }
 }
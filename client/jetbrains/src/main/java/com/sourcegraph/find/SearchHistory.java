@@ -0,0 +1,136 @@
+package com.sourcegraph.find;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The project's search history, used for completing queries.
+ * It's kept in a TSV file in the IDE's system directory rather than in the project's XML state, which only has the
+ * last search: "useCount\tlastUsedMillis\tquery" per line, with tabs, newlines and backslashes in the query escaped.
+ */
+public class SearchHistory {
+    private static final Logger logger = Logger.getInstance(SearchHistory.class);
+    private static final int MAX_ENTRIES = 500;
+    private static final String FORMAT_HEADER = "sourcegraph-search-history-v1";
+
+    private final Path historyPath;
+    private final SearchHistoryIndex index = new SearchHistoryIndex(MAX_ENTRIES);
+    private final AtomicBoolean isSaveScheduled = new AtomicBoolean();
+    private final Object fileLock = new Object();
+
+    public SearchHistory(@NotNull Project project) {
+        this.historyPath = Paths.get(PathManager.getSystemPath(), "sourcegraph", "search-history", project.getLocationHash() + ".tsv");
+        load();
+    }
+
+    @NotNull
+    public static SearchHistory getInstance(@NotNull Project project) {
+        return project.getService(SearchHistory.class);
+    }
+
+    public void record(@NotNull String query) {
+        if (query.isBlank()) {
+            return;
+        }
+        index.record(query, System.currentTimeMillis());
+        scheduleSave();
+    }
+
+    public void remove(@NotNull String query) {
+        if (index.remove(query)) {
+            scheduleSave();
+        }
+    }
+
+    /**
+     * @return Up to `limit` earlier queries that start with the prefix, ignoring case, the best first.
+     */
+    @NotNull
+    public List<SearchHistoryIndex.Entry> complete(@NotNull String prefix, int limit) {
+        return index.complete(prefix, limit, System.currentTimeMillis());
+    }
+
+    private void scheduleSave() {
+        if (isSaveScheduled.compareAndSet(false, true)) {
+            BackgroundExecutor.getInstance().execute("save search history", this::save);
+        }
+    }
+
+    private void save() {
+        isSaveScheduled.set(false);
+        StringBuilder history = new StringBuilder(FORMAT_HEADER).append('\n');
+        for (SearchHistoryIndex.Entry entry : index.getEntries()) {
+            history.append(entry.getUseCount()).append('\t').append(entry.getLastUsedMillis()).append('\t')
+                .append(escape(entry.getQuery())).append('\n');
+        }
+        synchronized (fileLock) {
+            try {
+                Files.createDirectories(historyPath.getParent());
+                Path temporaryPath = historyPath.resolveSibling(historyPath.getFileName() + ".tmp");
+                try (BufferedWriter output = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    output.write(history.toString());
+                }
+                Files.move(temporaryPath, historyPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("Could not save the search history", e);
+            }
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(historyPath)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (BufferedReader input = Files.newBufferedReader(historyPath, StandardCharsets.UTF_8)) {
+            if (!FORMAT_HEADER.equals(input.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = input.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    index.put(new SearchHistoryIndex.Entry(unescape(fields[2]), Integer.parseInt(fields[0]), Long.parseLong(fields[1])), now);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Could not load the search history", e);
+        }
+    }
+
+    @NotNull
+    static String escape(@NotNull String query) {
+        return query.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    @NotNull
+    static String unescape(@NotNull String escapedQuery) {
+        StringBuilder query = new StringBuilder(escapedQuery.length());
+        for (int i = 0; i < escapedQuery.length(); i++) {
+            char c = escapedQuery.charAt(i);
+            if (c == '\\' && i + 1 < escapedQuery.length()) {
+                char escaped = escapedQuery.charAt(++i);
+                query.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped);
+            } else {
+                query.append(c);
+            }
+        }
+        return query.toString();
+    }
+}
@@ -0,0 +1,165 @@
+package com.sourcegraph.find;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The queries the user searched for, with how often and how recently they were used.
+ * Completions come from an array of the queries sorted by their lowercase form, so a prefix is a binary search away.
+ * The array is rebuilt on the first lookup after a change, which is rare compared to lookups while typing.
+ * <p>
+ * Free of platform dependencies so that it can be unit tested; {@link SearchHistory} takes care of persisting it.
+ */
+public class SearchHistoryIndex {
+    // A use from a week ago counts half as much as one from now
+    private static final double HALF_LIFE_MILLIS = 7 * 24 * 60 * 60 * 1000.0;
+
+    private final int maxEntries;
+    private final Map<String, Entry> entriesByQuery = new HashMap<>();
+    private Entry[] sortedEntries = null;
+    private String[] sortedKeys = null;
+
+    public SearchHistoryIndex(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public synchronized void record(@NotNull String query, long nowMillis) {
+        Entry entry = entriesByQuery.get(query);
+        if (entry != null) {
+            entry.useCount++;
+            entry.lastUsedMillis = Math.max(entry.lastUsedMillis, nowMillis);
+            return;
+        }
+        put(new Entry(query, 1, nowMillis), nowMillis);
+    }
+
+    /**
+     * Adds an entry as it was persisted. Replaces an existing entry for the same query.
+     * If there are too many entries, the lowest scoring other ones are evicted, so the new entry is always kept.
+     */
+    public synchronized void put(@NotNull Entry entry, long nowMillis) {
+        entriesByQuery.put(entry.query, entry);
+        while (entriesByQuery.size() > maxEntries) {
+            Entry lowestScoringEntry = null;
+            for (Entry candidate : entriesByQuery.values()) {
+                if (candidate != entry && (lowestScoringEntry == null || compareByScore(candidate, lowestScoringEntry, nowMillis) > 0)) {
+                    lowestScoringEntry = candidate;
+                }
+            }
+            if (lowestScoringEntry == null) {
+                break;
+            }
+            entriesByQuery.remove(lowestScoringEntry.query);
+        }
+        sortedEntries = null;
+    }
+
+    public synchronized boolean remove(@NotNull String query) {
+        if (entriesByQuery.remove(query) == null) {
+            return false;
+        }
+        sortedEntries = null;
+        return true;
+    }
+
+    /**
+     * @return Copies of all entries, in no particular order.
+     */
+    @NotNull
+    public synchronized List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>(entriesByQuery.size());
+        for (Entry entry : entriesByQuery.values()) {
+            entries.add(new Entry(entry.query, entry.useCount, entry.lastUsedMillis));
+        }
+        return entries;
+    }
+
+    /**
+     * @return Up to `limit` queries that start with the prefix, ignoring case, with the best score first.
+     * The prefix itself is not included.
+     */
+    @NotNull
+    public synchronized List<Entry> complete(@NotNull String prefix, int limit, long nowMillis) {
+        if (sortedEntries == null) {
+            rebuildIndex();
+        }
+        String key = toKey(prefix);
+        int index = Arrays.binarySearch(sortedKeys, key);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        List<Entry> matches = new ArrayList<>();
+        for (; index < sortedKeys.length && sortedKeys[index].startsWith(key); index++) {
+            if (!sortedEntries[index].query.equals(prefix)) {
+                matches.add(sortedEntries[index]);
+            }
+        }
+        matches.sort((first, second) -> compareByScore(first, second, nowMillis));
+
+        List<Entry> completions = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < Math.min(limit, matches.size()); i++) {
+            Entry match = matches.get(i);
+            completions.add(new Entry(match.query, match.useCount, match.lastUsedMillis));
+        }
+        return completions;
+    }
+
+    private void rebuildIndex() {
+        Entry[] entries = entriesByQuery.values().toArray(new Entry[0]);
+        Arrays.sort(entries, Comparator.comparing(entry -> toKey(entry.query)));
+        String[] keys = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            keys[i] = toKey(entries[i].query);
+        }
+        sortedEntries = entries;
+        sortedKeys = keys;
+    }
+
+    @NotNull
+    private static String toKey(@NotNull String query) {
+        return query.toLowerCase(Locale.ROOT);
+    }
+
+    static double getScore(@NotNull Entry entry, long nowMillis) {
+        long ageMillis = Math.max(0, nowMillis - entry.lastUsedMillis);
+        return entry.useCount * Math.pow(0.5, ageMillis / HALF_LIFE_MILLIS);
+    }
+
+    // Higher scores first, then more recent uses first
+    private static int compareByScore(@NotNull Entry first, @NotNull Entry second, long nowMillis) {
+        int scoreComparison = Double.compare(getScore(second, nowMillis), getScore(first, nowMillis));
+        return scoreComparison != 0 ? scoreComparison : Long.compare(second.lastUsedMillis, first.lastUsedMillis);
+    }
+
+    public static class Entry {
+        private final String query;
+        private int useCount;
+        private long lastUsedMillis;
+
+        public Entry(@NotNull String query, int useCount, long lastUsedMillis) {
+            this.query = query;
+            this.useCount = useCount;
+            this.lastUsedMillis = lastUsedMillis;
+        }
+
+        @NotNull
+        public String getQuery() {
+            return query;
+        }
+
+        public int getUseCount() {
+            return useCount;
+        }
+
+        public long getLastUsedMillis() {
+            return lastUsedMillis;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.sourcegraph.find;
+
+import com.intellij.openapi.project.Project;
+import com.sourcegraph.metrics.MetricsRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of the last few searches of the project, so that the webview can show them right away when it
+ * starts over (e.g. after its browser was freed) while it runs the search again in the background.
+ * Results are kept as the JSON the webview sent, since that's also what it needs back.
+ */
+public class SearchResultCache {
+    private static final int MAX_CACHED_SEARCHES = 5;
+    private static final long MAX_CACHED_CHARACTERS = 16 * 1024 * 1024;
+    private static final long TTL_MILLIS = 10 * 60 * 1000;
+
+    private final LinkedHashMap<Search, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedCharacters = 0;
+
+    @NotNull
+    public static SearchResultCache getInstance(@NotNull Project project) {
+        return project.getService(SearchResultCache.class);
+    }
+
+    public synchronized void put(@NotNull Search search, @NotNull String resultsJson) {
+        remove(search);
+        if (resultsJson.length() > MAX_CACHED_CHARACTERS) {
+            return;
+        }
+        entries.put(search, new Entry(resultsJson, System.currentTimeMillis()));
+        cachedCharacters += resultsJson.length();
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && (entries.size() > MAX_CACHED_SEARCHES || cachedCharacters > MAX_CACHED_CHARACTERS)) {
+            cachedCharacters -= iterator.next().resultsJson.length();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return The results as sent by the webview, or null if they're not cached or older than the TTL.
+     */
+    @Nullable
+    public synchronized String get(@NotNull Search search) {
+        Entry entry = entries.get(search);
+        if (entry != null && System.currentTimeMillis() - entry.storedAt > TTL_MILLIS) {
+            remove(search);
+            entry = null;
+        }
+        MetricsRegistry.getInstance().counter(entry != null ? "searchResultCache.hits" : "searchResultCache.misses").increment();
+        return entry != null ? entry.resultsJson : null;
+    }
+
+    private void remove(@NotNull Search search) {
+        Entry removedEntry = entries.remove(search);
+        if (removedEntry != null) {
+            cachedCharacters -= removedEntry.resultsJson.length();
+        }
+    }
+
+    private static class Entry {
+        private final String resultsJson;
+        private final long storedAt;
+
+        private Entry(@NotNull String resultsJson, long storedAt) {
+            this.resultsJson = resultsJson;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.sourcegraph.find;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sourcegraph.browser.SourcegraphUrlParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One selectable row of the native search UI: a matched line, a file, a symbol, a repo or a commit.
+ * The rows of a match share its strings, and long lines are cut, so that large result sets stay small.
+ */
+class SearchResultRow {
+    private static final int MAX_TEXT_LENGTH = 300;
+    private static final int[][] NO_RANGES = new int[0][];
+
+    final String resultType;
+    final String repoName;
+    @Nullable
+    final String commit;
+    @Nullable
+    final String path;
+    // 0-based, -1 if the row is not about a line
+    final int lineNumber;
+    final String text;
+    // [line, column, length] triples for the preview
+    final int[][] lineRelativeOffsetAndLengths;
+    @Nullable
+    final String symbolName;
+    @Nullable
+    final String symbolContainerName;
+    @Nullable
+    final String relativeUrl;
+
+    private SearchResultRow(@NotNull String resultType, @NotNull String repoName, @Nullable String commit, @Nullable String path,
+                            int lineNumber, @NotNull String text, @NotNull int[][] lineRelativeOffsetAndLengths,
+                            @Nullable String symbolName, @Nullable String symbolContainerName, @Nullable String relativeUrl) {
+        this.resultType = resultType;
+        this.repoName = repoName;
+        this.commit = commit;
+        this.path = path;
+        this.lineNumber = lineNumber;
+        this.text = text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+        this.lineRelativeOffsetAndLengths = lineRelativeOffsetAndLengths;
+        this.symbolName = symbolName;
+        this.symbolContainerName = symbolContainerName;
+        this.relativeUrl = relativeUrl;
+    }
+
+    /**
+     * Only used to size the list's rows.
+     */
+    @NotNull
+    static SearchResultRow createPrototype() {
+        return new SearchResultRow("file", "github.com/sourcegraph/sourcegraph", null, "client/jetbrains/README.md", 0,
+            "prototype", NO_RANGES, null, null, null);
+    }
+
+    /**
+     * @param match A match from the "matches" event of the streaming search API.
+     */
+    @NotNull
+    static List<SearchResultRow> fromMatch(@NotNull JsonObject match) {
+        List<SearchResultRow> rows = new ArrayList<>();
+        String type = getString(match, "type");
+        String repoName = getString(match, "repository");
+        if (type == null || repoName == null) {
+            return rows;
+        }
+        String commit = getString(match, "commit");
+        String path = getString(match, "path");
+        switch (type) {
+            case "content":
+                if (path == null || !match.has("lineMatches")) {
+                    break;
+                }
+                for (JsonElement lineMatchElement : match.getAsJsonArray("lineMatches")) {
+                    JsonObject lineMatch = lineMatchElement.getAsJsonObject();
+                    int lineNumber = lineMatch.get("lineNumber").getAsInt();
+                    List<int[]> ranges = new ArrayList<>();
+                    for (JsonElement offsetAndLength : lineMatch.getAsJsonArray("offsetAndLengths")) {
+                        ranges.add(new int[]{lineNumber, offsetAndLength.getAsJsonArray().get(0).getAsInt(),
+                            offsetAndLength.getAsJsonArray().get(1).getAsInt()});
+                    }
+                    rows.add(new SearchResultRow("file", repoName, commit, path, lineNumber,
+                        lineMatch.get("line").getAsString(), ranges.toArray(NO_RANGES), null, null, null));
+                }
+                break;
+            case "path":
+                if (path != null) {
+                    rows.add(new SearchResultRow("path", repoName, commit, path, -1, "", NO_RANGES, null, null, null));
+                }
+                break;
+            case "symbol":
+                if (path == null || !match.has("symbols")) {
+                    break;
+                }
+                for (JsonElement symbolElement : match.getAsJsonArray("symbols")) {
+                    JsonObject symbol = symbolElement.getAsJsonObject();
+                    String url = getString(symbol, "url");
+                    SourcegraphUrlParser.BlobLocation location = url != null ? SourcegraphUrlParser.parseBlobUrl(url) : null;
+                    int lineNumber = location != null ? location.line : -1;
+                    int[][] ranges = location != null && location.line == location.endLine && location.endColumn > location.column
+                        ? new int[][]{{location.line, location.column, location.endColumn - location.column}}
+                        : NO_RANGES;
+                    String name = getString(symbol, "name");
+                    rows.add(new SearchResultRow("symbol", repoName, commit, path, lineNumber, name != null ? name : "",
+                        ranges, name, getString(symbol, "containerName"), null));
+                }
+                break;
+            case "repo":
+                rows.add(new SearchResultRow("repo", repoName, null, null, -1, "", NO_RANGES, null, null, "/" + repoName));
+                break;
+            case "commit":
+                String message = getString(match, "message");
+                String firstLine = message != null ? message.split("\n", 2)[0] : "";
+                String url = getString(match, "url");
+                rows.add(new SearchResultRow("commit", repoName, null, null, -1, firstLine, NO_RANGES, null, null,
+                    url == null || url.startsWith("/") ? url : "/" + url));
+                break;
+            default:
+                break;
+        }
+        return rows;
+    }
+
+    @Nullable
+    String getFileName() {
+        return path != null ? path.substring(path.lastIndexOf('/') + 1) : null;
+    }
+
+    @Nullable
+    private static String getString(@NotNull JsonObject object, @NotNull String key) {
+        JsonElement element = object.get(key);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+}
@@ -0,0 +1,234 @@
+package com.sourcegraph.find;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.editor.DefaultLanguageHighlighterColors;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.fileTypes.PlainTextFileType;
+import com.intellij.openapi.fileTypes.UnknownFileType;
+import com.intellij.openapi.project.Project;
+import com.sourcegraph.api.GraphQlClient;
+import com.sourcegraph.config.ConfigUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Syntax highlighting for previews that doesn't run an IntelliJ lexer: the ranges come from Sourcegraph's highlighting
+ * API (SCIP occurrences with a syntax kind) and are added to the editor's markup model in one go.
+ * Used for huge files, where lexing the whole file is slow, and for file types the IDE doesn't know.
+ */
+class ServerSideHighlighter {
+    static final int MAX_LEXED_CHARACTERS = 1024 * 1024;
+    private static final int MAX_HIGHLIGHTERS = 200_000;
+    private static final String HIGHLIGHT_QUERY = "" +
+        "query HighlightedBlob($repoName: String!, $commitID: String!, $filePath: String!) {" +
+        "    repository(name: $repoName) {" +
+        "        commit(rev: $commitID) {" +
+        "            file(path: $filePath) {" +
+        "                highlight(disableTimeout: false, format: JSON_SCIP) {" +
+        "                    aborted" +
+        "                    lsif" +
+        "                }" +
+        "            }" +
+        "        }" +
+        "    }" +
+        "}";
+
+    // Indexed by the numeric value of SCIP's SyntaxKind enum
+    private static final String[] SYNTAX_KIND_NAMES = {
+        "UnspecifiedSyntaxKind", "Comment", "PunctuationDelimiter", "PunctuationBracket", "Keyword",
+        "IdentifierOperator", "Identifier", "IdentifierBuiltin", "IdentifierNull", "IdentifierConstant",
+        "IdentifierMutableGlobal", "IdentifierParameter", "IdentifierLocal", "IdentifierShadowed",
+        "IdentifierNamespace", "IdentifierFunction", "IdentifierFunctionDefinition", "IdentifierMacro",
+        "IdentifierMacroDefinition", "IdentifierType", "IdentifierBuiltinType", "IdentifierAttribute", "RegexEscape",
+        "RegexRepeated", "RegexWildcard", "RegexDelimiter", "RegexJoin", "StringLiteral", "StringLiteralEscape",
+        "StringLiteralSpecial", "StringLiteralKey", "CharacterLiteral", "NumericLiteral", "BooleanLiteral", "Tag",
+        "TagAttribute", "TagDelimiter",
+    };
+    private static final TextAttributesKey[] ATTRIBUTES_BY_SYNTAX_KIND = new TextAttributesKey[SYNTAX_KIND_NAMES.length];
+
+    static {
+        TextAttributesKey[] keys = ATTRIBUTES_BY_SYNTAX_KIND;
+        keys[1] = DefaultLanguageHighlighterColors.LINE_COMMENT;
+        keys[2] = DefaultLanguageHighlighterColors.COMMA;
+        keys[3] = DefaultLanguageHighlighterColors.BRACES;
+        keys[4] = DefaultLanguageHighlighterColors.KEYWORD;
+        keys[5] = DefaultLanguageHighlighterColors.OPERATION_SIGN;
+        keys[7] = DefaultLanguageHighlighterColors.PREDEFINED_SYMBOL;
+        keys[8] = DefaultLanguageHighlighterColors.KEYWORD;
+        keys[9] = DefaultLanguageHighlighterColors.CONSTANT;
+        keys[10] = DefaultLanguageHighlighterColors.GLOBAL_VARIABLE;
+        keys[11] = DefaultLanguageHighlighterColors.PARAMETER;
+        keys[12] = DefaultLanguageHighlighterColors.LOCAL_VARIABLE;
+        keys[13] = DefaultLanguageHighlighterColors.REASSIGNED_LOCAL_VARIABLE;
+        keys[14] = DefaultLanguageHighlighterColors.IDENTIFIER;
+        keys[15] = DefaultLanguageHighlighterColors.FUNCTION_CALL;
+        keys[16] = DefaultLanguageHighlighterColors.FUNCTION_DECLARATION;
+        keys[17] = DefaultLanguageHighlighterColors.METADATA;
+        keys[18] = DefaultLanguageHighlighterColors.METADATA;
+        keys[19] = DefaultLanguageHighlighterColors.CLASS_REFERENCE;
+        keys[20] = DefaultLanguageHighlighterColors.KEYWORD;
+        keys[21] = DefaultLanguageHighlighterColors.METADATA;
+        for (int kind = 22; kind <= 26; kind++) {
+            keys[kind] = DefaultLanguageHighlighterColors.VALID_STRING_ESCAPE;
+        }
+        keys[27] = DefaultLanguageHighlighterColors.STRING;
+        keys[28] = DefaultLanguageHighlighterColors.VALID_STRING_ESCAPE;
+        keys[29] = DefaultLanguageHighlighterColors.VALID_STRING_ESCAPE;
+        keys[30] = DefaultLanguageHighlighterColors.INSTANCE_FIELD;
+        keys[31] = DefaultLanguageHighlighterColors.STRING;
+        keys[32] = DefaultLanguageHighlighterColors.NUMBER;
+        keys[33] = DefaultLanguageHighlighterColors.KEYWORD;
+        keys[34] = DefaultLanguageHighlighterColors.MARKUP_TAG;
+        keys[35] = DefaultLanguageHighlighterColors.MARKUP_ATTRIBUTE;
+        keys[36] = DefaultLanguageHighlighterColors.MARKUP_TAG;
+    }
+
+    private ServerSideHighlighter() {
+    }
+
+    /**
+     * @return Whether the preview should skip the IDE's lexer for this file.
+     */
+    static boolean shouldUse(@Nullable String fileName, @NotNull String content) {
+        if (content.length() > MAX_LEXED_CHARACTERS) {
+            return true;
+        }
+        FileType fileType = FileTypeManager.getInstance().getFileTypeByFileName(fileName != null ? fileName : "");
+        return fileType instanceof UnknownFileType || fileType instanceof PlainTextFileType;
+    }
+
+    /**
+     * Loads the highlighting from the server. Blocks, so don't call it on the EDT.
+     *
+     * @return Triples of start offset, end offset and syntax kind, sorted by start offset; or null if the server
+     * couldn't highlight the file, in which case the preview stays plain text.
+     */
+    @Nullable
+    static int[][] fetchHighlights(@NotNull Project project, @NotNull String repoName, @NotNull String commit,
+                                   @NotNull String path, @NotNull String content) throws IOException {
+        JsonObject variables = new JsonObject();
+        variables.addProperty("repoName", repoName);
+        variables.addProperty("commitID", commit);
+        variables.addProperty("filePath", path);
+
+        JsonObject data = GraphQlClient.queryGraphQLService(ConfigUtil.getSourcegraphUrl(project), ConfigUtil.getAccessToken(project), HIGHLIGHT_QUERY, variables);
+        JsonElement highlight = GraphQlClient.getPath(data, "repository", "commit", "file", "highlight");
+        if (highlight == null || !highlight.isJsonObject()) {
+            return null;
+        }
+        JsonElement aborted = highlight.getAsJsonObject().get("aborted");
+        JsonElement scipDocument = highlight.getAsJsonObject().get("lsif");
+        if ((aborted != null && aborted.isJsonPrimitive() && aborted.getAsBoolean()) || scipDocument == null || !scipDocument.isJsonPrimitive()) {
+            return null;
+        }
+        return toOffsetRanges(JsonParser.parseString(scipDocument.getAsString()), content);
+    }
+
+    /**
+     * Converts SCIP occurrences to offsets in the content. SCIP ranges are [startLine, startCharacter, endCharacter]
+     * or [startLine, startCharacter, endLine, endCharacter], with characters in UTF-16 code units like Java strings.
+     */
+    @Nullable
+    static int[][] toOffsetRanges(@NotNull JsonElement scipDocument, @NotNull String content) {
+        if (!scipDocument.isJsonObject() || !scipDocument.getAsJsonObject().has("occurrences")) {
+            return null;
+        }
+        JsonArray occurrences = scipDocument.getAsJsonObject().getAsJsonArray("occurrences");
+        int[] lineStartOffsets = getLineStartOffsets(content);
+
+        int[][] ranges = new int[Math.min(occurrences.size(), MAX_HIGHLIGHTERS)][];
+        int rangeCount = 0;
+        for (int i = 0; i < occurrences.size() && rangeCount < ranges.length; i++) {
+            JsonObject occurrence = occurrences.get(i).getAsJsonObject();
+            int syntaxKind = getSyntaxKind(occurrence.get("syntaxKind"));
+            JsonArray range = occurrence.getAsJsonArray("range");
+            if (syntaxKind <= 0 || ATTRIBUTES_BY_SYNTAX_KIND[syntaxKind] == null || range == null || range.size() < 3) {
+                continue;
+            }
+            int startLine = range.get(0).getAsInt();
+            int endLine = range.size() >= 4 ? range.get(2).getAsInt() : startLine;
+            if (startLine < 0 || endLine < startLine || endLine >= lineStartOffsets.length) {
+                continue;
+            }
+            int startOffset = lineStartOffsets[startLine] + range.get(1).getAsInt();
+            int endOffset = Math.min(lineStartOffsets[endLine] + range.get(range.size() - 1).getAsInt(), content.length());
+            if (startOffset < endOffset) {
+                ranges[rangeCount++] = new int[]{startOffset, endOffset, syntaxKind};
+            }
+        }
+        return Arrays.copyOf(ranges, rangeCount);
+    }
+
+    /**
+     * Adds all ranges to the editor's markup model. Must be called on the EDT.
+     */
+    static void apply(@NotNull Editor editor, @NotNull int[][] ranges) {
+        EditorColorsScheme scheme = editor.getColorsScheme();
+        // Resolve each kind's attributes once instead of once per range
+        TextAttributes[] attributesByKind = new TextAttributes[ATTRIBUTES_BY_SYNTAX_KIND.length];
+        for (int kind = 0; kind < attributesByKind.length; kind++) {
+            if (ATTRIBUTES_BY_SYNTAX_KIND[kind] != null) {
+                attributesByKind[kind] = scheme.getAttributes(ATTRIBUTES_BY_SYNTAX_KIND[kind]);
+            }
+        }
+
+        MarkupModel markupModel = editor.getMarkupModel();
+        int documentLength = editor.getDocument().getTextLength();
+        for (int[] range : ranges) {
+            TextAttributes attributes = attributesByKind[range[2]];
+            if (attributes != null && range[1] <= documentLength) {
+                markupModel.addRangeHighlighter(range[0], range[1], HighlighterLayer.SYNTAX, attributes, HighlighterTargetArea.EXACT_RANGE);
+            }
+        }
+    }
+
+    private static int getSyntaxKind(@Nullable JsonElement syntaxKind) {
+        if (syntaxKind == null || !syntaxKind.isJsonPrimitive()) {
+            return 0;
+        }
+        if (syntaxKind.getAsJsonPrimitive().isNumber()) {
+            int kind = syntaxKind.getAsInt();
+            return kind >= 0 && kind < SYNTAX_KIND_NAMES.length ? kind : 0;
+        }
+        // The protobuf JSON encoding uses enum names
+        String name = syntaxKind.getAsString();
+        for (int kind = 0; kind < SYNTAX_KIND_NAMES.length; kind++) {
+            if (SYNTAX_KIND_NAMES[kind].equals(name)) {
+                return kind;
+            }
+        }
+        return 0;
+    }
+
+    @NotNull
+    private static int[] getLineStartOffsets(@NotNull String content) {
+        int lineCount = 1;
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) == '\n') {
+                lineCount++;
+            }
+        }
+        int[] lineStartOffsets = new int[lineCount];
+        int line = 1;
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) == '\n') {
+                lineStartOffsets[line++] = i + 1;
+            }
+        }
+        return lineStartOffsets;
+    }
+}
@@ -0,0 +1,168 @@
+package com.sourcegraph.find;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable trigram index over numbered documents, used by {@link LocalTrigramIndex}.
+ * Trigrams are lowercased and hashed into 2^20 buckets. For each bucket, the ids of the documents that contain one of
+ * its trigrams are stored in ascending order. Collisions only add candidates, so callers must check the candidates
+ * against the actual text. The bucket offsets and the postings are kept in direct buffers, outside the Java heap.
+ * <p>
+ * Free of platform dependencies so that it can be unit tested.
+ */
+public class TrigramPostings {
+    private static final int BUCKET_BITS = 20;
+    private static final int BUCKET_COUNT = 1 << BUCKET_BITS;
+
+    // BUCKET_COUNT + 1 entries: the postings of bucket b are [offsets[b], offsets[b + 1])
+    private final IntBuffer offsets;
+    private final IntBuffer postings;
+
+    private TrigramPostings(@NotNull IntBuffer offsets, @NotNull IntBuffer postings) {
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    /**
+     * @return The sorted, distinct buckets of the lowercased trigrams of the text.
+     */
+    @NotNull
+    public static int[] getBuckets(@NotNull CharSequence text) {
+        if (text.length() < 3) {
+            return new int[0];
+        }
+        int[] buckets = new int[text.length() - 2];
+        char first = Character.toLowerCase(text.charAt(0));
+        char second = Character.toLowerCase(text.charAt(1));
+        for (int i = 2; i < text.length(); i++) {
+            char third = Character.toLowerCase(text.charAt(i));
+            long trigram = ((long) first << 32) | ((long) second << 16) | third;
+            buckets[i - 2] = (int) ((trigram * 0x9E3779B97F4A7C15L) >>> (64 - BUCKET_BITS));
+            first = second;
+            second = third;
+        }
+        Arrays.sort(buckets);
+        int distinctCount = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            if (i == 0 || buckets[i] != buckets[i - 1]) {
+                buckets[distinctCount++] = buckets[i];
+            }
+        }
+        return Arrays.copyOf(buckets, distinctCount);
+    }
+
+    /**
+     * @param bucketsByDocument The buckets of each document, from {@link #getBuckets}. The document ids are the indexes
+     *                          into this list. Null entries are skipped.
+     */
+    @NotNull
+    public static TrigramPostings build(@NotNull List<int[]> bucketsByDocument) {
+        int[] bucketOffsets = new int[BUCKET_COUNT + 1];
+        for (int[] buckets : bucketsByDocument) {
+            if (buckets != null) {
+                for (int bucket : buckets) {
+                    bucketOffsets[bucket + 1]++;
+                }
+            }
+        }
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            bucketOffsets[bucket + 1] += bucketOffsets[bucket];
+        }
+
+        IntBuffer postings = allocateDirect(bucketOffsets[BUCKET_COUNT]);
+        int[] nextPositions = Arrays.copyOf(bucketOffsets, BUCKET_COUNT);
+        // Documents are added in id order, so every bucket's postings end up sorted
+        for (int documentId = 0; documentId < bucketsByDocument.size(); documentId++) {
+            int[] buckets = bucketsByDocument.get(documentId);
+            if (buckets != null) {
+                for (int bucket : buckets) {
+                    postings.put(nextPositions[bucket]++, documentId);
+                }
+            }
+        }
+
+        IntBuffer offsets = allocateDirect(bucketOffsets.length);
+        offsets.put(bucketOffsets);
+        return new TrigramPostings(offsets, postings);
+    }
+
+    /**
+     * @param queryBuckets The buckets of the searched text, from {@link #getBuckets}. Must not be empty.
+     * @return The sorted ids of the documents that may contain the text.
+     */
+    @NotNull
+    public int[] findCandidates(@NotNull int[] queryBuckets) {
+        // Start with the shortest posting list, so that the candidates are few from the start
+        Integer[] bucketsByLength = new Integer[queryBuckets.length];
+        for (int i = 0; i < queryBuckets.length; i++) {
+            bucketsByLength[i] = queryBuckets[i];
+        }
+        Arrays.sort(bucketsByLength, (first, second) -> Integer.compare(getPostingCount(first), getPostingCount(second)));
+
+        int shortestBucket = bucketsByLength[0];
+        int[] candidates = new int[getPostingCount(shortestBucket)];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = postings.get(offsets.get(shortestBucket) + i);
+        }
+        int candidateCount = candidates.length;
+        for (int i = 1; i < bucketsByLength.length && candidateCount > 0; i++) {
+            int bucket = bucketsByLength[i];
+            int remainingCount = 0;
+            for (int j = 0; j < candidateCount; j++) {
+                if (containsPosting(bucket, candidates[j])) {
+                    candidates[remainingCount++] = candidates[j];
+                }
+            }
+            candidateCount = remainingCount;
+        }
+        return Arrays.copyOf(candidates, candidateCount);
+    }
+
+    /**
+     * Does the same check as {@link #findCandidates} for a single document that is not part of the postings.
+     */
+    public static boolean containsAll(@NotNull int[] documentBuckets, @NotNull int[] queryBuckets) {
+        for (int bucket : queryBuckets) {
+            if (Arrays.binarySearch(documentBuckets, bucket) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getSizeInBytes() {
+        return 4L * (offsets.capacity() + postings.capacity());
+    }
+
+    private int getPostingCount(int bucket) {
+        return offsets.get(bucket + 1) - offsets.get(bucket);
+    }
+
+    private boolean containsPosting(int bucket, int documentId) {
+        int low = offsets.get(bucket);
+        int high = offsets.get(bucket + 1) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int posting = postings.get(middle);
+            if (posting < documentId) {
+                low = middle + 1;
+            } else if (posting > documentId) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    private static IntBuffer allocateDirect(int intCount) {
+        return ByteBuffer.allocateDirect(intCount * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+}
@@ -0,0 +1,56 @@
+package com.sourcegraph.find;
+
+import com.intellij.openapi.application.ApplicationManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the file contents that the webview uploads as raw bytes before it sends the "preview" request that refers to
+ * them by handle. Each upload is taken once. Uploads that no request refers to are dropped when the store is full.
+ */
+public class UploadedPreviewContentStore {
+    private static final int MAX_UPLOADS = 20;
+    private static final long MAX_BYTES = 32 * 1024 * 1024;
+
+    private final LinkedHashMap<String, byte[]> uploads = new LinkedHashMap<>();
+    private long storedBytes = 0;
+
+    @NotNull
+    public static UploadedPreviewContentStore getInstance() {
+        return ApplicationManager.getApplication().getService(UploadedPreviewContentStore.class);
+    }
+
+    public synchronized void put(@NotNull String handle, @NotNull byte[] content) {
+        byte[] previousContent = uploads.put(handle, content);
+        if (previousContent != null) {
+            storedBytes -= previousContent.length;
+        }
+        storedBytes += content.length;
+
+        Iterator<Map.Entry<String, byte[]>> iterator = uploads.entrySet().iterator();
+        while (iterator.hasNext() && (uploads.size() > MAX_UPLOADS || storedBytes > MAX_BYTES)) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            if (eldest.getKey().equals(handle)) {
+                continue;
+            }
+            storedBytes -= eldest.getValue().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return The uploaded UTF-8 bytes, or null if there is no such upload (anymore).
+     */
+    @Nullable
+    public synchronized byte[] take(@NotNull String handle) {
+        byte[] content = uploads.remove(handle);
+        if (content != null) {
+            storedBytes -= content.length;
+        }
+        return content;
+    }
+}
@@ -3,19 +3,28 @@ package com.sourcegraph.git;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.sourcegraph.config.ConfigUtil;
+import com.sourcegraph.metrics.MetricsRegistry;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
 
 public class GitUtil {
+    private static final Pattern COMMIT_HASH_PATTERN = Pattern.compile("^[0-9a-f]{40}$");
+    // Branch and tag names that can't be mistaken for options or revision expressions like "main~1"
+    private static final Pattern SAFE_REF_PATTERN = Pattern.compile("^[A-Za-z0-9_][A-Za-z0-9._/-]*$");
+
     // repoInfo returns the Sourcegraph repository URI, and the file path
     // relative to the repository root. If the repository URI cannot be
     // determined, a RepoInfo with empty strings is returned.
     @NotNull
     public static RepoInfo getRepoInfo(String filePath, Project project) {
+        long startTime = System.nanoTime();
         String relativePath = "";
         String remoteUrl = "";
         String branchName = "";
@@ -33,20 +42,12 @@ public class GitUtil {
                 branchName = defaultBranchNameSetting != null ? defaultBranchNameSetting : "main";
             }
 
-            remoteUrl = getConfiguredRemoteUrl(repoRootPath);
-            // replace remoteURL if config option is not null
-            String r = ConfigUtil.getRemoteUrlReplacements(project);
-            if (r != null) {
-                String[] replacements = r.trim().split("\\s*,\\s*");
-                // Check if the entered values are pairs
-                for (int i = 0; i < replacements.length && replacements.length % 2 == 0; i += 2) {
-                    remoteUrl = remoteUrl.replace(replacements[i], replacements[i + 1]);
-                }
-            }
+            remoteUrl = RemoteUrlUtil.replaceRemoteUrl(getConfiguredRemoteUrl(repoRootPath), ConfigUtil.getRemoteUrlReplacements(project));
         } catch (Exception err) {
             Logger.getInstance(GitUtil.class).info(err);
             err.printStackTrace();
         }
+        MetricsRegistry.getInstance().histogram("git.getRepoInfo").recordSince(startTime);
         return new RepoInfo(relativePath, remoteUrl, branchName);
     }
 
@@ -68,7 +69,7 @@ public class GitUtil {
      * An exception is thrown if neither exists.
      */
     @NotNull
-    private static String getConfiguredRemoteUrl(String repoDirectoryPath) throws Exception {
+    static String getConfiguredRemoteUrl(String repoDirectoryPath) throws Exception {
         try {
             return getRemoteUrl(repoDirectoryPath, "sourcegraph");
         } catch (Exception e) {
@@ -104,6 +105,56 @@ public class GitUtil {
         return exec("git show-branch remotes/origin/" + branchName, repoDirectoryPath).length() > 0;
     }
 
+    /**
+     * @param commit A full commit hash or a branch or tag name. These often come from links or search results, so
+     *               anything else is rejected without running git.
+     * @return True if the file at the given path is the same in the working copy as at the given commit.
+     * False if it differs, if the commit isn't available locally, or if the commit or the path are not safe to use.
+     */
+    public static boolean isUnchangedSince(String commit, String relativePath, String repoRootPath) throws IOException, InterruptedException {
+        if (!isSafeRevision(commit) || !isSafeRelativePath(relativePath)) {
+            return false;
+        }
+        // Resolves branches and tags first, so that git diff only ever gets a hash
+        Process revParse = new ProcessBuilder("git", "rev-parse", "--verify", "--quiet", commit + "^{commit}")
+            .directory(new File(repoRootPath))
+            .start();
+        String resolvedCommit = new String(revParse.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        if (revParse.waitFor() != 0 || !COMMIT_HASH_PATTERN.matcher(resolvedCommit).matches()) {
+            return false;
+        }
+
+        Process p = new ProcessBuilder("git", "diff", "--quiet", resolvedCommit, "--", relativePath)
+            .directory(new File(repoRootPath))
+            .redirectErrorStream(true)
+            .start();
+        p.getInputStream().transferTo(OutputStream.nullOutputStream());
+        return p.waitFor() == 0;
+    }
+
+    /**
+     * @return True for full commit hashes and plain branch or tag names, which can be passed to git as revisions.
+     */
+    public static boolean isSafeRevision(@NotNull String revision) {
+        return COMMIT_HASH_PATTERN.matcher(revision).matches()
+            || SAFE_REF_PATTERN.matcher(revision).matches() && !revision.contains("..") && !revision.endsWith("/");
+    }
+
+    /**
+     * @return False for paths that could point outside the repository root, e.g. with ".." segments.
+     */
+    public static boolean isSafeRelativePath(@NotNull String relativePath) {
+        if (relativePath.isEmpty() || relativePath.startsWith("/") || relativePath.indexOf('\0') != -1) {
+            return false;
+        }
+        for (String segment : relativePath.split("[/\\\\]")) {
+            if (segment.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // exec executes the given command in the specified directory and returns
     // its stdout. Any stderr output is logged.
     private static String exec(String command, String directoryPath) throws IOException {
@@ -0,0 +1,112 @@
+package com.sourcegraph.git;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vcs.VcsRoot;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import com.sourcegraph.config.ConfigUtil;
+import com.sourcegraph.find.RemoteContentCache;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds search results in the project's own git checkouts, so that we can open the real file instead of a copy.
+ */
+public class LocalCheckoutResolver implements Disposable {
+    /**
+     * The revision of results from the project's own files, see {@link com.sourcegraph.find.LocalTrigramIndex}.
+     * Git doesn't allow "~" in ref names, so this can't be a real revision.
+     */
+    public static final String WORKING_TREE_REVISION = "~working-tree";
+    private static final String NO_REPO_NAME = "";
+
+    private final Project project;
+    // Git root path -> repo name on Sourcegraph, or NO_REPO_NAME if the root has no usable remote
+    private final Map<String, String> repoNamesByRootPath = new ConcurrentHashMap<>();
+
+    public LocalCheckoutResolver(@NotNull Project project) {
+        this.project = project;
+        // Roots and remotes rarely change, so we only forget them when the VCS configuration changes
+        project.getMessageBus().connect(this).subscribe(ProjectLevelVcsManager.VCS_CONFIGURATION_CHANGED, () -> {
+            repoNamesByRootPath.clear();
+            indexCheckouts();
+        });
+    }
+
+    /**
+     * Adds the project's git roots to the {@link RepoCheckoutIndex} in the background.
+     */
+    public void indexCheckouts() {
+        BackgroundExecutor.getInstance().submit("index checkouts", this, () -> RepoCheckoutIndex.getInstance().indexProject(project));
+    }
+
+    @NotNull
+    public static LocalCheckoutResolver getInstance(@NotNull Project project) {
+        return project.getService(LocalCheckoutResolver.class);
+    }
+
+    /**
+     * @param repoName E.g. "github.com/sourcegraph/sourcegraph"
+     * @param commit   The commit the search result is from. The local file must be the same as at that commit, so that
+     *                 the offsets of the match are still right. {@link #WORKING_TREE_REVISION} takes the file as it is.
+     * @param path     Relative to the repository root
+     * @return The local file, or null if it's not checked out in this project or has changed since the commit.
+     * Also null if the commit is not a full hash, or the path could point outside the checkout, because both come from
+     * the webview and are passed to git.
+     */
+    @Nullable
+    public VirtualFile findLocalFile(@NotNull String repoName, @NotNull String commit, @NotNull String path) {
+        if (!commit.equals(WORKING_TREE_REVISION) && !RemoteContentCache.isCommitPinned(commit) || !GitUtil.isSafeRelativePath(path)) {
+            return null;
+        }
+        for (VcsRoot root : ProjectLevelVcsManager.getInstance(project).getAllVcsRoots()) {
+            if (root.getVcs() == null || !"Git".equals(root.getVcs().getName())) {
+                continue;
+            }
+            String rootPath = root.getPath().getPath();
+            if (!repoName.equalsIgnoreCase(getRepoName(rootPath))) {
+                continue;
+            }
+            try {
+                if (!commit.equals(WORKING_TREE_REVISION) && !GitUtil.isUnchangedSince(commit, path, rootPath)) {
+                    continue;
+                }
+            } catch (Exception e) {
+                Logger.getInstance(LocalCheckoutResolver.class).info(e);
+                continue;
+            }
+            VirtualFile file = LocalFileSystem.getInstance().findFileByPath(rootPath + "/" + path);
+            if (file != null && !file.isDirectory()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The repo name on Sourcegraph, or an empty string if the root has no usable remote.
+     */
+    @NotNull
+    public String getRepoName(@NotNull String rootPath) {
+        return repoNamesByRootPath.computeIfAbsent(rootPath, key -> {
+            try {
+                String remoteUrl = RemoteUrlUtil.replaceRemoteUrl(GitUtil.getConfiguredRemoteUrl(rootPath), ConfigUtil.getRemoteUrlReplacements(project));
+                String repoName = RemoteUrlUtil.toRepoName(remoteUrl);
+                return repoName != null ? repoName : NO_REPO_NAME;
+            } catch (Exception e) {
+                return NO_REPO_NAME;
+            }
+        });
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
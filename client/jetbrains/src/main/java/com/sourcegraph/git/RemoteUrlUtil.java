@@ -0,0 +1,69 @@
+package com.sourcegraph.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+public class RemoteUrlUtil {
+    /**
+     * Converts a git remote URL to the repo name Sourcegraph uses by default, e.g.
+     * "git@github.com:foo/bar.git" or "https://user@github.com/foo/bar" -> "github.com/foo/bar".
+     *
+     * @return null if the URL doesn't look like a remote URL.
+     */
+    @Nullable
+    public static String toRepoName(@NotNull String remoteUrl) {
+        String url = remoteUrl.trim();
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd != -1) {
+            // E.g. "ssh://git@github.com:22/foo/bar"
+            url = url.substring(schemeEnd + 3);
+        } else if (url.indexOf(':') == -1) {
+            // A local path
+            return null;
+        } else {
+            // E.g. "git@github.com:foo/bar", which is the same as "git@github.com/foo/bar"
+            url = url.replaceFirst(":", "/");
+        }
+
+        int pathStart = url.indexOf('/');
+        if (pathStart == -1) {
+            return null;
+        }
+        String host = url.substring(0, pathStart);
+        String path = url.substring(pathStart + 1);
+        host = host.substring(host.lastIndexOf('@') + 1);
+        int portStart = host.indexOf(':');
+        if (portStart != -1) {
+            host = host.substring(0, portStart);
+        }
+
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.endsWith(".git")) {
+            path = path.substring(0, path.length() - 4);
+        }
+        if (host.isEmpty() || path.isEmpty()) {
+            return null;
+        }
+        return host.toLowerCase(Locale.ROOT) + "/" + path;
+    }
+
+    /**
+     * Applies the "remote URL replacements" setting, a comma-separated list of search-replacement pairs.
+     */
+    @NotNull
+    public static String replaceRemoteUrl(@NotNull String remoteUrl, @Nullable String replacementsSetting) {
+        if (replacementsSetting == null) {
+            return remoteUrl;
+        }
+        String[] replacements = replacementsSetting.trim().split("\\s*,\\s*");
+        // Check if the entered values are pairs
+        for (int i = 0; i < replacements.length && replacements.length % 2 == 0; i += 2) {
+            remoteUrl = remoteUrl.replace(replacements[i], replacements[i + 1]);
+        }
+        return remoteUrl;
+    }
+}
@@ -0,0 +1,129 @@
+package com.sourcegraph.git;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.RoamingType;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vcs.VcsRoot;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps Sourcegraph repo names to the git roots where they are checked out, across all projects.
+ * <p>
+ * Each project adds its roots when it opens and when its VCS configuration changes. The roots are persisted, so
+ * checkouts from recently opened projects are found even when those projects are closed. Roots that no longer exist
+ * are dropped when they are looked up.
+ */
+@State(
+    name = "RepoCheckoutIndex",
+    storages = {@Storage(value = "sourcegraph-checkouts.xml", roamingType = RoamingType.DISABLED)})
+public class RepoCheckoutIndex implements PersistentStateComponent<RepoCheckoutIndex.IndexState> {
+    public static class IndexState {
+        // Git root path -> repo name
+        public Map<String, String> repoNamesByRootPath = new HashMap<>();
+    }
+
+    private IndexState state = new IndexState();
+    // Repo name -> git root paths, derived from the state
+    private final Map<String, Set<String>> rootPathsByRepoName = new HashMap<>();
+
+    @NotNull
+    public static RepoCheckoutIndex getInstance() {
+        return ApplicationManager.getApplication().getService(RepoCheckoutIndex.class);
+    }
+
+    /**
+     * Adds or updates the git roots of the project. Runs git for each root, so don't call this on the EDT.
+     */
+    public void indexProject(@NotNull Project project) {
+        if (project.isDisposed()) {
+            return;
+        }
+        LocalCheckoutResolver resolver = LocalCheckoutResolver.getInstance(project);
+        for (VcsRoot root : ProjectLevelVcsManager.getInstance(project).getAllVcsRoots()) {
+            if (root.getVcs() == null || !"Git".equals(root.getVcs().getName())) {
+                continue;
+            }
+            String rootPath = root.getPath().getPath();
+            String repoName = resolver.getRepoName(rootPath);
+            if (!repoName.isEmpty()) {
+                put(rootPath, repoName);
+            }
+        }
+    }
+
+    /**
+     * @param repoName E.g. "github.com/sourcegraph/sourcegraph"
+     * @return The paths of the git roots where the repo is checked out, most recently indexed last.
+     */
+    @NotNull
+    public synchronized List<String> findRootPaths(@NotNull String repoName) {
+        Set<String> rootPaths = rootPathsByRepoName.get(repoName.toLowerCase(Locale.ROOT));
+        if (rootPaths == null) {
+            return List.of();
+        }
+        List<String> existingRootPaths = new ArrayList<>();
+        for (String rootPath : new ArrayList<>(rootPaths)) {
+            if (Files.isDirectory(Paths.get(rootPath))) {
+                existingRootPaths.add(rootPath);
+            } else {
+                remove(rootPath);
+            }
+        }
+        return existingRootPaths;
+    }
+
+    private synchronized void put(@NotNull String rootPath, @NotNull String repoName) {
+        String normalizedRepoName = repoName.toLowerCase(Locale.ROOT);
+        String previousRepoName = state.repoNamesByRootPath.put(rootPath, normalizedRepoName);
+        if (previousRepoName != null) {
+            removeFromRepo(previousRepoName, rootPath);
+        }
+        rootPathsByRepoName.computeIfAbsent(normalizedRepoName, key -> new LinkedHashSet<>()).add(rootPath);
+    }
+
+    private synchronized void remove(@NotNull String rootPath) {
+        String repoName = state.repoNamesByRootPath.remove(rootPath);
+        if (repoName != null) {
+            removeFromRepo(repoName, rootPath);
+        }
+    }
+
+    private void removeFromRepo(@NotNull String repoName, @NotNull String rootPath) {
+        Set<String> rootPaths = rootPathsByRepoName.get(repoName);
+        if (rootPaths != null) {
+            rootPaths.remove(rootPath);
+            if (rootPaths.isEmpty()) {
+                rootPathsByRepoName.remove(repoName);
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public synchronized IndexState getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized void loadState(@NotNull IndexState state) {
+        this.state = state;
+        rootPathsByRepoName.clear();
+        for (Map.Entry<String, String> entry : state.repoNamesByRootPath.entrySet()) {
+            rootPathsByRepoName.computeIfAbsent(entry.getValue(), key -> new LinkedHashSet<>()).add(entry.getKey());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.sourcegraph.metrics;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbAwareAction;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Writes the spans recorded by {@link Tracer} to a Chrome trace JSON file in the IDE's log directory.
+ */
+public class ExportTraceAction extends DumbAwareAction {
+    @Override
+    public void update(@NotNull AnActionEvent event) {
+        event.getPresentation().setEnabled(Tracer.getInstance().isEnabled());
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        String fileName = "sourcegraph-trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+        Path path = Paths.get(PathManager.getLogPath(), fileName);
+        Notification notification;
+        try {
+            Files.writeString(path, Tracer.getInstance().exportChromeTrace().toString(), StandardCharsets.UTF_8);
+            notification = new Notification("Sourcegraph", "Sourcegraph",
+                "Trace exported to " + path + ". Open it in chrome://tracing or ui.perfetto.dev.", NotificationType.INFORMATION);
+        } catch (IOException e) {
+            Logger.getInstance(ExportTraceAction.class).warn("Could not export the trace to " + path, e);
+            notification = new Notification("Sourcegraph", "Sourcegraph",
+                "Could not export the trace: " + e.getMessage(), NotificationType.ERROR);
+        }
+        Notifications.Bus.notify(notification, event.getProject());
+    }
+}
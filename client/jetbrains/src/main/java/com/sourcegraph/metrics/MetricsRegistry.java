@@ -0,0 +1,51 @@
+package com.sourcegraph.metrics;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the plugin's latency histograms and counters since IDE start, so that we can see where time goes.
+ * Names are dot-separated, e.g. "bridge.jsToJava.preview".
+ * <p>
+ * A plain singleton rather than a service, so that it also works in benchmarks that run without the platform.
+ */
+public class MetricsRegistry {
+    private static final Logger logger = Logger.getInstance(MetricsRegistry.class);
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    @NotNull
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    @NotNull
+    public LatencyHistogram histogram(@NotNull String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    @NotNull
+    public LongAdder counter(@NotNull String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    @NotNull
+    public String format() {
+        StringBuilder report = new StringBuilder("Sourcegraph plugin metrics\n\nLatencies:\n");
+        new TreeMap<>(histograms).forEach((name, histogram) -> report.append("  ").append(name).append(": ").append(histogram.format()).append('\n'));
+        report.append("\nCounters:\n");
+        new TreeMap<>(counters).forEach((name, counter) -> report.append("  ").append(name).append(": ").append(counter.sum()).append('\n'));
+        return report.toString();
+    }
+
+    public void dumpToLog() {
+        logger.info(format());
+    }
+}
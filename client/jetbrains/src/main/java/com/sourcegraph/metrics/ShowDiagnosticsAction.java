@@ -0,0 +1,52 @@
+package com.sourcegraph.metrics;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Shows the plugin's metrics and writes them to the IDE log, so that users can attach them to bug reports.
+ */
+public class ShowDiagnosticsAction extends DumbAwareAction {
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+        metricsRegistry.dumpToLog();
+        new DiagnosticsDialog(event.getProject(), metricsRegistry.format()).show();
+    }
+
+    private static class DiagnosticsDialog extends DialogWrapper {
+        private final String report;
+
+        DiagnosticsDialog(@Nullable Project project, @NotNull String report) {
+            super(project, false);
+            this.report = report;
+            setTitle("Sourcegraph Diagnostics");
+            setOKButtonText("Close");
+            init();
+        }
+
+        @Override
+        protected @Nullable JComponent createCenterPanel() {
+            JTextArea textArea = new JTextArea(report);
+            textArea.setEditable(false);
+            textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, textArea.getFont().getSize()));
+            JBScrollPane scrollPane = new JBScrollPane(textArea);
+            scrollPane.setPreferredSize(JBUI.size(800, 500));
+            return scrollPane;
+        }
+
+        @Override
+        protected Action @NotNull [] createActions() {
+            return new Action[]{getOKAction()};
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.sourcegraph.metrics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sourcegraph.config.UserLevelConfig;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records what happens to a webview request on its way to the screen, as spans that share the request's trace ID.
+ * The webview sends the trace ID and its own timestamps with the request, in the "trace" field of the bridge
+ * envelope. On the Java side, the trace ID lives in a thread-local, and {@link #wrap} carries it over to the EDT.
+ * <p>
+ * Enabled with {@code tracingEnabled=true} in {@code ~/.sourcegraph-jetbrains.properties}. The last
+ * {@link #CAPACITY} spans are kept in a lock-free ring buffer and can be exported in the Chrome trace format, which
+ * chrome://tracing, Perfetto and most profilers can open.
+ */
+public class Tracer {
+    private static final int CAPACITY = 20_000;
+    // The webview's spans go to their own track in the trace
+    private static final long WEBVIEW_THREAD_ID = 0;
+    private static final Tracer instance = new Tracer(UserLevelConfig.isTracingEnabled());
+
+    private final boolean isEnabled;
+    private final ThreadLocal<String> currentTraceId = new ThreadLocal<>();
+    private final AtomicReferenceArray<SpanRecord> spans = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong spanCount = new AtomicLong();
+    // Span times are in epoch microseconds so that they line up with the webview's performance.timeOrigin-based times
+    private final long epochMicrosAtStart = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private final long nanosAtStart = System.nanoTime();
+
+    Tracer(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+    }
+
+    @NotNull
+    public static Tracer getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Makes the trace of the given request current on this thread, and records the webview's part of it:
+     * preparing the request, then sending it through the bridge until now.
+     */
+    @NotNull
+    public Scope startRequest(@NotNull JsonObject request) {
+        JsonObject trace = isEnabled && request.has("trace") && request.get("trace").isJsonObject() ? request.getAsJsonObject("trace") : null;
+        if (trace == null || !trace.has("traceId")) {
+            return withTrace(null);
+        }
+
+        String traceId = trace.get("traceId").getAsString();
+        String action = request.has("action") ? request.get("action").getAsString() : "unknown";
+        long now = nowMicros();
+        long sentAt = trace.has("sentAtMicros") ? trace.get("sentAtMicros").getAsLong() : now;
+        long startedAt = trace.has("startedAtMicros") ? trace.get("startedAtMicros").getAsLong() : sentAt;
+        if (sentAt > startedAt) {
+            record(new SpanRecord("webview." + action, traceId, startedAt, sentAt - startedAt, WEBVIEW_THREAD_ID, "webview"));
+        }
+        record(new SpanRecord("bridge.transit." + action, traceId, sentAt, Math.max(0, now - sentAt), WEBVIEW_THREAD_ID, "webview"));
+        return withTrace(traceId);
+    }
+
+    /**
+     * Makes the given trace current on this thread until the returned scope is closed.
+     */
+    @NotNull
+    public Scope withTrace(@Nullable String traceId) {
+        String previousTraceId = currentTraceId.get();
+        currentTraceId.set(traceId);
+        return () -> currentTraceId.set(previousTraceId);
+    }
+
+    /**
+     * Starts a span in the current trace. It's a no-op if there is no current trace.
+     */
+    @NotNull
+    public Span startSpan(@NotNull String name) {
+        String traceId = currentTraceId.get();
+        if (!isEnabled || traceId == null) {
+            return () -> {
+            };
+        }
+        long startMicros = nowMicros();
+        return () -> {
+            Thread thread = Thread.currentThread();
+            record(new SpanRecord(name, traceId, startMicros, nowMicros() - startMicros, thread.getId(), thread.getName()));
+        };
+    }
+
+    /**
+     * Carries the current trace over to the thread that runs the given runnable, e.g. the EDT for invokeLater.
+     * The time the runnable waits for that thread is recorded as a span with the given name.
+     */
+    @NotNull
+    public Runnable wrap(@NotNull String queueSpanName, @NotNull Runnable runnable) {
+        String traceId = currentTraceId.get();
+        if (!isEnabled || traceId == null) {
+            return runnable;
+        }
+        Span queueSpan = startSpan(queueSpanName);
+        return () -> {
+            queueSpan.close();
+            try (Scope ignored = withTrace(traceId)) {
+                runnable.run();
+            }
+        };
+    }
+
+    /**
+     * @return The recorded spans in the Chrome trace event format.
+     */
+    @NotNull
+    public JsonObject exportChromeTrace() {
+        JsonArray events = new JsonArray();
+        Map<Long, String> threadNames = new HashMap<>();
+        long count = spanCount.get();
+        for (long i = Math.max(0, count - CAPACITY); i < count; i++) {
+            SpanRecord span = spans.get((int) (i % CAPACITY));
+            if (span == null) {
+                continue;
+            }
+            threadNames.put(span.threadId, span.threadName);
+
+            JsonObject args = new JsonObject();
+            args.addProperty("traceId", span.traceId);
+            JsonObject event = new JsonObject();
+            event.addProperty("name", span.name);
+            event.addProperty("cat", "sourcegraph");
+            event.addProperty("ph", "X");
+            event.addProperty("ts", span.startMicros);
+            event.addProperty("dur", span.durationMicros);
+            event.addProperty("pid", 1);
+            event.addProperty("tid", span.threadId);
+            event.add("args", args);
+            events.add(event);
+        }
+
+        threadNames.forEach((threadId, threadName) -> {
+            JsonObject args = new JsonObject();
+            args.addProperty("name", threadName);
+            JsonObject event = new JsonObject();
+            event.addProperty("name", "thread_name");
+            event.addProperty("ph", "M");
+            event.addProperty("pid", 1);
+            event.addProperty("tid", threadId);
+            event.add("args", args);
+            events.add(event);
+        });
+
+        JsonObject trace = new JsonObject();
+        trace.add("traceEvents", events);
+        trace.addProperty("displayTimeUnit", "ms");
+        return trace;
+    }
+
+    private void record(@NotNull SpanRecord span) {
+        long index = spanCount.getAndIncrement();
+        spans.set((int) (index % CAPACITY), span);
+    }
+
+    private long nowMicros() {
+        return epochMicrosAtStart + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - nanosAtStart);
+    }
+
+    public interface Span extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static class SpanRecord {
+        private final String name;
+        private final String traceId;
+        private final long startMicros;
+        private final long durationMicros;
+        private final long threadId;
+        private final String threadName;
+
+        private SpanRecord(@NotNull String name, @NotNull String traceId, long startMicros, long durationMicros, long threadId, @NotNull String threadName) {
+            this.name = name;
+            this.traceId = traceId;
+            this.startMicros = startMicros;
+            this.durationMicros = durationMicros;
+            this.threadId = threadId;
+            this.threadName = threadName;
+        }
+    }
+}
@@ -4,21 +4,14 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.sourcegraph.api.GraphQlClient;
+import com.sourcegraph.concurrent.BackgroundExecutor;
 import com.sourcegraph.config.ConfigUtil;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import com.sourcegraph.metrics.MetricsRegistry;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.util.function.Consumer;
 
 public class GraphQlLogger {
@@ -44,7 +37,8 @@ public class GraphQlLogger {
     private static void logEvent(Project project, @NotNull Event event, @Nullable Consumer<Integer> callback) {
         String instanceUrl = ConfigUtil.getSourcegraphUrl(project);
         String accessToken = ConfigUtil.getAccessToken(project);
-        new Thread(() -> {
+        // Not tied to the project, so that the uninstall event is sent even while the project closes
+        BackgroundExecutor.getInstance().execute("logEvent", () -> {
             String query = "" +
                 "mutation LogEvents($events: [Event!]) {" +
                 "    logEvents(events: $events) { " +
@@ -58,54 +52,15 @@ public class GraphQlLogger {
             variables.add("events", events);
 
             try {
-                int responseStatusCode = callGraphQLService(instanceUrl, accessToken, query, variables);
+                int responseStatusCode = GraphQlClient.callGraphQLService(instanceUrl, accessToken, query, variables);
+                MetricsRegistry.getInstance().counter(responseStatusCode == 200 ? "telemetry.sent" : "telemetry.rejected").increment();
                 if (callback != null) {
                     callback.accept(responseStatusCode);
                 }
             } catch (IOException e) {
+                MetricsRegistry.getInstance().counter("telemetry.failed").increment();
                 logger.info(e);
             }
-        }).start();
-    }
-
-    private static int callGraphQLService(@NotNull String instanceUrl, @Nullable String accessToken, @NotNull String query, @NotNull JsonObject variables) throws IOException {
-        HttpPost request = createRequest(instanceUrl, accessToken, query, variables);
-        try (CloseableHttpClient client = HttpClientBuilder.create().build()) {
-            CloseableHttpResponse response = client.execute(request);
-            response.close();
-            return response.getStatusLine().getStatusCode();
-        }
-    }
-
-    @NotNull
-    private static HttpPost createRequest(@NotNull String instanceUrl, @Nullable String accessToken, @NotNull String query, @NotNull JsonObject variables) {
-        HttpPost request = new HttpPost(getGraphQLApiURI(instanceUrl));
-
-        request.setHeader("Content-Type", "application/json");
-        request.setHeader("X-Sourcegraph-Should-Trace", "false");
-        if (accessToken != null) {
-            request.setHeader("Authorization", "token " + accessToken);
-        }
-
-        JsonObject body = new JsonObject();
-        body.addProperty("query", query);
-        body.add("variables", variables);
-
-        ContentType contentType = ContentType.create("application/json", StandardCharsets.UTF_8);
-
-        StringEntity entity = new StringEntity(body.toString(), contentType);
-        entity.setContentEncoding(StandardCharsets.UTF_8.toString());
-
-        request.setEntity(entity);
-        return request;
-    }
-
-    @NotNull
-    private static URI getGraphQLApiURI(String instanceUrl) {
-        try {
-            return new URIBuilder(instanceUrl + ".api/graphql").build();
-        } catch (URISyntaxException e) {
-            throw new RuntimeException(e);
-        }
+        });
     }
 }
@@ -1,17 +1,29 @@
 package com.sourcegraph.telemetry;
 
+import com.intellij.ide.IdeEventQueue;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginInstaller;
 import com.intellij.ide.plugins.PluginStateListener;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupActivity;
+import com.intellij.openapi.util.Disposer;
 import com.sourcegraph.config.ConfigUtil;
 import com.sourcegraph.config.SettingsChangeListener;
+import com.sourcegraph.find.FindService;
+import com.sourcegraph.find.LocalTrigramIndex;
+import com.sourcegraph.git.LocalCheckoutResolver;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.UUID;
 
 public class PostStartupActivity implements StartupActivity.DumbAware {
+    // How long the IDE has to be idle before we start loading the browser
+    private static final int PREWARM_IDLE_TIMEOUT_MS = 5000;
+
     private static String generateAnonymousUserId() {
         return UUID.randomUUID().toString();
     }
@@ -21,12 +33,22 @@ public class PostStartupActivity implements StartupActivity.DumbAware {
         // Make sure that SettingsChangeListener is loaded
         project.getService(SettingsChangeListener.class);
 
+        // Lets "Open Sourcegraph URL in IDE" find the checkouts of this project. This also keeps them up to date.
+        LocalCheckoutResolver.getInstance(project).indexCheckouts();
+
+        // Only does something when the local index is enabled
+        LocalTrigramIndex.getInstance(project).startIndexing();
+
         // When no anonymous user ID is set yet, we create a new one and treat this as an installation event.
         // This likely means that the user has never started IntelliJ with our extension before
         if (ConfigUtil.getAnonymousUserId() == null) {
             ConfigUtil.setAnonymousUserId(generateAnonymousUserId());
         }
 
+        if (ConfigUtil.isPrewarmingEnabled(project)) {
+            DumbService.getInstance(project).runWhenSmart(() -> prewarmFindServiceWhenIdle(project));
+        }
+
         PluginInstaller.addStateListener(new PluginStateListener() {
             public void install(@NotNull IdeaPluginDescriptor ideaPluginDescriptor) {
                 GraphQlLogger.logInstallEvent(project, (wasSuccessful) -> {
@@ -49,4 +71,33 @@ public class PostStartupActivity implements StartupActivity.DumbAware {
             }
         });
     }
+
+    private static void prewarmFindServiceWhenIdle(@NotNull Project project) {
+        // Removes the idle listener exactly once: after prewarming, or when the project is closed before the IDE is idle
+        Disposable listenerDisposable = Disposer.newDisposable("Sourcegraph prewarm idle listener");
+        if (!Disposer.tryRegister(project, listenerDisposable)) {
+            return;
+        }
+        Runnable idleListener = new Runnable() {
+            private boolean isScheduled = false;
+
+            @Override
+            public void run() {
+                // Idle listeners are called repeatedly, but we only want to prewarm once.
+                // Removing the listener while the listeners are being called is not safe, so we do it later.
+                if (isScheduled) {
+                    return;
+                }
+                isScheduled = true;
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    Disposer.dispose(listenerDisposable);
+                    if (!project.isDisposed()) {
+                        project.getService(FindService.class).prewarm();
+                    }
+                }, ModalityState.NON_MODAL);
+            }
+        };
+        IdeEventQueue.getInstance().addIdleListener(idleListener, PREWARM_IDLE_TIMEOUT_MS);
+        Disposer.register(listenerDisposable, () -> IdeEventQueue.getInstance().removeIdleListener(idleListener));
+    }
 }
@@ -0,0 +1,276 @@
+package com.sourcegraph.vfs;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.vfs.DeprecatedVirtualFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.util.containers.ContainerUtil;
+import com.sourcegraph.api.GraphQlClient;
+import com.sourcegraph.config.ConfigUtil;
+import com.sourcegraph.find.RemoteContentCache;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * A read-only file system for browsing repos on Sourcegraph, with URLs like
+ * {@code sourcegraph://github.com/sourcegraph/sourcegraph@<commit>/client/jetbrains/README.md}.
+ * <p>
+ * File contents and directory listings are loaded through GraphQL when they are first accessed.
+ * Files at a full commit hash never change, so there is only one node for each of them and instance while the node is
+ * in use. Opening the same remote file twice therefore shares the node and its Document. Nodes that nothing refers to
+ * anymore, e.g. after their editor was closed, are garbage collected.
+ */
+public class SourcegraphFileSystem extends DeprecatedVirtualFileSystem {
+    public static final String PROTOCOL = "sourcegraph";
+    private static final Pattern COMMIT_HASH_PATTERN = Pattern.compile("^[0-9a-f]{40}$");
+    private static final String TREE_QUERY = "" +
+        "query TreeEntries($repoName: String!, $commitID: String!, $filePath: String!) {" +
+        "    repository(name: $repoName) {" +
+        "        commit(rev: $commitID) {" +
+        "            tree(path: $filePath) {" +
+        "                entries {" +
+        "                    name" +
+        "                    isDirectory" +
+        "                }" +
+        "            }" +
+        "        }" +
+        "    }" +
+        "}";
+
+    // Instance URL + "\n" + path -> node, only for commit-pinned nodes. Weakly referenced, see the class comment.
+    private final Map<String, SourcegraphVirtualFile> pinnedFiles = ContainerUtil.createConcurrentWeakValueMap();
+
+    @NotNull
+    public static SourcegraphFileSystem getInstance() {
+        return (SourcegraphFileSystem) VirtualFileManager.getInstance().getFileSystem(PROTOCOL);
+    }
+
+    /**
+     * @param path Relative to the repository root, empty for the root itself.
+     */
+    @NotNull
+    public SourcegraphVirtualFile findOrCreateFile(@NotNull Project project, @NotNull String repoName, @NotNull String revision,
+                                                   @NotNull String path, boolean isDirectory) {
+        return findOrCreateFile(Instance.of(project), repoName, revision, path, isDirectory);
+    }
+
+    @NotNull
+    SourcegraphVirtualFile findOrCreateFile(@NotNull Instance instance, @NotNull String repoName, @NotNull String revision,
+                                            @NotNull String path, boolean isDirectory) {
+        String fullPath = buildPath(repoName, revision, path);
+        if (!isCommitPinned(revision)) {
+            return new SourcegraphVirtualFile(this, instance, repoName, revision, path, isDirectory);
+        }
+        return pinnedFiles.computeIfAbsent(instance.url + "\n" + fullPath, key -> new SourcegraphVirtualFile(this, instance, repoName, revision, path, isDirectory));
+    }
+
+    @NotNull
+    static String buildPath(@NotNull String repoName, @NotNull String revision, @NotNull String path) {
+        return repoName + "@" + revision + (path.isEmpty() ? "" : "/" + path);
+    }
+
+    private static boolean isCommitPinned(@NotNull String revision) {
+        return COMMIT_HASH_PATTERN.matcher(revision).matches();
+    }
+
+    @NotNull
+    @Override
+    public String getProtocol() {
+        return PROTOCOL;
+    }
+
+    /**
+     * Used when the IDE restores editors after a restart. Directories are only known to be directories once their
+     * parent listed them, so we assume that the path points to a file. The content is preloaded right away.
+     * <p>
+     * Paths don't include the instance, so we use the settings of an open project. They are usually the same for all
+     * projects.
+     */
+    @Nullable
+    @Override
+    public VirtualFile findFileByPath(@NotNull String path) {
+        int revisionStart = path.indexOf('@');
+        if (revisionStart <= 0) {
+            return null;
+        }
+        int pathStart = path.indexOf('/', revisionStart);
+        String repoName = path.substring(0, revisionStart);
+        String revision = pathStart != -1 ? path.substring(revisionStart + 1, pathStart) : path.substring(revisionStart + 1);
+        String relativePath = pathStart != -1 ? path.substring(pathStart + 1) : "";
+        if (revision.isEmpty()) {
+            return null;
+        }
+        SourcegraphVirtualFile file = findOrCreateFile(getInstanceOfOpenProjects(), repoName, revision, relativePath, relativePath.isEmpty());
+        file.preloadContent();
+        return file;
+    }
+
+    @NotNull
+    private static Instance getInstanceOfOpenProjects() {
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (!project.isDisposed()) {
+                return Instance.of(project);
+            }
+        }
+        return Instance.of(ProjectManager.getInstance().getDefaultProject());
+    }
+
+    /**
+     * Waits for a load that runs in the background. On the EDT, this shows a progress dialog that the user can cancel.
+     * Elsewhere, the wait ends with a {@link ProcessCanceledException} when the current progress is cancelled.
+     *
+     * @param title Shown in the progress dialog.
+     */
+    @NotNull
+    static <T> T await(@NotNull Future<T> loading, @NotNull String title) throws IOException {
+        if (loading.isDone() || !ApplicationManager.getApplication().isDispatchThread()) {
+            return awaitCancellably(loading);
+        }
+        try {
+            return ProgressManager.getInstance().runProcessWithProgressSynchronously(() -> awaitCancellably(loading), title, true, null);
+        } catch (ProcessCanceledException e) {
+            throw new IOException(title + " was cancelled.", e);
+        }
+    }
+
+    @NotNull
+    private static <T> T awaitCancellably(@NotNull Future<T> loading) throws IOException {
+        while (true) {
+            ProgressManager.checkCanceled();
+            try {
+                return loading.get(50, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+                // Check for cancellation again
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading from Sourcegraph.", e);
+            }
+        }
+    }
+
+    @Override
+    public void refresh(boolean asynchronous) {
+    }
+
+    @Nullable
+    @Override
+    public VirtualFile refreshAndFindFileByPath(@NotNull String path) {
+        return findFileByPath(path);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    protected void deleteFile(Object requestor, @NotNull VirtualFile vFile) throws IOException {
+        throw new IOException("Sourcegraph files are read-only.");
+    }
+
+    @Override
+    protected void moveFile(Object requestor, @NotNull VirtualFile vFile, @NotNull VirtualFile newParent) throws IOException {
+        throw new IOException("Sourcegraph files are read-only.");
+    }
+
+    @Override
+    protected void renameFile(Object requestor, @NotNull VirtualFile vFile, @NotNull String newName) throws IOException {
+        throw new IOException("Sourcegraph files are read-only.");
+    }
+
+    @NotNull
+    @Override
+    protected VirtualFile createChildFile(Object requestor, @NotNull VirtualFile vDir, @NotNull String fileName) throws IOException {
+        throw new IOException("Sourcegraph files are read-only.");
+    }
+
+    @NotNull
+    @Override
+    protected VirtualFile createChildDirectory(Object requestor, @NotNull VirtualFile vDir, @NotNull String dirName) throws IOException {
+        throw new IOException("Sourcegraph files are read-only.");
+    }
+
+    @NotNull
+    @Override
+    protected VirtualFile copyFile(Object requestor, @NotNull VirtualFile virtualFile, @NotNull VirtualFile newParent, @NotNull String copyName) throws IOException {
+        throw new IOException("Sourcegraph files are read-only.");
+    }
+
+    @NotNull
+    String fetchContent(@NotNull SourcegraphVirtualFile file) throws IOException {
+        RemoteContentCache contentCache = RemoteContentCache.getInstance();
+        String cachedContent = contentCache.getContent(file.getInstance().url, file.getRepoName(), file.getRevision(), file.getRelativePath());
+        if (cachedContent != null) {
+            return cachedContent;
+        }
+        String contentString = GraphQlClient.fetchBlobContent(file.getInstance().url, file.getInstance().accessToken,
+            file.getRepoName(), file.getRevision(), file.getRelativePath());
+        if (contentString == null) {
+            throw new IOException("File not found on Sourcegraph, or binary: " + file.getPath());
+        }
+        contentCache.putContentAsync(file.getInstance().url, file.getRepoName(), file.getRevision(), file.getRelativePath(), contentString);
+        return contentString;
+    }
+
+    @NotNull
+    List<SourcegraphVirtualFile> fetchChildren(@NotNull SourcegraphVirtualFile directory) throws IOException {
+        JsonElement entries = GraphQlClient.getPath(query(directory, TREE_QUERY), "repository", "commit", "tree", "entries");
+        if (entries == null || !entries.isJsonArray()) {
+            throw new IOException("Directory not found on Sourcegraph: " + directory.getPath());
+        }
+        List<SourcegraphVirtualFile> children = new ArrayList<>();
+        for (JsonElement entry : entries.getAsJsonArray()) {
+            String name = entry.getAsJsonObject().get("name").getAsString();
+            boolean isDirectory = entry.getAsJsonObject().get("isDirectory").getAsBoolean();
+            String childPath = directory.getRelativePath().isEmpty() ? name : directory.getRelativePath() + "/" + name;
+            children.add(findOrCreateFile(directory.getInstance(), directory.getRepoName(), directory.getRevision(), childPath, isDirectory));
+        }
+        return children;
+    }
+
+    @NotNull
+    private static JsonObject query(@NotNull SourcegraphVirtualFile file, @NotNull String query) throws IOException {
+        JsonObject variables = new JsonObject();
+        variables.addProperty("repoName", file.getRepoName());
+        variables.addProperty("commitID", file.getRevision());
+        variables.addProperty("filePath", file.getRelativePath());
+        return GraphQlClient.queryGraphQLService(file.getInstance().url, file.getInstance().accessToken, query, variables);
+    }
+
+    /**
+     * The Sourcegraph instance that a file comes from, remembered so that loading doesn't depend on a project.
+     */
+    static class Instance {
+        final String url;
+        @Nullable
+        final String accessToken;
+
+        Instance(@NotNull String url, @Nullable String accessToken) {
+            this.url = url;
+            this.accessToken = accessToken;
+        }
+
+        @NotNull
+        static Instance of(@NotNull Project project) {
+            return new Instance(ConfigUtil.getSourcegraphUrl(project), ConfigUtil.getAccessToken(project));
+        }
+    }
+}
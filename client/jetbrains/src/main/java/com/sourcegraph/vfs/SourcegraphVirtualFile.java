@@ -0,0 +1,253 @@
+package com.sourcegraph.vfs;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileSystem;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A file or directory in a repo on Sourcegraph. See {@link SourcegraphFileSystem}.
+ * <p>
+ * Contents and children are loaded on the background executor. Callers that need them wait in a way that can be
+ * cancelled, see {@link SourcegraphFileSystem#await}. {@link #getLength()} never waits.
+ */
+public class SourcegraphVirtualFile extends VirtualFile {
+    private static final VirtualFile[] NO_CHILDREN = new VirtualFile[0];
+
+    private final SourcegraphFileSystem fileSystem;
+    private final SourcegraphFileSystem.Instance instance;
+    private final String repoName;
+    private final String revision;
+    private final String relativePath;
+    private final boolean isDirectory;
+
+    // Loaded when first accessed
+    private volatile byte[] content;
+    private volatile VirtualFile[] children;
+    // The running or last load, guarded by this
+    private CompletableFuture<byte[]> contentLoading;
+    private CompletableFuture<VirtualFile[]> childrenLoading;
+
+    SourcegraphVirtualFile(@NotNull SourcegraphFileSystem fileSystem, @NotNull SourcegraphFileSystem.Instance instance,
+                           @NotNull String repoName, @NotNull String revision, @NotNull String relativePath, boolean isDirectory) {
+        this.fileSystem = fileSystem;
+        this.instance = instance;
+        this.repoName = repoName;
+        this.revision = revision;
+        this.relativePath = relativePath;
+        this.isDirectory = isDirectory;
+        if (!isDirectory) {
+            setCharset(StandardCharsets.UTF_8);
+        }
+    }
+
+    @NotNull
+    SourcegraphFileSystem.Instance getInstance() {
+        return instance;
+    }
+
+    @NotNull
+    public String getRepoName() {
+        return repoName;
+    }
+
+    @NotNull
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return The path relative to the repository root, empty for the root itself.
+     */
+    @NotNull
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    /**
+     * Lets us use content that we already have, e.g. from the search results, instead of loading it again.
+     */
+    public synchronized void setContentIfNotLoaded(@NotNull String content) {
+        if (this.content == null) {
+            this.content = content.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Starts loading the content in the background, so that opening the file later doesn't wait for the network.
+     */
+    public void preloadContent() {
+        if (!isDirectory && content == null) {
+            loadContent();
+        }
+    }
+
+    @NotNull
+    private synchronized CompletableFuture<byte[]> loadContent() {
+        if (content != null) {
+            return CompletableFuture.completedFuture(content);
+        }
+        // A failed load is tried again
+        if (contentLoading == null || contentLoading.isCompletedExceptionally()) {
+            contentLoading = load("load " + getPath(), () -> {
+                byte[] loadedContent = fileSystem.fetchContent(this).getBytes(StandardCharsets.UTF_8);
+                synchronized (this) {
+                    if (content == null) {
+                        content = loadedContent;
+                    }
+                    return content;
+                }
+            });
+        }
+        return contentLoading;
+    }
+
+    @NotNull
+    private synchronized CompletableFuture<VirtualFile[]> loadChildren() {
+        if (children != null) {
+            return CompletableFuture.completedFuture(children);
+        }
+        if (childrenLoading == null || childrenLoading.isCompletedExceptionally()) {
+            childrenLoading = load("list " + getPath(), () -> {
+                VirtualFile[] loadedChildren = fileSystem.fetchChildren(this).toArray(NO_CHILDREN);
+                children = loadedChildren;
+                return loadedChildren;
+            });
+        }
+        return childrenLoading;
+    }
+
+    @NotNull
+    private static <T> CompletableFuture<T> load(@NotNull String taskName, @NotNull Callable<T> loader) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        BackgroundExecutor.getInstance().execute(taskName, () -> {
+            try {
+                result.complete(loader.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return relativePath.isEmpty() ? SourcegraphFileSystem.buildPath(repoName, revision, "") : relativePath.substring(relativePath.lastIndexOf('/') + 1);
+    }
+
+    @NotNull
+    @Override
+    public VirtualFileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    @NotNull
+    @Override
+    public String getPath() {
+        return SourcegraphFileSystem.buildPath(repoName, revision, relativePath);
+    }
+
+    @Override
+    public boolean isWritable() {
+        return false;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return isDirectory;
+    }
+
+    @Override
+    public boolean isValid() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public VirtualFile getParent() {
+        if (relativePath.isEmpty()) {
+            return null;
+        }
+        int lastSlash = relativePath.lastIndexOf('/');
+        return fileSystem.findOrCreateFile(instance, repoName, revision, lastSlash != -1 ? relativePath.substring(0, lastSlash) : "", true);
+    }
+
+    @Override
+    public VirtualFile[] getChildren() {
+        if (!isDirectory) {
+            return NO_CHILDREN;
+        }
+        VirtualFile[] loadedChildren = children;
+        if (loadedChildren != null) {
+            return loadedChildren;
+        }
+        try {
+            return SourcegraphFileSystem.await(loadChildren(), "Listing " + getName() + " on Sourcegraph");
+        } catch (IOException e) {
+            // Try again the next time
+            Logger.getInstance(SourcegraphVirtualFile.class).warn("Could not list " + getPath(), e);
+            return NO_CHILDREN;
+        }
+    }
+
+    @NotNull
+    @Override
+    public OutputStream getOutputStream(Object requestor, long newModificationStamp, long newTimeStamp) throws IOException {
+        throw new IOException("Sourcegraph files are read-only.");
+    }
+
+    @NotNull
+    @Override
+    public byte[] contentsToByteArray() throws IOException {
+        if (isDirectory) {
+            throw new IOException(getPath() + " is a directory.");
+        }
+        byte[] loadedContent = content;
+        if (loadedContent != null) {
+            return loadedContent;
+        }
+        return SourcegraphFileSystem.await(loadContent(), "Loading " + getName() + " from Sourcegraph");
+    }
+
+    @Override
+    public long getTimeStamp() {
+        return 0;
+    }
+
+    /**
+     * @return 0 until the content is loaded. Starts loading it, but doesn't wait for it.
+     */
+    @Override
+    public long getLength() {
+        byte[] loadedContent = content;
+        if (loadedContent != null) {
+            return loadedContent.length;
+        }
+        preloadContent();
+        return 0;
+    }
+
+    @Override
+    public void refresh(boolean asynchronous, boolean recursive, @Nullable Runnable postRunnable) {
+        if (postRunnable != null) {
+            postRunnable.run();
+        }
+    }
+
+    @NotNull
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new ByteArrayInputStream(contentsToByteArray());
+    }
+}
@@ -0,0 +1,140 @@
+package com.sourcegraph.website;
+
+import com.intellij.ide.impl.ProjectUtil;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectLocator;
+import com.intellij.openapi.ui.InputValidator;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.sourcegraph.Icons;
+import com.sourcegraph.browser.SourcegraphUrlParser;
+import com.sourcegraph.concurrent.BackgroundExecutor;
+import com.sourcegraph.config.ConfigUtil;
+import com.sourcegraph.git.GitUtil;
+import com.sourcegraph.git.RepoCheckoutIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.datatransfer.DataFlavor;
+
+/**
+ * Opens the local checkout of the file that a Sourcegraph blob URL points to, e.g. a link shared in chat.
+ */
+public class OpenSourcegraphUrlAction extends DumbAwareAction {
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabled(e.getProject() != null);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+
+        // Prefill the dialog with the copied link, as that's how these links usually arrive
+        String instanceUrl = ConfigUtil.getSourcegraphUrl(project);
+        String clipboardText = CopyPasteManager.getInstance().getContents(DataFlavor.stringFlavor);
+        String initialValue = clipboardText != null && SourcegraphUrlParser.parseBlobUrl(clipboardText, instanceUrl) != null ? clipboardText.trim() : "";
+        String url = Messages.showInputDialog(project, "Sourcegraph file URL:", "Open Sourcegraph URL in IDE", Icons.Logo, initialValue,
+            new InputValidator() {
+                @Override
+                public boolean checkInput(@Nullable String inputString) {
+                    return inputString != null && SourcegraphUrlParser.parseBlobUrl(inputString, instanceUrl) != null;
+                }
+
+                @Override
+                public boolean canClose(@Nullable String inputString) {
+                    return checkInput(inputString);
+                }
+            });
+        if (url != null) {
+            openUrl(project, url);
+        }
+    }
+
+    /**
+     * Opens the file in the project that contains it, or in the given project if no open project does.
+     * Finding the checkout runs git, so the file is opened asynchronously. Failures are shown as notifications.
+     */
+    public static void openUrl(@NotNull Project project, @NotNull String url) {
+        SourcegraphUrlParser.BlobLocation location = SourcegraphUrlParser.parseBlobUrl(url, ConfigUtil.getSourcegraphUrl(project));
+        if (location == null) {
+            notify(project, "This is not a link to a file on Sourcegraph: " + url, NotificationType.WARNING);
+            return;
+        }
+
+        BackgroundExecutor.getInstance().submit("open Sourcegraph URL", project, () -> {
+            // Prefer a checkout where the file is the same as at the linked revision, so that the position fits
+            VirtualFile file = null;
+            boolean isUnchanged = false;
+            for (String rootPath : RepoCheckoutIndex.getInstance().findRootPaths(location.repoName)) {
+                VirtualFile candidate = LocalFileSystem.getInstance().refreshAndFindFileByPath(rootPath + "/" + location.path);
+                if (candidate == null || candidate.isDirectory()) {
+                    continue;
+                }
+                if (file == null) {
+                    file = candidate;
+                }
+                if (location.revision != null && isUnchangedSince(location.revision, location.path, rootPath)) {
+                    file = candidate;
+                    isUnchanged = true;
+                    break;
+                }
+            }
+            VirtualFile foundFile = file;
+            boolean isFoundFileUnchanged = isUnchanged || location.revision == null;
+            ApplicationManager.getApplication().invokeLater(() -> open(project, location, foundFile, isFoundFileUnchanged), project.getDisposed());
+        });
+    }
+
+    private static boolean isUnchangedSince(@NotNull String revision, @NotNull String path, @NotNull String rootPath) {
+        try {
+            return GitUtil.isUnchangedSince(revision, path, rootPath);
+        } catch (Exception e) {
+            // E.g. the revision was never fetched into this checkout
+            return false;
+        }
+    }
+
+    private static void open(@NotNull Project project,
+                             @NotNull SourcegraphUrlParser.BlobLocation location,
+                             @Nullable VirtualFile file,
+                             boolean isUnchanged) {
+        if (file == null || !file.isValid()) {
+            notify(project, "There is no local checkout of " + location.path + " from " + location.repoName
+                + ". Open a project with this repository once so that the plugin can find it.", NotificationType.WARNING);
+            return;
+        }
+
+        Project targetProject = findOpenProjectContaining(file);
+        if (targetProject == null) {
+            targetProject = project;
+        }
+        ProjectUtil.focusProjectWindow(targetProject, true);
+        new OpenFileDescriptor(targetProject, file, Math.max(location.line, 0), Math.max(location.column, 0)).navigate(true);
+        if (!isUnchanged) {
+            notify(targetProject, "The local " + location.path + " has changed since " + location.revision
+                + ", so the linked position may be off.", NotificationType.INFORMATION);
+        }
+    }
+
+    @Nullable
+    private static Project findOpenProjectContaining(@NotNull VirtualFile file) {
+        return ProjectLocator.getInstance().guessProjectForFile(file);
+    }
+
+    private static void notify(@NotNull Project project, @NotNull String message, @NotNull NotificationType type) {
+        Notifications.Bus.notify(new Notification("Sourcegraph", "Sourcegraph", message, type), project);
+    }
+}
@@ -0,0 +1,66 @@
+import com.sourcegraph.find.ContentCacheIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContentCacheIndexTest {
+  @Test
+  public void testPut_EvictsLeastRecentlyUsed() {
+    ContentCacheIndex index = new ContentCacheIndex(100);
+    index.put("a", "hashA", 40);
+    index.put("b", "hashB", 40);
+    assertNotNull(index.get("a"));
+
+    List<String> releasedHashes = index.put("c", "hashC", 40);
+
+    assertEquals(List.of("hashB"), releasedHashes);
+    assertTrue(index.contains("a"));
+    assertFalse(index.contains("b"));
+    assertTrue(index.contains("c"));
+    assertEquals(80, index.getTotalBytes());
+  }
+
+  @Test
+  public void testPut_KeepsNewEntryEvenIfTooLarge() {
+    ContentCacheIndex index = new ContentCacheIndex(100);
+    index.put("a", "hashA", 40);
+
+    assertEquals(List.of("hashA"), index.put("b", "hashB", 150));
+    assertTrue(index.contains("b"));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testSharedHash_IsReleasedWithTheLastKey() {
+    ContentCacheIndex index = new ContentCacheIndex(100);
+    index.put("a", "shared", 10);
+    index.put("b", "shared", 10);
+
+    assertNull(index.remove("a"));
+    assertTrue(index.isReferenced("shared"));
+    assertEquals("shared", index.remove("b"));
+    assertFalse(index.isReferenced("shared"));
+    assertEquals(0, index.getTotalBytes());
+  }
+
+  @Test
+  public void testLoad_RestoresOrder() {
+    ContentCacheIndex index = new ContentCacheIndex(100);
+    index.put("a", "hashA", 30);
+    index.put("b", "hashB", 30);
+    index.get("a");
+
+    ContentCacheIndex loadedIndex = new ContentCacheIndex(100);
+    loadedIndex.load(List.of(index.toTsv().split("\n")));
+    loadedIndex.put("c", "hashC", 50);
+
+    assertTrue(loadedIndex.contains("a"));
+    assertFalse(loadedIndex.contains("b"));
+  }
+}
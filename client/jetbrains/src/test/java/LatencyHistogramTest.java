@@ -0,0 +1,49 @@
+import com.sourcegraph.metrics.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentileMicros(99));
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int micros = 1; micros <= 10; micros++) {
+      histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    assertEquals(10, histogram.getCount());
+    assertEquals(5, histogram.getPercentileMicros(50));
+    assertEquals(10, histogram.getPercentileMicros(100));
+    assertEquals(10, histogram.getMaxMicros());
+  }
+
+  @Test
+  public void testPercentilesStayWithinBucketError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int millis = 1; millis <= 1000; millis++) {
+      histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    assertWithinBucketError(500_000, histogram.getPercentileMicros(50));
+    assertWithinBucketError(950_000, histogram.getPercentileMicros(95));
+    assertWithinBucketError(990_000, histogram.getPercentileMicros(99));
+    assertEquals(1_000_000, histogram.getMaxMicros());
+  }
+
+  private static void assertWithinBucketError(long expectedMicros, long actualMicros) {
+    assertTrue(actualMicros >= expectedMicros && actualMicros <= expectedMicros * 1.125,
+        "Expected about " + expectedMicros + "µs, got " + actualMicros + "µs");
+  }
+}
@@ -0,0 +1,190 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.intellij.ui.jcef.JBCefJSQuery;
+import com.sourcegraph.browser.BridgeTrafficReplayer;
+import com.sourcegraph.browser.JSToJavaBridgeRequestHandler;
+import com.sourcegraph.find.FindPopupPanel;
+import com.sourcegraph.find.PreviewContent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the time from a bridge request to the preview being done on the EDT, without a browser or a display.
+ * Run with `./gradlew previewLatencyTest`. Each scenario prints its p50/p95/p99 in milliseconds.
+ * Pass `-DpreviewLatency.recording=path/to/sourcegraph-bridge.jsonl` to also replay the previews of a recording.
+ */
+public class PreviewLatencyTest extends BasePlatformTestCase {
+  private static final int ITERATIONS = Integer.getInteger("previewLatency.iterations", 50);
+
+  private FindPopupPanel findPopupPanel;
+  private JSToJavaBridgeRequestHandler requestHandler;
+  private long sequenceNumber;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    findPopupPanel = new FindPopupPanel(getProject());
+    requestHandler = new JSToJavaBridgeRequestHandler(getProject(), findPopupPanel);
+    sequenceNumber = 0;
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      findPopupPanel.dispose();
+    } finally {
+      super.tearDown();
+    }
+  }
+
+  public void testSmallFile() {
+    JsonObject request = createPreviewRequest(200, 5);
+    report("small file", measure(List.of(request)));
+  }
+
+  public void testLargeFile() {
+    JsonObject request = createPreviewRequest(20000, 5000);
+    report("large file", measure(List.of(request)));
+  }
+
+  /**
+   * Arrow-key navigation through results: a different file on every step, with an occasional clear.
+   */
+  public void testRapidNavigation() {
+    List<JsonObject> requests = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      requests.add(i % 5 == 4 ? createClearPreviewRequest() : createPreviewRequest(500 + i * 100, 20));
+    }
+    report("rapid navigation", measure(requests));
+  }
+
+  /**
+   * Replays the previews from a recording made with bridgeRecordingEnabled=true.
+   */
+  public void testRecordedTraffic() throws IOException {
+    String recording = System.getProperty("previewLatency.recording");
+    if (recording == null) {
+      return;
+    }
+    // Prefetched contents only existed in the original session, so those previews can't be replayed. Uploaded contents
+    // are replaced with text of the same length, unless the recording is older than upload lengths.
+    List<JsonObject> requests = BridgeTrafficReplayer.readRequests(Paths.get(recording)).stream()
+        .map(BridgeTrafficReplayer.RecordedRequest::getRequest)
+        .filter(request -> {
+          String action = request.get("action").getAsString();
+          JsonObject arguments = request.getAsJsonObject("arguments");
+          return action.equals("clearPreview")
+              || action.equals("preview") && !arguments.has("contentHandle")
+              && !(arguments.has("isContentPrefetched") && arguments.get("isContentPrefetched").getAsBoolean());
+        })
+        .collect(Collectors.toList());
+    if (!requests.isEmpty()) {
+      report("recording", measure(requests));
+    }
+  }
+
+  private long[] measure(List<JsonObject> requestTemplates) {
+    long[] durations = new long[ITERATIONS * requestTemplates.size()];
+    int index = 0;
+    JsonObject previousTemplate = null;
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      for (JsonObject template : requestTemplates) {
+        // The panel skips content it's already showing, so clear it first without measuring
+        if (template == previousTemplate) {
+          requestHandler.handle(withNextSequenceNumber(createClearPreviewRequest()));
+          PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+        }
+        previousTemplate = template;
+
+        JsonObject request = withNextSequenceNumber(template);
+        long start = System.nanoTime();
+        JBCefJSQuery.Response response = requestHandler.handle(request);
+        PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+        durations[index++] = System.nanoTime() - start;
+
+        assertTrue(response.errMsg(), response.isSuccess());
+        assertPreviewApplied(request);
+      }
+    }
+    return durations;
+  }
+
+  private void assertPreviewApplied(JsonObject request) {
+    PreviewContent shownContent = findPopupPanel.getPreviewPanel().getPreviewContent();
+    if (request.get("action").getAsString().equals("clearPreview")) {
+      assertNull(shownContent);
+    } else {
+      assertNotNull(shownContent);
+      assertEquals(request.getAsJsonObject("arguments").get("path").getAsString(), shownContent.getPath());
+    }
+  }
+
+  /**
+   * The panel ignores requests older than the last one it applied, so every request needs a higher sequence number.
+   */
+  private JsonObject withNextSequenceNumber(JsonObject template) {
+    sequenceNumber++;
+    JsonObject request = template.deepCopy();
+    request.getAsJsonObject("arguments").addProperty("sequenceNumber", sequenceNumber);
+    return request;
+  }
+
+  private static void report(String scenario, long[] durations) {
+    Arrays.sort(durations);
+    System.out.printf("Preview latency [%s]: n=%d p50=%.2fms p95=%.2fms p99=%.2fms%n", scenario, durations.length,
+        percentile(durations, 50), percentile(durations, 95), percentile(durations, 99));
+  }
+
+  private static double percentile(long[] sortedDurations, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sortedDurations.length) - 1;
+    return sortedDurations[Math.max(0, index)] / 1_000_000.0;
+  }
+
+  private static JsonObject createClearPreviewRequest() {
+    JsonObject request = new JsonObject();
+    request.addProperty("action", "clearPreview");
+    request.add("arguments", new JsonObject());
+    return request;
+  }
+
+  private static JsonObject createPreviewRequest(int lineCount, int rangeCount) {
+    Random random = new Random(lineCount);
+    StringBuilder content = new StringBuilder();
+    for (int line = 0; line < lineCount; line++) {
+      content.append("    int value").append(line).append(" = compute(").append(random.nextInt(1000)).append(");\n");
+    }
+
+    JsonArray absoluteOffsetAndLengths = new JsonArray();
+    for (int i = 0; i < rangeCount; i++) {
+      JsonArray range = new JsonArray();
+      range.add(random.nextInt(content.length() - 10));
+      range.add(1 + random.nextInt(8));
+      absoluteOffsetAndLengths.add(range);
+    }
+
+    JsonObject arguments = new JsonObject();
+    arguments.addProperty("resultType", "file");
+    arguments.addProperty("fileName", "Generated" + lineCount + ".java");
+    arguments.addProperty("repoUrl", "github.com/sourcegraph/sourcegraph");
+    arguments.addProperty("commit", "1fa8d5d6286c24924b55c15ed4d1a0b85ccab4d5");
+    arguments.addProperty("path", "src/Generated" + lineCount + ".java");
+    arguments.addProperty("content", Base64.getEncoder().encodeToString(content.toString().getBytes(StandardCharsets.UTF_8)));
+    arguments.addProperty("lineNumber", lineCount / 2);
+    arguments.add("absoluteOffsetAndLengths", absoluteOffsetAndLengths);
+
+    JsonObject request = new JsonObject();
+    request.addProperty("action", "preview");
+    request.add("arguments", arguments);
+    return request;
+  }
+}
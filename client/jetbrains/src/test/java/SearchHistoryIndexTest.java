@@ -0,0 +1,95 @@
+import com.sourcegraph.find.SearchHistoryIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchHistoryIndexTest {
+  private static final long NOW = 1_700_000_000_000L;
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  private static List<String> complete(SearchHistoryIndex index, String prefix) {
+    return index.complete(prefix, 10, NOW).stream().map(SearchHistoryIndex.Entry::getQuery).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testComplete_MatchesPrefixIgnoringCase() {
+    SearchHistoryIndex index = new SearchHistoryIndex(100);
+    index.record("repo:sourcegraph foo", NOW);
+    index.record("Repo:jetbrains bar", NOW);
+    index.record("lang:java", NOW);
+
+    assertEquals(List.of("lang:java"), complete(index, "lang"));
+    assertEquals(2, complete(index, "repo:").size());
+    assertEquals(List.of("Repo:jetbrains bar"), complete(index, "REPO:J"));
+    assertTrue(complete(index, "x").isEmpty());
+  }
+
+  @Test
+  public void testComplete_ExcludesThePrefixItself() {
+    SearchHistoryIndex index = new SearchHistoryIndex(100);
+    index.record("foo", NOW);
+    index.record("foobar", NOW);
+
+    assertEquals(List.of("foobar"), complete(index, "foo"));
+  }
+
+  @Test
+  public void testComplete_RanksByFrequencyAndRecency() {
+    SearchHistoryIndex index = new SearchHistoryIndex(100);
+    index.record("often", NOW - DAY);
+    index.record("often", NOW - DAY);
+    index.record("often", NOW - DAY);
+    index.record("old", NOW - 60 * DAY);
+    index.record("old", NOW - 60 * DAY);
+    index.record("old", NOW - 60 * DAY);
+    index.record("once", NOW);
+
+    assertEquals(List.of("often", "once", "old"), complete(index, "o"));
+  }
+
+  @Test
+  public void testRecord_EvictsLowestScoringEntry() {
+    SearchHistoryIndex index = new SearchHistoryIndex(2);
+    index.record("a1", NOW - 30 * DAY);
+    index.record("a2", NOW);
+    index.record("a3", NOW);
+
+    assertEquals(List.of("a2", "a3"), complete(index, "a").stream().sorted().collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testRecord_KeepsNewEntryEvenIfItScoresLowest() {
+    SearchHistoryIndex index = new SearchHistoryIndex(2);
+    index.record("a1", NOW);
+    index.record("a1", NOW);
+    index.record("a1", NOW);
+    index.record("a2", NOW);
+    index.record("a2", NOW);
+    index.record("a3", NOW);
+
+    assertEquals(List.of("a1", "a3"), complete(index, "a").stream().sorted().collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testPut_KeepsNewEntryEvenIfItIsOld() {
+    SearchHistoryIndex index = new SearchHistoryIndex(1);
+    index.record("a1", NOW);
+    index.put(new SearchHistoryIndex.Entry("a2", 1, NOW - 30 * DAY), NOW);
+
+    assertEquals(List.of("a2"), complete(index, "a"));
+  }
+
+  @Test
+  public void testRemove() {
+    SearchHistoryIndex index = new SearchHistoryIndex(100);
+    index.record("foo", NOW);
+    complete(index, "f");
+
+    assertTrue(index.remove("foo"));
+    assertTrue(complete(index, "f").isEmpty());
+  }
+}
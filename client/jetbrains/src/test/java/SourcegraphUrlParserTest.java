@@ -0,0 +1,90 @@
+import com.sourcegraph.browser.SourcegraphUrlParser;
+import com.sourcegraph.browser.SourcegraphUrlParser.BlobLocation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SourcegraphUrlParserTest {
+
+  @Test
+  public void testParseBlobUrl_AsBuiltByUrlBuilder() {
+    BlobLocation location = SourcegraphUrlParser.parseBlobUrl("https://sourcegraph.com/github.com/sourcegraph/sourcegraph@1fa8d5d6286c24924b55c15ed4d1a0b85ccab4d5/-/blob/client/jetbrains/build.gradle.kts?L12:3-14:5&editor=JetBrains&version=v1.2.2");
+
+    assertNotNull(location);
+    assertEquals("github.com/sourcegraph/sourcegraph", location.repoName);
+    assertEquals("1fa8d5d6286c24924b55c15ed4d1a0b85ccab4d5", location.revision);
+    assertEquals("client/jetbrains/build.gradle.kts", location.path);
+    assertEquals(11, location.line);
+    assertEquals(2, location.column);
+    assertEquals(13, location.endLine);
+    assertEquals(4, location.endColumn);
+  }
+
+  @Test
+  public void testParseBlobUrl_WithoutRevisionAndPosition() {
+    BlobLocation location = SourcegraphUrlParser.parseBlobUrl("https://sourcegraph.com/github.com/sourcegraph/sourcegraph/-/blob/README.md");
+
+    assertNotNull(location);
+    assertEquals("github.com/sourcegraph/sourcegraph", location.repoName);
+    assertNull(location.revision);
+    assertEquals("README.md", location.path);
+    assertEquals(-1, location.line);
+  }
+
+  @Test
+  public void testParseBlobUrl_BranchWithSlashesAndLineOnlyFragment() {
+    BlobLocation location = SourcegraphUrlParser.parseBlobUrl("https://sourcegraph.example.com/gitlab.example.com/group/project@feature/new-ui/-/blob/src/My%20File.java#L42");
+
+    assertNotNull(location);
+    assertEquals("gitlab.example.com/group/project", location.repoName);
+    assertEquals("feature/new-ui", location.revision);
+    assertEquals("src/My File.java", location.path);
+    assertEquals(41, location.line);
+    assertEquals(0, location.column);
+    assertEquals(41, location.endLine);
+  }
+
+  @Test
+  public void testParseBlobUrl_InstanceWithPathPrefix() {
+    BlobLocation location = SourcegraphUrlParser.parseBlobUrl("https://example.com/sourcegraph/github.com/sourcegraph/sourcegraph@main/-/blob/README.md?L3", "https://example.com/sourcegraph/");
+
+    assertNotNull(location);
+    assertEquals("github.com/sourcegraph/sourcegraph", location.repoName);
+    assertEquals("main", location.revision);
+    assertEquals("README.md", location.path);
+    assertEquals(2, location.line);
+  }
+
+  @Test
+  public void testParseBlobUrl_PathPrefixOfAnotherHostIsKept() {
+    BlobLocation location = SourcegraphUrlParser.parseBlobUrl("https://sourcegraph.com/sourcegraph/jetbrains/-/blob/README.md", "https://example.com/sourcegraph/");
+
+    assertNotNull(location);
+    assertEquals("sourcegraph/jetbrains", location.repoName);
+  }
+
+  @Test
+  public void testParseBlobUrl_IgnoresPositionsThatDontFitInAnInt() {
+    BlobLocation location = SourcegraphUrlParser.parseBlobUrl("https://sourcegraph.com/github.com/sourcegraph/sourcegraph/-/blob/README.md?L99999999999");
+
+    assertNotNull(location);
+    assertEquals(-1, location.line);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "https://sourcegraph.com/github.com/sourcegraph/sourcegraph",
+      "https://sourcegraph.com/search?q=repo:sourcegraph",
+      "https://sourcegraph.com/-/blob/README.md",
+      "not a url",
+      "https://sourcegraph.com/github.com/sourcegraph/sourcegraph/-/blob/../../.bashrc",
+      "https://sourcegraph.com/github.com/sourcegraph/sourcegraph/-/blob/src/%2e%2e/%2e%2e/.bashrc",
+  })
+  public void testParseBlobUrl_NotABlobUrl(String url) {
+    assertNull(SourcegraphUrlParser.parseBlobUrl(url));
+  }
+}
@@ -0,0 +1,63 @@
+import com.sourcegraph.find.TrigramPostings;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrigramPostingsTest {
+  private static final List<String> DOCUMENTS = List.of(
+      "public class FindService implements Disposable",
+      "function callJava(request: Request): Promise<object>",
+      "private final Project project;",
+      "ab");
+
+  private static TrigramPostings build() {
+    return TrigramPostings.build(Arrays.asList(DOCUMENTS.stream().map(TrigramPostings::getBuckets).toArray(int[][]::new)));
+  }
+
+  @Test
+  public void testGetBuckets_AreSortedAndDistinct() {
+    int[] buckets = TrigramPostings.getBuckets("aaaaaa");
+    assertEquals(1, buckets.length);
+
+    int[] moreBuckets = TrigramPostings.getBuckets("the quick brown fox");
+    for (int i = 1; i < moreBuckets.length; i++) {
+      assertTrue(moreBuckets[i - 1] < moreBuckets[i]);
+    }
+  }
+
+  @Test
+  public void testGetBuckets_IgnoreCase() {
+    assertArrayEquals(TrigramPostings.getBuckets("FindService"), TrigramPostings.getBuckets("findservice"));
+  }
+
+  @Test
+  public void testFindCandidates() {
+    TrigramPostings postings = build();
+
+    assertArrayEquals(new int[]{0}, postings.findCandidates(TrigramPostings.getBuckets("findservice")));
+    assertArrayEquals(new int[]{1, 2}, postings.findCandidates(TrigramPostings.getBuckets("PRO")));
+    assertArrayEquals(new int[]{1}, postings.findCandidates(TrigramPostings.getBuckets("Promise<")));
+    assertEquals(0, postings.findCandidates(TrigramPostings.getBuckets("does not occur anywhere")).length);
+  }
+
+  @Test
+  public void testFindCandidates_SkipsNullDocuments() {
+    TrigramPostings postings = TrigramPostings.build(Arrays.asList(null, TrigramPostings.getBuckets("hello")));
+
+    assertArrayEquals(new int[]{1}, postings.findCandidates(TrigramPostings.getBuckets("hello")));
+  }
+
+  @Test
+  public void testContainsAll() {
+    int[] documentBuckets = TrigramPostings.getBuckets(DOCUMENTS.get(2));
+
+    assertTrue(TrigramPostings.containsAll(documentBuckets, TrigramPostings.getBuckets("Project")));
+    assertFalse(TrigramPostings.containsAll(documentBuckets, TrigramPostings.getBuckets("Disposable")));
+  }
+}
@@ -24,9 +24,21 @@ let savedSearch: Search = savedSearchFromLocalStorage
           selectedSearchContextSpec: 'global',
       }
 let previewContent: PreviewRequest['arguments'] | null = null
+let pendingFrames: string[] = []
 
-function callJava(request: Request): Promise<object> {
+function callJava(requestOrFrame: Request | string): Promise<object> {
     return new Promise((resolve, reject) => {
+        if (typeof requestOrFrame === 'string') {
+            const [, , index, count, ...data] = requestOrFrame.split(':')
+            pendingFrames.push(data.join(':'))
+            if (Number(index) < Number(count) - 1) {
+                resolve(null as unknown as object)
+                return
+            }
+            requestOrFrame = JSON.parse(pendingFrames.join('')) as Request
+            pendingFrames = []
+        }
+        const request = requestOrFrame
         const requestAsString = JSON.stringify(request)
         const onSuccessCallback = (responseAsString: string): void => {
             resolve(JSON.parse(responseAsString))
@@ -65,6 +77,11 @@ function handleRequest(
             break
         }
 
+        case 'prefetchPreviews': {
+            onSuccessCallback('null')
+            break
+        }
+
         case 'previewLoading': {
             codeDetailsNode.innerHTML = 'Loading...'
             onSuccessCallback('null')
@@ -132,6 +149,42 @@ function handleRequest(
             break
         }
 
+        case 'saveSearchResults': {
+            onSuccessCallback('null')
+            break
+        }
+
+        case 'loadSearchResults': {
+            onSuccessCallback('null')
+            break
+        }
+
+        case 'searchLocalIndex': {
+            onSuccessCallback('null')
+            break
+        }
+
+        case 'getSearchHistoryCompletions': {
+            const prefix = request.arguments.prefix.toLowerCase()
+            const query = savedSearch.query ?? ''
+            const completions =
+                query.toLowerCase().startsWith(prefix) && query !== request.arguments.prefix
+                    ? [{ query, useCount: 1, lastUsedMillis: Date.now() }]
+                    : []
+            onSuccessCallback(JSON.stringify({ completions }))
+            break
+        }
+
+        case 'removeSearchHistoryEntry': {
+            onSuccessCallback('null')
+            break
+        }
+
+        case 'loadUiState': {
+            onSuccessCallback('null')
+            break
+        }
+
         case 'indicateFinishedLoading': {
             onSuccessCallback('null')
             break
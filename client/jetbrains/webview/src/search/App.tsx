@@ -28,8 +28,14 @@ import { initializeSourcegraphSettings } from '../sourcegraphSettings'
 import { EventLogger } from '../telemetry/EventLogger'
 
 import { JetBrainsSearchBox } from './input/JetBrainsSearchBox'
-import { saveLastSearch } from './js-to-java-bridge'
+import {
+    loadSearchResultsAlwaysFulfill,
+    saveLastSearch,
+    saveSearchResults,
+    searchLocalIndexAlwaysFulfill,
+} from './js-to-java-bridge'
 import { SearchResultList } from './results/SearchResultList'
+import { UiState } from './results/ui-state'
 import { StatusBar } from './StatusBar'
 import { Search } from './types'
 
@@ -44,6 +50,7 @@ interface Props {
     onPreviewClear: () => Promise<void>
     onOpen: (match: SearchMatch, lineOrSymbolMatchIndex?: number) => Promise<void>
     initialSearch: Search | null
+    initialUiState: UiState | null
     initialAuthenticatedUser: AuthenticatedUser | null
     telemetryService: EventLogger
 }
@@ -61,6 +68,7 @@ export const App: React.FunctionComponent<React.PropsWithChildren<Props>> = ({
     onPreviewClear,
     onOpen,
     initialSearch,
+    initialUiState,
     initialAuthenticatedUser,
     telemetryService,
 }: Props) => {
@@ -133,6 +141,7 @@ export const App: React.FunctionComponent<React.PropsWithChildren<Props>> = ({
             patternType?: SearchPatternType
             contextSpec?: string
             forceNewSearch?: true
+            showCachedResults?: true
         }) => {
             const query = userQueryState.query ?? ''
             const caseSensitive = options?.caseSensitive
@@ -160,9 +169,17 @@ export const App: React.FunctionComponent<React.PropsWithChildren<Props>> = ({
                 selectedSearchContextSpec: options?.contextSpec ?? lastSearch.selectedSearchContextSpec,
             }
 
+            // While the IDE's cached results are shown, the refreshed results replace them only once they're complete
+            let isShowingCachedResults = false
+            let hasReceivedResults = false
+            let remoteMatches: SearchMatch[] = []
+            // Matches from the IDE's index of the project, shown before the remote results arrive
+            let localMatches: SearchMatch[] = []
+            const showMatches = (): void => setMatches(mergeLocalMatches(localMatches, remoteMatches))
+
             // If we don't unsubscribe, the previous search will be continued after the new search and search results will be mixed
             subscription.current?.unsubscribe()
-            subscription.current = aggregateStreamingSearch(
+            const searchSubscription = aggregateStreamingSearch(
                 of(`context:${nextSearch.selectedSearchContextSpec} ${query}`),
                 {
                     version: LATEST_VERSION,
@@ -173,11 +190,42 @@ export const App: React.FunctionComponent<React.PropsWithChildren<Props>> = ({
                     decorationContextLines: 0,
                 }
             ).subscribe(searchResults => {
-                setMatches(searchResults.results)
+                hasReceivedResults = hasReceivedResults || searchResults.results.length > 0
+                if (searchResults.state === 'complete') {
+                    isShowingCachedResults = false
+                    saveSearchResults(nextSearch, { matches: searchResults.results, progress: searchResults.progress })
+                } else if (isShowingCachedResults) {
+                    return
+                }
+                remoteMatches = searchResults.results
+                showMatches()
                 setProgress(searchResults.progress)
                 setProgressState(searchResults.state)
             })
+            subscription.current = searchSubscription
             setMatches([])
+            searchLocalIndexAlwaysFulfill(nextSearch)
+                .then(matches => {
+                    if (matches.length === 0 || subscription.current !== searchSubscription) {
+                        return
+                    }
+                    localMatches = matches
+                    showMatches()
+                })
+                .catch(() => {})
+            if (options?.showCachedResults) {
+                loadSearchResultsAlwaysFulfill(nextSearch)
+                    .then(cachedResults => {
+                        if (cachedResults === null || hasReceivedResults || searchSubscription.closed) {
+                            return
+                        }
+                        isShowingCachedResults = true
+                        remoteMatches = cachedResults.matches
+                        showMatches()
+                        setProgress(cachedResults.progress)
+                    })
+                    .catch(() => {})
+            }
             setLastSearch(nextSearch)
             saveLastSearch(nextSearch)
             telemetryService.log('IDESearchSubmitted')
@@ -197,6 +245,7 @@ export const App: React.FunctionComponent<React.PropsWithChildren<Props>> = ({
                 patternType: initialSearch.patternType,
                 contextSpec: initialSearch.selectedSearchContextSpec,
                 forceNewSearch: true,
+                showCachedResults: true,
             })
         }
     }, [initialSearch, onSubmit, didInitialSubmit])
@@ -215,9 +264,10 @@ export const App: React.FunctionComponent<React.PropsWithChildren<Props>> = ({
                 onPreviewChange={onPreviewChange}
                 onPreviewClear={onPreviewClear}
                 onOpen={onOpen}
+                initialUiState={initialUiState}
             />
         ),
-        [lastSearch, matches, onOpen, onPreviewChange, onPreviewClear]
+        [lastSearch, matches, onOpen, onPreviewChange, onPreviewClear, initialUiState]
     )
 
     return (
@@ -284,6 +334,22 @@ function getStableKeyForLastSearch(lastSearch: Search): string {
     }`
 }
 
+// Local matches come first since they're there before any remote result. Remote matches for the same files are left out.
+function mergeLocalMatches(localMatches: SearchMatch[], remoteMatches: SearchMatch[]): SearchMatch[] {
+    if (localMatches.length === 0) {
+        return remoteMatches
+    }
+    const localFileKeys = new Set(localMatches.map(getFileKey))
+    return [...localMatches, ...remoteMatches.filter(match => !localFileKeys.has(getFileKey(match)))]
+}
+
+function getFileKey(match: SearchMatch): string | null {
+    if (match.type === 'content' || match.type === 'path' || match.type === 'symbol') {
+        return `${match.repository.toLowerCase()}:${match.path}`
+    }
+    return null
+}
+
 function preventAll(event: React.MouseEvent): void {
     event.stopPropagation()
     event.preventDefault()
@@ -14,35 +14,43 @@ import {
     getThemeAlwaysFulfill,
     indicateFinishedLoading,
     loadLastSearchAlwaysFulfill,
+    loadUiStateAlwaysFulfill,
     onOpen,
     onPreviewChange,
     onPreviewClear,
 } from './js-to-java-bridge'
-import type { PluginConfig, Search, Theme } from './types'
+import { UiState } from './results/ui-state'
+import type { PluginConfig, Search, Theme, ThemeChange } from './types'
 
 setLinkComponent(AnchorLink)
 
 let isDarkTheme = false
+let currentTheme: Theme = { isDarkTheme: false, intelliJTheme: {} }
 let instanceURL = 'https://sourcegraph.com'
 let isGlobbingEnabled = false
 let accessToken: string | null = null
 let anonymousUserId: string
 let pluginVersion: string
 let initialSearch: Search | null = null
+let initialUiState: UiState | null = null
 let initialAuthenticatedUser: AuthenticatedUser | null
 let telemetryService: EventLogger
+// Changed when the IDE moves the browser to another project so that the app starts over with that project's state
+let appKey = 0
 
 window.initializeSourcegraph = async () => {
-    const [theme, config, lastSearch, authenticatedUser] = await Promise.allSettled([
+    const [theme, config, lastSearch, uiState, authenticatedUser] = await Promise.allSettled([
         getThemeAlwaysFulfill(),
         getConfigAlwaysFulfill(),
         loadLastSearchAlwaysFulfill(),
+        loadUiStateAlwaysFulfill(),
         getAuthenticatedUser(instanceURL, accessToken),
     ])
 
     applyConfig((config as PromiseFulfilledResult<PluginConfig>).value)
     applyTheme((theme as PromiseFulfilledResult<Theme>).value)
     applyLastSearch((lastSearch as PromiseFulfilledResult<Search | null>).value)
+    initialUiState = (uiState as PromiseFulfilledResult<UiState | null>).value
     applyAuthenticatedUser(authenticatedUser.status === 'fulfilled' ? authenticatedUser.value : null)
     if (accessToken && authenticatedUser.status === 'rejected') {
         console.warn(`No initial authenticated user with access token “${accessToken}”`)
@@ -61,11 +69,13 @@ export function renderReactApp(): void {
     const node = document.querySelector('#main') as HTMLDivElement
     render(
         <App
+            key={appKey}
             isDarkTheme={isDarkTheme}
             instanceURL={instanceURL}
             isGlobbingEnabled={isGlobbingEnabled}
             accessToken={accessToken}
             initialSearch={initialSearch}
+            initialUiState={initialUiState}
             onOpen={onOpen}
             onPreviewChange={onPreviewChange}
             onPreviewClear={onPreviewClear}
@@ -85,7 +95,20 @@ export function applyConfig(config: PluginConfig): void {
     polyfillEventSource(accessToken ? { Authorization: `token ${accessToken}` } : {})
 }
 
+export function applyThemeChange(themeChange: ThemeChange): void {
+    const intelliJTheme = { ...currentTheme.intelliJTheme }
+    for (const [key, value] of Object.entries(themeChange.intelliJTheme)) {
+        if (value === null) {
+            delete intelliJTheme[key]
+        } else {
+            intelliJTheme[key] = value
+        }
+    }
+    applyTheme({ isDarkTheme: themeChange.isDarkTheme, intelliJTheme })
+}
+
 export function applyTheme(theme: Theme): void {
+    currentTheme = theme
     // Dark/light theme
     document.documentElement.classList.add('theme')
     document.documentElement.classList.remove(theme.isDarkTheme ? 'theme-light' : 'theme-dark')
@@ -112,6 +135,13 @@ export function applyTheme(theme: Theme): void {
     root.style.setProperty('--body-bg', theme.isDarkTheme ? '#2b2b2b' : '#ffffff')
 }
 
+export function applyProjectChange(config: PluginConfig, lastSearch: Search | null): void {
+    applyConfig(config)
+    applyLastSearch(lastSearch)
+    initialUiState = null
+    appKey++
+}
+
 function applyLastSearch(lastSearch: Search | null): void {
     initialSearch = lastSearch
 }
@@ -1,13 +1,23 @@
-import { PluginConfig, Theme } from './types'
+import { PluginConfig, Search, ThemeChange } from './types'
 
-import { applyConfig, applyTheme, renderReactApp } from './index'
+import { applyConfig, applyProjectChange, applyThemeChange, renderReactApp } from './index'
+import { getUiState } from './results/ui-state'
 
-export type ActionName = 'themeChanged' | 'pluginSettingsChanged'
+export type ActionName = 'themeChanged' | 'pluginSettingsChanged' | 'projectChanged' | 'getUiState'
 
-type ThemeChangedRequestArguments = Theme
+// Only has the colors that changed since the last theme
+type ThemeChangedRequestArguments = ThemeChange
 type PluginSettingsChangedRequestArguments = PluginConfig
+// The browser is shared between the open projects and has been moved to another project
+interface ProjectChangedRequestArguments {
+    config: PluginConfig
+    lastSearch: Search | null
+}
 
-type JavaToJSRequestArguments = ThemeChangedRequestArguments | PluginSettingsChangedRequestArguments
+type JavaToJSRequestArguments =
+    | ThemeChangedRequestArguments
+    | PluginSettingsChangedRequestArguments
+    | ProjectChangedRequestArguments
 
 export function handleRequest(
     action: ActionName,
@@ -16,7 +26,7 @@ export function handleRequest(
 ): void {
     const argumentsAsObject = JSON.parse(argumentsAsJsonString) as JavaToJSRequestArguments
     if (action === 'themeChanged') {
-        applyTheme(argumentsAsObject as ThemeChangedRequestArguments)
+        applyThemeChange(argumentsAsObject as ThemeChangedRequestArguments)
         renderReactApp()
         return callback(JSON.stringify(null))
     }
@@ -27,5 +37,16 @@ export function handleRequest(
         return callback(JSON.stringify(null))
     }
 
+    if (action === 'projectChanged') {
+        const { config, lastSearch } = argumentsAsObject as ProjectChangedRequestArguments
+        applyProjectChange(config, lastSearch)
+        renderReactApp()
+        return callback(JSON.stringify(null))
+    }
+
+    if (action === 'getUiState') {
+        return callback(JSON.stringify(getUiState()))
+    }
+
     return callback('Unknown action.')
 }
@@ -5,16 +5,18 @@ import {
     ContentMatch,
     getRepoMatchUrl,
     PathMatch,
+    Progress,
     SearchMatch,
     SearchType,
     SymbolMatch,
 } from '@sourcegraph/shared/src/search/stream'
 
 import { loadContent } from './lib/blob'
+import { UiState } from './results/ui-state'
 import { PluginConfig, Search, Theme } from './types'
 
 export interface PreviewContent {
-    timeAsISOString: string
+    sequenceNumber: number
     resultType: SearchType
     fileName?: string
     repoUrl: string
@@ -27,11 +29,31 @@ export interface PreviewContent {
     lineNumber?: number
     absoluteOffsetAndLengths?: number[][]
     relativeUrl?: string
+    // Set instead of `content` when the content was uploaded as raw bytes
+    contentHandle?: string
+    // Set when the IDE already has the content. The highlights are then sent as [line, column, length] triples.
+    isContentPrefetched?: boolean
+    lineRelativeOffsetAndLengths?: number[][]
+}
+
+interface PrefetchFile {
+    repoUrl: string
+    commit: string
+    path: string
 }
 
 export interface PreviewLoadingRequest {
     action: 'previewLoading'
-    arguments: { timeAsISOString: string }
+    arguments: { sequenceNumber: number } & Partial<PrefetchFile>
+}
+
+interface PreviewLoadingResponse {
+    isContentPrefetched: boolean
+}
+
+interface PrefetchPreviewsRequest {
+    action: 'prefetchPreviews'
+    arguments: { files: PrefetchFile[] }
 }
 
 export interface PreviewRequest {
@@ -41,7 +63,7 @@ export interface PreviewRequest {
 
 interface ClearPreviewRequest {
     action: 'clearPreview'
-    arguments: { timeAsISOString: string }
+    arguments: { sequenceNumber: number }
 }
 
 interface OpenRequest {
@@ -66,11 +88,56 @@ interface LoadLastSearchRequest {
     action: 'loadLastSearch'
 }
 
+export interface CachedSearchResults {
+    matches: SearchMatch[]
+    progress: Progress
+}
+
+interface SaveSearchResultsRequest {
+    action: 'saveSearchResults'
+    arguments: { search: Search; results: CachedSearchResults }
+}
+
+interface LoadSearchResultsRequest {
+    action: 'loadSearchResults'
+    arguments: { search: Search }
+}
+
+interface SearchLocalIndexRequest {
+    action: 'searchLocalIndex'
+    arguments: { search: Search }
+}
+
+interface SearchLocalIndexResponse {
+    matches: SearchMatch[]
+}
+
+interface GetSearchHistoryCompletionsRequest {
+    action: 'getSearchHistoryCompletions'
+    arguments: { prefix: string; limit: number }
+}
+
+export interface SearchHistoryCompletion {
+    query: string
+    useCount: number
+    lastUsedMillis: number
+}
+
+interface RemoveSearchHistoryEntryRequest {
+    action: 'removeSearchHistoryEntry'
+    arguments: { query: string }
+}
+
+interface LoadUiStateRequest {
+    action: 'loadUiState'
+}
+
 interface IndicateFinishedLoadingRequest {
     action: 'indicateFinishedLoading'
 }
 
 export type Request =
+    | PrefetchPreviewsRequest
     | PreviewLoadingRequest
     | PreviewRequest
     | OpenRequest
@@ -78,10 +145,22 @@ export type Request =
     | GetThemeRequest
     | SaveLastSearchRequest
     | LoadLastSearchRequest
+    | SaveSearchResultsRequest
+    | LoadSearchResultsRequest
+    | SearchLocalIndexRequest
+    | GetSearchHistoryCompletionsRequest
+    | RemoveSearchHistoryEntryRequest
+    | LoadUiStateRequest
     | ClearPreviewRequest
     | IndicateFinishedLoadingRequest
 
-let lastPreviewUpdateCallSendDateTime = new Date()
+// Contents at least this long are uploaded as raw bytes instead of being sent as base64 in the JSON request
+const BINARY_TRANSPORT_MIN_LENGTH = 16 * 1024
+
+// Preview updates are numbered in the order we send them so that the IDE can drop outdated ones. Starting at the load
+// time in microseconds keeps the numbers increasing across reloads of the webview.
+let nextPreviewSequenceNumber = Date.now() * 1000
+let lastPreviewUpdateSequenceNumber = 0
 
 export async function getConfigAlwaysFulfill(): Promise<PluginConfig> {
     try {
@@ -120,32 +199,85 @@ export async function indicateFinishedLoading(): Promise<void> {
 
 export async function onPreviewChange(match: SearchMatch, lineOrSymbolMatchIndex?: number): Promise<void> {
     try {
-        const initiationDateTime = new Date()
+        const initiationSequenceNumber = nextPreviewSequenceNumber++
+        const trace = startTrace()
         if (match.type === 'content' || match.type === 'path' || match.type === 'symbol') {
-            lastPreviewUpdateCallSendDateTime = initiationDateTime
-            await callJava({
-                action: 'previewLoading',
-                arguments: { timeAsISOString: lastPreviewUpdateCallSendDateTime.toISOString() },
-            })
+            lastPreviewUpdateSequenceNumber = initiationSequenceNumber
+            const response = (await callJava(
+                {
+                    action: 'previewLoading',
+                    arguments: {
+                        sequenceNumber: initiationSequenceNumber,
+                        ...getPrefetchFile(match),
+                    },
+                },
+                trace
+            )) as PreviewLoadingResponse | null
+            if (initiationSequenceNumber < lastPreviewUpdateSequenceNumber) {
+                // The user selected another result while we waited for the IDE
+                return
+            }
+            if (
+                response?.isContentPrefetched &&
+                (await tryPreviewWithPrefetchedContent(match, lineOrSymbolMatchIndex, initiationSequenceNumber, trace))
+            ) {
+                return
+            }
         }
         const previewContent = await createPreviewContent(match, lineOrSymbolMatchIndex)
-        if (initiationDateTime < lastPreviewUpdateCallSendDateTime) {
+        if (initiationSequenceNumber < lastPreviewUpdateSequenceNumber) {
             // Apparently, the content was slow to load, and we already sent a newer request in the meantime.
             // The best we can do is to ignore this change to prevent overwriting the newer content.
             return
         }
-        await callJava({ action: 'preview', arguments: previewContent })
+        await callJava({ action: 'preview', arguments: previewContent }, trace)
     } catch (error) {
         console.error(`Failed to preview match: ${(error as Error).message}`)
     }
 }
 
+async function tryPreviewWithPrefetchedContent(
+    match: ContentMatch | PathMatch | SymbolMatch,
+    lineOrSymbolMatchIndex: number | undefined,
+    sequenceNumber: number,
+    trace: Trace
+): Promise<boolean> {
+    const previewContent = createPreviewContentWithoutContent(match, lineOrSymbolMatchIndex, sequenceNumber)
+    if (previewContent === null) {
+        return false
+    }
+    try {
+        await callJava({ action: 'preview', arguments: previewContent }, trace)
+        return true
+    } catch {
+        // The IDE has evicted the content in the meantime, so we load it ourselves.
+        return false
+    }
+}
+
+// Tells the IDE which results are likely to be previewed next so that it can load their content in the background.
+export function prefetchPreviews(matches: SearchMatch[]): void {
+    const files: PrefetchFile[] = []
+    for (const match of matches) {
+        if (match.type === 'content' || match.type === 'path' || match.type === 'symbol') {
+            files.push(getPrefetchFile(match))
+        }
+    }
+    callJava({ action: 'prefetchPreviews', arguments: { files } }).catch((error: Error) => {
+        console.error(`Failed to prefetch previews: ${error.message}`)
+    })
+}
+
+function getPrefetchFile(match: ContentMatch | PathMatch | SymbolMatch): PrefetchFile {
+    return { repoUrl: match.repository, commit: match.commit ?? '', path: match.path }
+}
+
 export async function onPreviewClear(): Promise<void> {
     try {
-        lastPreviewUpdateCallSendDateTime = new Date()
+        lastPreviewUpdateSequenceNumber = nextPreviewSequenceNumber++
         await callJava({
             action: 'clearPreview',
-            arguments: { timeAsISOString: lastPreviewUpdateCallSendDateTime.toISOString() },
+            arguments: { sequenceNumber: lastPreviewUpdateSequenceNumber },
         })
     } catch (error) {
         console.error(`Failed to clear preview: ${(error as Error).message}`)
@@ -169,6 +301,69 @@ export async function loadLastSearchAlwaysFulfill(): Promise<Search | null> {
     }
 }
 
+// Resolves to null if the IDE has no recent results for the search
+export async function loadSearchResultsAlwaysFulfill(search: Search): Promise<CachedSearchResults | null> {
+    try {
+        return (await callJava({ action: 'loadSearchResults', arguments: { search } })) as CachedSearchResults | null
+    } catch (error) {
+        console.error(`Failed to load cached search results: ${(error as Error).message}`)
+        return null
+    }
+}
+
+export function saveSearchResults(search: Search, results: CachedSearchResults): void {
+    callJava({ action: 'saveSearchResults', arguments: { search, results } }).catch((error: Error) => {
+        console.error(`Failed to save search results: ${error.message}`)
+    })
+}
+
+// Content matches from the IDE's index of the project's files. Empty if the index is disabled, still building, or
+// can't answer the query, e.g. because it has filters.
+export async function searchLocalIndexAlwaysFulfill(search: Search): Promise<SearchMatch[]> {
+    try {
+        const response = (await callJava({
+            action: 'searchLocalIndex',
+            arguments: { search },
+        })) as SearchLocalIndexResponse | null
+        return response?.matches ?? []
+    } catch (error) {
+        console.error(`Failed to search the local index: ${(error as Error).message}`)
+        return []
+    }
+}
+
+// Earlier queries of the project that start with the prefix, the most frequently and recently used first
+export async function getSearchHistoryCompletionsAlwaysFulfill(
+    prefix: string,
+    limit: number
+): Promise<SearchHistoryCompletion[]> {
+    try {
+        const response = (await callJava({
+            action: 'getSearchHistoryCompletions',
+            arguments: { prefix, limit },
+        })) as { completions: SearchHistoryCompletion[] }
+        return response.completions
+    } catch (error) {
+        console.error(`Failed to get search history completions: ${(error as Error).message}`)
+        return []
+    }
+}
+
+export function removeSearchHistoryEntry(query: string): void {
+    callJava({ action: 'removeSearchHistoryEntry', arguments: { query } }).catch((error: Error) => {
+        console.error(`Failed to remove search history entry: ${error.message}`)
+    })
+}
+
+export async function loadUiStateAlwaysFulfill(): Promise<UiState | null> {
+    try {
+        return (await callJava({ action: 'loadUiState' })) as UiState | null
+    } catch (error) {
+        console.error(`Failed to get UI state: ${(error as Error).message}`)
+        return null
+    }
+}
+
 export function saveLastSearch(lastSearch: Search): void {
     callJava({ action: 'saveLastSearch', arguments: lastSearch })
         .then(() => {
@@ -179,8 +374,46 @@ export function saveLastSearch(lastSearch: Search): void {
         })
 }
 
-async function callJava(request: Request): Promise<object> {
-    return window.callJava(request)
+// Lets the IDE record every step of a user action, starting with our own, as spans of the same trace
+interface Trace {
+    traceId: string
+    startedAtMicros: number
+}
+
+export type TracedRequest = Request & { trace?: Trace & { sentAtMicros: number } }
+
+function nowMicros(): number {
+    return Math.round((performance.timeOrigin + performance.now()) * 1000)
+}
+
+function startTrace(): Trace {
+    const randomBytes = crypto.getRandomValues(new Uint8Array(8))
+    const traceId = Array.from(randomBytes, byte => byte.toString(16).padStart(2, '0')).join('')
+    return { traceId, startedAtMicros: nowMicros() }
+}
+
+// Must match MAX_FRAME_LENGTH in ChunkedMessageAssembler.java
+const MAX_FRAME_LENGTH = 64 * 1024
+// Message ids restart at 0 when the webview reloads, so they're prefixed with an id of this page load
+const pageLoadId = Math.random().toString(36).slice(2, 10)
+let nextChunkedMessageId = 0
+
+async function callJava(request: Request, trace: Trace = startTrace()): Promise<object> {
+    const tracedRequest: TracedRequest = { ...request, trace: { ...trace, sentAtMicros: nowMicros() } }
+    const requestAsString = JSON.stringify(tracedRequest)
+    if (requestAsString.length <= MAX_FRAME_LENGTH) {
+        return window.callJava(tracedRequest)
+    }
+
+    // Send oversized messages in frames that the IDE puts back together. Only the last frame gets a real response.
+    const messageId = `${pageLoadId}-${nextChunkedMessageId++}`
+    const count = Math.ceil(requestAsString.length / MAX_FRAME_LENGTH)
+    let response: object = {}
+    for (let index = 0; index < count; index++) {
+        const data = requestAsString.slice(index * MAX_FRAME_LENGTH, (index + 1) * MAX_FRAME_LENGTH)
+        response = await window.callJava(`sgchunk:${messageId}:${index}:${count}:${data}`)
+    }
+    return response
 }
 
 export async function createPreviewContent(
@@ -189,16 +422,16 @@ export async function createPreviewContent(
 ): Promise<PreviewContent> {
     if (match.type === 'commit') {
         const isCommitResult = match.content.startsWith('```COMMIT_EDITMSG')
-        const content = prepareContent(
+        const content = await prepareContent(
             isCommitResult
                 ? match.content.replace(/^```COMMIT_EDITMSG\n([\S\s]*)\n```$/, '$1')
                 : match.content.replace(/^```diff\n([\S\s]*)\n```$/, '$1')
         )
         return {
-            timeAsISOString: new Date().toISOString(),
+            sequenceNumber: nextPreviewSequenceNumber++,
             resultType: isCommitResult ? 'commit' : 'diff',
             repoUrl: match.repository,
-            content,
+            ...content,
             commitMessagePreview: match.message.split('\n', 1)[0],
             relativeUrl: match.url,
         }
@@ -214,7 +447,7 @@ export async function createPreviewContent(
 
     if (match.type === 'repo') {
         return {
-            timeAsISOString: new Date().toISOString(),
+            sequenceNumber: nextPreviewSequenceNumber++,
             resultType: match.type,
             repoUrl: getRepoMatchUrl(match).slice(1),
             content: null,
@@ -231,7 +464,7 @@ export async function createPreviewContent(
     console.log(`Unknown match type: “${match.type}”`)
 
     return {
-        timeAsISOString: new Date().toISOString(),
+        sequenceNumber: nextPreviewSequenceNumber++,
         resultType: null,
         repoUrl: '',
         content: null,
@@ -251,13 +484,13 @@ async function createPreviewContentForContentMatch(
     )
 
     return {
-        timeAsISOString: new Date().toISOString(),
+        sequenceNumber: nextPreviewSequenceNumber++,
         resultType: 'file',
         fileName,
         repoUrl: match.repository,
         commit: match.commit,
         path: match.path,
-        content: prepareContent(content),
+        ...(await prepareContent(content)),
         lineNumber: match.lineMatches[lineMatchIndex].lineNumber,
         absoluteOffsetAndLengths,
     }
@@ -268,12 +501,13 @@ async function createPreviewContentForPathMatch(match: PathMatch): Promise<Previ
     const content = await loadContent(match)
 
     return {
-        timeAsISOString: new Date().toISOString(),
+        sequenceNumber: nextPreviewSequenceNumber++,
         resultType: match.type,
         fileName,
         repoUrl: match.repository,
+        commit: match.commit,
         path: match.path,
-        content: prepareContent(content),
+        ...(await prepareContent(content)),
     }
 }
 
@@ -286,13 +520,13 @@ async function createPreviewContentForSymbolMatch(
     const symbolMatch = match.symbols[symbolMatchIndex]
 
     return {
-        timeAsISOString: new Date().toISOString(),
+        sequenceNumber: nextPreviewSequenceNumber++,
         resultType: match.type,
         fileName,
         repoUrl: match.repository,
         commit: match.commit,
         path: match.path,
-        content: prepareContent(content),
+        ...(await prepareContent(content)),
         symbolName: symbolMatch.name,
         symbolContainerName: symbolMatch.containerName,
         lineNumber: getLineFromSourcegraphUrl(symbolMatch.url),
@@ -301,15 +535,89 @@ async function createPreviewContentForSymbolMatch(
     }
 }
 
-// We encode the content as base64-encoded string to avoid encoding errors in the Java JSON parser.
-// The Java side also does not expect `\r\n` line endings, so we replace them with `\n`.
+// Same as createPreviewContent, but without the content. The IDE computes the absolute offsets from its copy of the
+// content. Returns null when the highlights can't be expressed as line-relative ranges.
+// Uses the sequence number of the previewLoading request, so that the IDE can order it against the loading indicator.
+function createPreviewContentWithoutContent(
+    match: ContentMatch | PathMatch | SymbolMatch,
+    lineOrSymbolMatchIndex: number | undefined,
+    sequenceNumber: number
+): PreviewContent | null {
+    const previewContent: PreviewContent = {
+        sequenceNumber,
+        resultType: match.type === 'content' ? 'file' : match.type,
+        fileName: splitPath(match.path)[1],
+        repoUrl: match.repository,
+        commit: match.commit,
+        path: match.path,
+        content: null,
+        isContentPrefetched: true,
+        lineRelativeOffsetAndLengths: [],
+    }
+
+    if (match.type === 'content') {
+        const lineMatch = match.lineMatches[lineOrSymbolMatchIndex as number]
+        previewContent.lineNumber = lineMatch.lineNumber
+        previewContent.lineRelativeOffsetAndLengths = lineMatch.offsetAndLengths.map(([offset, length]) => [
+            lineMatch.lineNumber,
+            offset,
+            length,
+        ])
+    }
+
+    if (match.type === 'symbol') {
+        const symbolMatch = match.symbols[lineOrSymbolMatchIndex as number]
+        const offsets = extractStartAndEndOffsetsFromSourcegraphUrl(symbolMatch.url)
+        if (offsets !== null && offsets.start.line !== offsets.end.line) {
+            return null
+        }
+        previewContent.symbolName = symbolMatch.name
+        previewContent.symbolContainerName = symbolMatch.containerName
+        previewContent.lineNumber = getLineFromSourcegraphUrl(symbolMatch.url)
+        previewContent.relativeUrl = ''
+        if (offsets !== null) {
+            previewContent.lineRelativeOffsetAndLengths = [
+                [offsets.start.line, offsets.start.col, offsets.end.col - offsets.start.col],
+            ]
+        }
+    }
+
+    return previewContent
+}
+
+// Large contents are uploaded as raw UTF-8 bytes, and the preview request only carries a handle to them. This saves
+// the IDE from parsing and decoding a large base64 string from the JSON bridge.
+//
+// Smaller ones go in the request as a base64-encoded string to avoid encoding errors in the Java JSON parser. We can
+// not use the native btoa() function because it does not support all Unicode characters.
 //
-// We can not use the native btoa() function because it does not support all Unicode characters.
-function prepareContent(content: string | null): string | null {
+// The Java side does not expect `\r\n` line endings, so we replace them with `\n`.
+async function prepareContent(content: string | null): Promise<Pick<PreviewContent, 'content' | 'contentHandle'>> {
     if (content === null) {
-        return null
+        return { content: null }
+    }
+    const normalizedContent = content.replaceAll('\r\n', '\n')
+    if (normalizedContent.length >= BINARY_TRANSPORT_MIN_LENGTH) {
+        try {
+            return { content: null, contentHandle: await uploadContent(normalizedContent) }
+        } catch (error) {
+            console.warn(`Failed to upload preview content, sending it inline: ${(error as Error).message}`)
+        }
+    }
+    return { content: encode(normalizedContent) }
+}
+
+async function uploadContent(content: string): Promise<string> {
+    const randomBytes = crypto.getRandomValues(new Uint8Array(16))
+    const contentHandle = Array.from(randomBytes, byte => byte.toString(16).padStart(2, '0')).join('')
+    const response = await fetch(`/bridge/preview/${contentHandle}`, {
+        method: 'POST',
+        body: new TextEncoder().encode(content),
+    })
+    if (!response.ok) {
+        throw new Error(`Upload failed with status ${response.status}`)
     }
-    return encode(content.replaceAll('\r\n', '\n'))
+    return contentHandle
 }
 
 // NOTE: This might be slow when the content is a really large file and the match is in the
@@ -1,27 +1,35 @@
-import React, { createRef, useCallback, useEffect, useMemo, useState } from 'react'
+import React, { createRef, useCallback, useEffect, useMemo, useRef, useState } from 'react'
 
 import { SearchMatch } from '@sourcegraph/shared/src/search/stream'
 
+import { prefetchPreviews } from '../js-to-java-bridge'
+
 import { CommitSearchResult } from './CommitSearchResult'
 import { FileSearchResult } from './FileSearchResult'
 import { PathSearchResult } from './PathSearchResult'
 import { RepoSearchResult } from './RepoSearchResult'
+import { UiState, updateUiState } from './ui-state'
 import {
     getFirstResultId,
     getLineOrSymbolMatchIndexForFileResult,
     getMatchId,
     getMatchIdForResult,
+    getNeighbouringMatches,
     getSearchResultElement,
     getSiblingResultElement,
 } from './utils'
 
 import styles from './SearchResultList.module.scss'
 
+// The number of results before and after the selected one whose content the IDE loads in the background
+const PREFETCH_NEIGHBOUR_COUNT = 3
+
 interface Props {
     onPreviewChange: (match: SearchMatch, lineOrSymbolMatchIndex?: number) => Promise<void>
     onPreviewClear: () => Promise<void>
     onOpen: (match: SearchMatch, lineOrSymbolMatchIndex?: number) => Promise<void>
     matches: SearchMatch[]
+    initialUiState: UiState | null
 }
 
 export const SearchResultList: React.FunctionComponent<Props> = ({
@@ -29,9 +37,12 @@ export const SearchResultList: React.FunctionComponent<Props> = ({
     onPreviewChange,
     onPreviewClear,
     onOpen,
+    initialUiState,
 }) => {
     const scrollViewReference = createRef<HTMLDivElement>()
     const [selectedResultId, setSelectedResultId] = useState<null | string>(null)
+    // Restored once the streamed results contain the previously selected one
+    const pendingUiState = useRef<UiState | null>(initialUiState)
 
     const matchIdToMatchMap = useMemo((): Map<string, SearchMatch> => {
         const map = new Map<string, SearchMatch>()
@@ -58,6 +69,7 @@ export const SearchResultList: React.FunctionComponent<Props> = ({
                     )
                         .then(() => {})
                         .catch(() => {})
+                    prefetchPreviews(getNeighbouringMatches(matches, match, PREFETCH_NEIGHBOUR_COUNT))
                 } else {
                     console.log(`No match found for result id: ${resultId}`)
                 }
@@ -67,15 +79,29 @@ export const SearchResultList: React.FunctionComponent<Props> = ({
                     .catch(() => {})
             }
             setSelectedResultId(resultId)
+            updateUiState({ selectedResultId: resultId })
         },
-        [onPreviewChange, onPreviewClear, matchIdToMatchMap]
+        [onPreviewChange, onPreviewClear, matchIdToMatchMap, matches]
     )
 
     useEffect(() => {
+        const uiState = pendingUiState.current
+        if (uiState?.selectedResultId && matchIdToMatchMap.has(getMatchIdForResult(uiState.selectedResultId))) {
+            pendingUiState.current = null
+            selectResult(uiState.selectedResultId)
+            if (scrollViewReference.current) {
+                scrollViewReference.current.scrollTop = uiState.scrollTop
+            }
+            return
+        }
         if (selectedResultId === null) {
             selectResult(getFirstResultId(matches))
         }
-    }, [selectedResultId, matches, selectResult])
+    }, [selectedResultId, matches, matchIdToMatchMap, selectResult, scrollViewReference])
+
+    const onScroll = useCallback((event: React.UIEvent<HTMLDivElement>) => {
+        updateUiState({ scrollTop: event.currentTarget.scrollTop })
+    }, [])
 
     const onKeyDown = useCallback(
         (event: KeyboardEvent) => {
@@ -150,7 +176,7 @@ export const SearchResultList: React.FunctionComponent<Props> = ({
     })
 
     return (
-        <div className={styles.list} ref={scrollViewReference}>
+        <div className={styles.list} ref={scrollViewReference} onScroll={onScroll}>
             {matches.map((match: SearchMatch) => {
                 switch (match.type) {
                     case 'commit':
@@ -0,0 +1,15 @@
+// What the IDE saves before it disposes the browser to free memory, so that the next webview can restore it
+export interface UiState {
+    selectedResultId: string | null
+    scrollTop: number
+}
+
+let currentUiState: UiState = { selectedResultId: null, scrollTop: 0 }
+
+export function getUiState(): UiState {
+    return currentUiState
+}
+
+export function updateUiState(update: Partial<UiState>): void {
+    currentUiState = { ...currentUiState, ...update }
+}
@@ -74,3 +74,21 @@ export function getSiblingResultElement(currentElement: Element, direction: 'pre
     }
     return null
 }
+
+// Returns up to `count` matches before and after the given match, nearest first.
+export function getNeighbouringMatches(matches: SearchMatch[], match: SearchMatch, count: number): SearchMatch[] {
+    const index = matches.indexOf(match)
+    if (index === -1) {
+        return []
+    }
+    const neighbours: SearchMatch[] = []
+    for (let distance = 1; distance <= count; distance++) {
+        if (index + distance < matches.length) {
+            neighbours.push(matches[index + distance])
+        }
+        if (index - distance >= 0) {
+            neighbours.push(matches[index - distance])
+        }
+    }
+    return neighbours
+}
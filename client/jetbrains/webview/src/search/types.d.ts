@@ -1,13 +1,14 @@
 import type { SearchPatternType } from '@sourcegraph/search'
 
 import type { ActionName } from './java-to-js-bridge'
-import type { Request } from './js-to-java-bridge'
+import type { TracedRequest } from './js-to-java-bridge'
 
 /* Add global functions to global window object */
 declare global {
     interface Window {
         initializeSourcegraph: () => Promise<void>
-        callJava: (request: Request) => Promise<object>
+        // Strings are frames of a chunked message, see callJava in js-to-java-bridge.ts
+        callJava: (request: TracedRequest | string) => Promise<object>
         callJS: (action: ActionName, data: string, callback: (result: string) => void) => void
     }
 }
@@ -17,6 +18,12 @@ export interface Theme {
     intelliJTheme: { [key: string]: string }
 }
 
+// Colors that were removed are null
+export interface ThemeChange {
+    isDarkTheme: boolean
+    intelliJTheme: { [key: string]: string | null }
+}
+
 export interface PluginConfig {
     instanceURL: string
     isGlobbingEnabled: boolean